@@ -25,26 +25,39 @@ package org.ahn.rhapsody;
 
 import com.fasterxml.jackson.core.JsonProcessingException;
 import com.fasterxml.jackson.databind.ObjectMapper;
-import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.file.Files;
 import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
 import java.text.DateFormat;
 import java.text.ParseException;
 import java.text.SimpleDateFormat;
-import java.util.ArrayList;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.Date;
 import java.util.HashMap;
 import java.util.Iterator;
 import java.util.List;
+import java.util.Locale;
 import java.util.Map;
+import java.util.Spliterator;
+import java.util.Spliterators;
 import java.util.TimeZone;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
-import org.apache.commons.compress.archivers.ArchiveEntry;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 import org.apache.commons.compress.archivers.zip.ZipArchiveInputStream;
 import org.apache.commons.io.IOUtils;
+import org.apache.commons.io.input.TeeInputStream;
 import org.apache.http.HttpResponse;
 import org.apache.http.client.HttpClient;
+import org.apache.http.client.HttpResponseException;
 import org.apache.http.client.methods.HttpPost;
 import org.apache.http.client.utils.HttpClientUtils;
 import org.apache.http.entity.ByteArrayEntity;
@@ -57,15 +70,24 @@ import org.slf4j.LoggerFactory;
  */
 public class RhapsodyLog {
 
-    private static final String AUDIT = "AUDIT";
-    private static final String SYSTEM = "SYSTEM";
+    public static final String AUDIT = "AUDIT";
+    public static final String SYSTEM = "SYSTEM";
 
     private static final Logger LOGGER = LoggerFactory.getLogger(RhapsodyLog.class);
     public static final String MESSAGE_SEPARATOR = "\r";
+    private static final long TRANSFER_SIZE = 1024 * 1024;
+
+    // Exports in flight across all builds, keyed by server, client, log type and window
+    private static final RhapsodyLogSingleFlight<List<Object>, Path> DOWNLOADS = new RhapsodyLogSingleFlight<>(RhapsodyLog::deleteQuietly);
+    private static final RhapsodyLogSingleFlight<List<Object>, List<RhapsodyLogEntry>> AUDIT_ENTRIES = new RhapsodyLogSingleFlight<>(null);
+
+    // Exports larger than this are parsed in parallel
+    public static final long PARALLEL_PARSE_THRESHOLD = 4 * 1024 * 1024;
 
     private String baseUrl;
     private HttpClient client;
     private ObjectMapper mapper;
+    private boolean parallelParse = !Boolean.getBoolean(RhapsodyLog.class.getName() + ".sequentialParse");
 
     public RhapsodyLog(String baseUrl, HttpClient client, ObjectMapper mapper) {
         this.baseUrl = baseUrl;
@@ -89,6 +111,17 @@ public class RhapsodyLog {
         this.mapper = mapper;
     }
 
+    /**
+     * Parse large downloaded exports in parallel, enabled unless the
+     * <code>org.ahn.rhapsody.RhapsodyLog.sequentialParse</code> system
+     * property is set
+     *
+     * @param parallelParse false to force sequential parsing
+     */
+    public void setParallelParse(boolean parallelParse) {
+        this.parallelParse = parallelParse;
+    }
+
     protected HttpResponse requestExport(String type, long startTime, long endTime) throws JsonProcessingException, IOException {
         LOGGER.info("Requesting audit logs from Rhapsody between {} and {}", startTime, endTime);
 
@@ -118,244 +151,367 @@ public class RhapsodyLog {
         return client.execute(logsRequest);
     }
 
-    protected synchronized boolean saveAudit(Path path, long startTime, long endTime) throws JsonProcessingException, IOException {
-        HttpResponse response = null;
+    /**
+     * Download the log export into a file, the response is transferred
+     * straight into the file channel
+     *
+     * @param type
+     * @param path
+     * @param startTime
+     * @param endTime
+     * @throws IOException on failed request, including non-200 responses
+     */
+    protected void downloadExport(String type, Path path, long startTime, long endTime) throws IOException {
+        HttpResponse response = requestExport(type, startTime, endTime);
         try {
-            response = requestExport(AUDIT, startTime, endTime);
-            // Read the response and save to a file
-            try (FileOutputStream os = new FileOutputStream(path.toFile())) {
-                int bytes = IOUtils.copy(response.getEntity().getContent(), os);
+            checkExport(response);
+
+            try (ReadableByteChannel in = Channels.newChannel(response.getEntity().getContent());
+                    FileChannel out = FileChannel.open(path, StandardOpenOption.WRITE, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING)) {
+                long bytes = 0, transferred;
+                // Zero means the end of the response
+                while ((transferred = out.transferFrom(in, bytes, TRANSFER_SIZE)) > 0) {
+                    bytes += transferred;
+                }
                 LOGGER.debug("Copied {} bytes", bytes);
             }
-        } catch (Exception ex) {
-            return false;
         } finally {
             HttpClientUtils.closeQuietly(response);
         }
+    }
 
-        return true;
+    private static void checkExport(HttpResponse response) throws HttpResponseException {
+        if (response.getStatusLine().getStatusCode() != 200) {
+            throw new HttpResponseException(response.getStatusLine().getStatusCode(), response.getStatusLine().getReasonPhrase());
+        }
     }
 
     /**
-     * EXPERIMENTAL
-     * 
-     * @param path
+     * Download the log export into a temporary file shared with concurrent
+     * callers requesting the same export
+     *
+     * @param type
      * @param startTime
      * @param endTime
-     * @return
-     * @throws JsonProcessingException
-     * @throws IOException 
+     * @return lease on the downloaded file, deleted after the last lease is
+     * closed
+     * @throws IOException
      */
-    protected synchronized boolean saveSystem(Path path, long startTime, long endTime) throws JsonProcessingException, IOException {
-        HttpResponse response = null;
-        try {
-            response = requestExport(SYSTEM, startTime, endTime);
-            // Read the response and save to a file
-            try (FileOutputStream os = new FileOutputStream(path.toFile())) {
-                int bytes = IOUtils.copy(response.getEntity().getContent(), os);
-                LOGGER.debug("Copied {} bytes", bytes);
+    protected RhapsodyLogSingleFlight.Lease<Path> shareExport(String type, long startTime, long endTime) throws IOException {
+        long exportStart = toExportTime(startTime);
+        long exportEnd = toExportTime(endTime);
+        return DOWNLOADS.acquire(exportKey(type, exportStart, exportEnd), () -> {
+            Path file = Files.createTempFile("rhapsody-" + type.toLowerCase(Locale.ENGLISH) + "-", ".zip");
+            try {
+                downloadExport(type, file, exportStart, exportEnd);
+            } catch (IOException | RuntimeException ex) {
+                deleteQuietly(file);
+                throw ex;
             }
+
+            return file;
+        });
+    }
+
+    protected void saveExport(String type, Path path, long startTime, long endTime) throws IOException {
+        try (RhapsodyLogSingleFlight.Lease<Path> export = shareExport(type, startTime, endTime);
+                FileChannel in = FileChannel.open(export.get(), StandardOpenOption.READ);
+                FileChannel out = FileChannel.open(path, StandardOpenOption.WRITE, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            long size = in.size(), position = 0;
+            while (position < size) {
+                position += in.transferTo(position, size - position, out);
+            }
+        }
+    }
+
+    protected boolean saveAudit(Path path, long startTime, long endTime) throws JsonProcessingException, IOException {
+        try {
+            saveExport(AUDIT, path, startTime, endTime);
         } catch (Exception ex) {
+            LOGGER.warn("Unable to save the audit log export to {}", path, ex);
+            return false;
+        }
+
+        return true;
+    }
+
+    protected boolean saveSystem(Path path, long startTime, long endTime) throws JsonProcessingException, IOException {
+        try {
+            saveExport(SYSTEM, path, startTime, endTime);
+        } catch (Exception ex) {
+            LOGGER.warn("Unable to save the system log export to {}", path, ex);
             return false;
-        } finally {
-            HttpClientUtils.closeQuietly(response);
         }
 
         return true;
     }
 
-    public synchronized List<RhapsodyLogEntry> requestAuditEntries(long startTime, long endTime) throws IOException {
+    /**
+     * Lazily stream the audit log entries. The stream holds the downloaded
+     * export open and must be closed.
+     *
+     * @param startTime
+     * @param endTime
+     * @return
+     * @throws IOException
+     */
+    public Stream<RhapsodyLogEntry> streamAuditEntries(long startTime, long endTime) throws IOException {
         LOGGER.info("Requesting audit logs from Rhapsody between {} and {}", startTime, endTime);
-        List<RhapsodyLogEntry> entries = new ArrayList<>();
-
-        HttpResponse logsResponse = requestExport(AUDIT, startTime, endTime);
-        try (ZipArchiveInputStream zis = new ZipArchiveInputStream(logsResponse.getEntity().getContent())) {
-            ArchiveEntry entry;
-            while ((entry = zis.getNextEntry()) != null) {
-                LOGGER.trace("Log export zip entry: {}", entry.getName());
-                if (entry.isDirectory()) {
-                    continue;
-                }
 
-                // Read the entrie
-                StringBuilder sb = new StringBuilder(250);
-                String prevLine = "";
-                String line = "";
-                int prevB = -1;
-                int b;
-                while ((b = zis.read()) != -1) {
-                    // Assume \n
-                    if (b == 10) {
-                        // New line
-                        line = sb.toString().trim();
-                        if (prevLine.isEmpty()) {
-                            prevLine = line;
-                        } else {
-                            if (line.matches("^\\d{4}\\-\\d{2}\\-\\d{2}.+")) {
-                                // Parse the previous line
-                                try {
-                                    entries.add(parseAuditLine(prevLine));
-                                } catch (ParseException e) {
-                                    LOGGER.warn("Unable to parse line. Ignoring the line", e);
-                                }
-
-                                // Start a new log line
-                                prevLine = line;
-                            } else {
-                                // Log line continues on another line
-                                prevLine += MESSAGE_SEPARATOR + line.trim();
-                            }
-                        }
-
-                        // Create new buffer
-                        sb = new StringBuilder(250);
-                    }
+        return streamExport(AUDIT, startTime, endTime, this::parseAuditLine);
+    }
+
+    /**
+     * Stream the entries of a shared export download
+     *
+     * @param type
+     * @param startTime
+     * @param endTime
+     * @param parser
+     * @return
+     * @throws IOException
+     */
+    protected Stream<RhapsodyLogEntry> streamExport(String type, long startTime, long endTime, RhapsodyLogEntryIterator.LineParser parser) throws IOException {
+        RhapsodyLogSingleFlight.Lease<Path> export = shareExport(type, startTime, endTime);
+        try {
+            return streamEntries(export.get(), parser)
+                    .onClose(export::close);
+        } catch (IOException | RuntimeException ex) {
+            export.close();
+            throw ex;
+        }
+    }
 
-                    sb.append((char) b);
+    /**
+     * Lazily stream the audit log entries, exported in time shards
+     * downloaded in parallel
+     *
+     * @param startTime
+     * @param endTime
+     * @param shardSize time window of a single export request
+     * @param parallelism maximum concurrent export requests
+     * @return
+     * @throws IOException
+     * @see RhapsodyLogShardedExport
+     */
+    public Stream<RhapsodyLogEntry> streamAuditEntries(long startTime, long endTime, Duration shardSize, int parallelism) throws IOException {
+        LOGGER.info("Requesting sharded audit logs from Rhapsody between {} and {}", startTime, endTime);
 
-                    prevB = b;
-                }
+        return new RhapsodyLogShardedExport(this, AUDIT, this::parseAuditLine, shardSize, parallelism)
+                .stream(startTime, endTime);
+    }
 
-                // Parse the last line
-                try {
-                    entries.add(parseAuditLine(prevLine));
-                } catch (ParseException e) {
-                    LOGGER.warn("Unable to parse line. Ignoring the line", e);
+    /**
+     * Save the audit log export into a file while streaming its entries,
+     * both from a single transfer. The rest of the export is saved when the
+     * stream is closed early.
+     *
+     * @param path archive file
+     * @param startTime
+     * @param endTime
+     * @return entries, the stream must be closed
+     * @throws IOException
+     */
+    public Stream<RhapsodyLogEntry> teeAuditEntries(Path path, long startTime, long endTime) throws IOException {
+        return teeExport(AUDIT, path, startTime, endTime, this::parseAuditLine);
+    }
+
+    /**
+     * Save the system log export into a file while streaming its entries
+     *
+     * @param path archive file
+     * @param startTime
+     * @param endTime
+     * @return entries, the stream must be closed
+     * @throws IOException
+     * @see #teeAuditEntries(Path, long, long)
+     */
+    public Stream<RhapsodyLogEntry> teeSystemEntries(Path path, long startTime, long endTime) throws IOException {
+        return combineChanges(teeExport(SYSTEM, path, startTime, endTime, this::parseSystemLine));
+    }
+
+    protected Stream<RhapsodyLogEntry> teeExport(String type, Path path, long startTime, long endTime, RhapsodyLogEntryIterator.LineParser parser) throws IOException {
+        LOGGER.info("Saving {} logs from Rhapsody into {}", type, path);
+
+        HttpResponse response = requestExport(type, startTime, endTime);
+        try {
+            checkExport(response);
+
+            FileChannel out = FileChannel.open(path, StandardOpenOption.WRITE, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING);
+            InputStream in = new TeeInputStream(response.getEntity().getContent(), Channels.newOutputStream(out), true) {
+                @Override
+                public void close() throws IOException {
+                    try {
+                        // Complete the archive
+                        IOUtils.skip(this, Long.MAX_VALUE);
+                    } finally {
+                        super.close();
+                    }
                 }
-            }
-        } finally {
-            HttpClientUtils.closeQuietly(logsResponse);
+            };
+
+            return streamEntries(in, parser)
+                    .onClose(() -> HttpClientUtils.closeQuietly(response));
+        } catch (IOException | RuntimeException ex) {
+            HttpClientUtils.closeQuietly(response);
+            throw ex;
         }
+    }
 
-        return entries;
+    /**
+     * Concurrent callers for the same window share the parsed entries
+     *
+     * @param startTime
+     * @param endTime
+     * @return unmodifiable list of entries
+     * @throws IOException
+     */
+    public List<RhapsodyLogEntry> requestAuditEntries(long startTime, long endTime) throws IOException {
+        long exportStart = toExportTime(startTime);
+        long exportEnd = toExportTime(endTime);
+        try (RhapsodyLogSingleFlight.Lease<List<RhapsodyLogEntry>> entries = AUDIT_ENTRIES.acquire(exportKey(AUDIT, exportStart, exportEnd), () -> {
+            try (Stream<RhapsodyLogEntry> stream = streamAuditEntries(exportStart, exportEnd)) {
+                return Collections.unmodifiableList(stream.collect(Collectors.toList()));
+            } catch (UncheckedIOException ex) {
+                throw ex.getCause();
+            }
+        })) {
+            return entries.get();
+        }
     }
 
     /**
-     * EXPERIMENTAL
-     * 
+     * Lazily stream the system log entries, configuration changes are
+     * combined into change entries. The stream holds the downloaded export
+     * open and must be closed.
+     *
      * @param startTime
      * @param endTime
      * @return
-     * @throws IOException 
+     * @throws IOException
+     * @see RhapsodyLogChangeCombiner
      */
-    protected synchronized List<RhapsodyLogEntry> requestSystemEntries(long startTime, long endTime) throws IOException {
+    public Stream<RhapsodyLogEntry> streamSystemEntries(long startTime, long endTime) throws IOException {
         LOGGER.info("Requesting system logs from Rhapsody between {} and {}", startTime, endTime);
-        List<RhapsodyLogEntry> entries = new ArrayList<>();
-
-        HttpResponse logsResponse = requestExport(SYSTEM, startTime, endTime);
-        try (ZipArchiveInputStream zis = new ZipArchiveInputStream(logsResponse.getEntity().getContent())) {
-            ArchiveEntry entry;
-            while ((entry = zis.getNextEntry()) != null) {
-                LOGGER.trace("Log export zip entry: {}", entry.getName());
-                if (entry.isDirectory()) {
-                    continue;
-                }
 
-                // Read the entrie
-                StringBuilder sb = new StringBuilder(250);
-                String prevLine = "";
-                String line = "";
-                int prevB = -1;
-                int b;
-                while ((b = zis.read()) != -1) {
-                    // Assume \n
-                    if (b == 10) {
-                        // New line
-                        line = sb.toString().trim();
-                        if (prevLine.isEmpty()) {
-                            prevLine = line;
-                        } else {
-                            if (line.matches("^\\d{4}\\-\\d{2}\\-\\d{2}.+")) {
-                                // Parse the previous line
-                                try {
-                                    entries.add(parseSystemLine(prevLine));
-                                } catch (ParseException e) {
-                                    LOGGER.warn("Unable to parse line. Ignoring the line", e);
-                                }
-
-                                // Start a new log line
-                                prevLine = line;
-                            } else {
-                                // Log line continues on another line
-                                prevLine += MESSAGE_SEPARATOR + line.trim();
-                            }
-                        }
-
-                        // Create new buffer
-                        sb = new StringBuilder(250);
-                    }
+        return combineChanges(streamExport(SYSTEM, startTime, endTime, this::parseSystemLine));
+    }
 
-                    sb.append((char) b);
+    private Stream<RhapsodyLogEntry> combineChanges(Stream<RhapsodyLogEntry> entries) {
+        Iterator<RhapsodyLogEntry> combined = new RhapsodyLogChangeCombiner(entries.iterator());
 
-                    prevB = b;
-                }
+        return StreamSupport.stream(Spliterators.spliteratorUnknownSize(combined, Spliterator.ORDERED | Spliterator.NONNULL), false)
+                .onClose(entries::close);
+    }
 
-                // Parse the last line
-                try {
-                    entries.add(parseAuditLine(prevLine));
-                } catch (ParseException e) {
-                    LOGGER.warn("Unable to parse line. Ignoring the line", e);
-                }
-            }
-        } finally {
-            HttpClientUtils.closeQuietly(logsResponse);
+    protected List<RhapsodyLogEntry> requestSystemEntries(long startTime, long endTime) throws IOException {
+        try (Stream<RhapsodyLogEntry> entries = streamSystemEntries(startTime, endTime)) {
+            return entries.collect(Collectors.toList());
+        } catch (UncheckedIOException ex) {
+            throw ex.getCause();
         }
+    }
 
-        // Change entries span multiple log lines, need to combine them
-        Pattern userVersionPattern = Pattern.compile("by '([^\\(]+)' at version '([^']+)'", Pattern.CASE_INSENSITIVE);
-        List<RhapsodyLogEntry> combinedEntries = new ArrayList<>();
-        /*RhapsodyLogEntry entry, nextEntry = null;
-        Iterator<RhapsodyLogEntry> iter = entries.iterator();
-        while (iter.hasNext()) {
-            entry = iter.next();
-            if (iter.hasNext()) {
-                nextEntry = iter.next();
-            }
+    /**
+     * Stream the entries from the log export response
+     *
+     * @param response export response, closed with the stream
+     * @param parser
+     * @return
+     * @throws IOException
+     */
+    protected Stream<RhapsodyLogEntry> streamEntries(HttpResponse response, RhapsodyLogEntryIterator.LineParser parser) throws IOException {
+        try {
+            return streamEntries(response.getEntity().getContent(), parser)
+                    .onClose(() -> HttpClientUtils.closeQuietly(response));
+        } catch (IOException | RuntimeException ex) {
+            HttpClientUtils.closeQuietly(response);
+            throw ex;
+        }
+    }
 
-            if (entry.getMessage().contains("Configuration changes committed")
-                    && nextEntry != null && nextEntry.getMessage().contains("changed by user")) {
-                // Change entry start, contains commit comment and version
-                String version = "";
-                String username = "";
-                String comment = "";
-
-                Matcher userVersionMatcher = userVersionPattern.matcher(entry.getMessage());
-                if (userVersionMatcher.matches()) {
-                    username = userVersionMatcher.group(1);
-                    version = userVersionMatcher.group(2);
-                }
+    /**
+     * Stream the entries from the downloaded log export archive, large
+     * archives are parsed in parallel
+     *
+     * @param archive export archive
+     * @param parser
+     * @return
+     * @throws IOException
+     * @see RhapsodyLogParallelParser
+     */
+    protected Stream<RhapsodyLogEntry> streamEntries(Path archive, RhapsodyLogEntryIterator.LineParser parser) throws IOException {
+        if (parallelParse && Runtime.getRuntime().availableProcessors() > 1
+                && Files.size(archive) >= PARALLEL_PARSE_THRESHOLD) {
+            LOGGER.debug("Parsing {} in parallel", archive);
+            // Own threads, blocking reads are kept off the common pool
+            int parallelism = Math.min(RhapsodyLogParallelParser.DEFAULT_PARALLELISM, Runtime.getRuntime().availableProcessors());
+            return new RhapsodyLogParallelParser(parser, parallelism).stream(archive);
+        }
 
-                // Comment
-                String[] commentParts = entry.getMessage().split(MESSAGE_SEPARATOR);
-                comment = commentParts[1].trim();
-                // Add a change entry combined between current and next entries
-                combinedEntries.add(new RhapsodyChangeEntry(entry.getDate(), version, comment, username, nextEntry.getMessage(), ""));
-            } else {
-                // Normal log entries, add both
-                combinedEntries.add(entry);
-                combinedEntries.add(nextEntry);
-            }
-        }*/
+        return streamEntries(Files.newInputStream(archive), parser);
+    }
+
+    /**
+     * Stream the entries from the log export archive
+     *
+     * @param in export archive, closed with the stream
+     * @param parser
+     * @return
+     */
+    protected Stream<RhapsodyLogEntry> streamEntries(InputStream in, RhapsodyLogEntryIterator.LineParser parser) {
+        RhapsodyLogEntryIterator iterator = new RhapsodyLogEntryIterator(new ZipArchiveInputStream(in), parser);
 
-        return combinedEntries;
+        return StreamSupport.stream(Spliterators.spliteratorUnknownSize(iterator, Spliterator.ORDERED | Spliterator.NONNULL), false)
+                .onClose(() -> IOUtils.closeQuietly(iterator));
+    }
+
+    /**
+     * Whole second the time is sent as, the export is not more precise
+     */
+    static long toExportTime(long time) {
+        return Math.floorDiv(time, 1000) * 1000;
+    }
+
+    private List<Object> exportKey(String type, long startTime, long endTime) {
+        // Shared clients are per server and credentials, an export is only
+        // shared by the callers authenticated the same way
+        return Arrays.asList(baseUrl, client, type, startTime, endTime);
+    }
+
+    private static void deleteQuietly(Path path) {
+        try {
+            Files.deleteIfExists(path);
+        } catch (IOException ex) {
+            LOGGER.warn("Unable to delete {}", path, ex);
+        }
     }
 
     protected RhapsodyLogEntry parseAuditLine(String line) throws ParseException {
-        String parts[] = line.split("\\|");
-        if (parts.length < 8) {
+        RhapsodyLogLineTokenizer parts = new RhapsodyLogLineTokenizer(line);
+        if (parts.size() < 8) {
             throw new ParseException(line, 0);
         }
 
-        String datePart = parts[0].trim();
-        String timePart = parts[1].trim();
-        String username = parts[5].trim();
-        String message = parts[6].trim();
-        String type = parts[7].trim();
+        // Columns 2 to 4 are not used
+        Date date = parts.getDate(0, 1);
+        String username = parts.get(5);
+        String message = parts.get(6);
+        String type = parts.get(7);
 
-        // 2020-03-23 12:20:47.763-04:00
-        SimpleDateFormat dateFormat = new SimpleDateFormat("yyyy-MM-dd HH:mm:ss.SSSXXX");
-        Date date = dateFormat.parse(datePart + " " + timePart);
+        return createEntry(date, username, message, type);
+    }
 
+    /**
+     * Create the entry, change entries are identified by type
+     *
+     * @param date
+     * @param username
+     * @param message
+     * @param type
+     * @return
+     */
+    public static RhapsodyLogEntry createEntry(Date date, String username, String message, String type) {
         if (type.contains("Change")) {
             return new RhapsodyChangeEntry(date, username, message, type);
         } else {
@@ -363,28 +519,15 @@ public class RhapsodyLog {
         }
     }
 
-    /**
-     * EXPERIMENTAL
-     * 
-     * @param line
-     * @return
-     * @throws ParseException 
-     */
     protected RhapsodyLogEntry parseSystemLine(String line) throws ParseException {
-        String parts[] = line.split("\\|");
-        if (parts.length < 7) {
+        RhapsodyLogLineTokenizer parts = new RhapsodyLogLineTokenizer(line);
+        if (parts.size() < 7) {
             throw new ParseException(line, 0);
         }
 
-        String datePart = parts[0].trim();
-        String timePart = parts[1].trim();
-        String logger = parts[4].trim();
-        String component = parts[5].trim();
-        String message = parts[6].trim();
-
-        // 2020-03-23 12:20:47.763-04:00
-        SimpleDateFormat dateFormat = new SimpleDateFormat("yyyy-MM-dd HH:mm:ss.SSSXXX");
-        Date date = dateFormat.parse(datePart + " " + timePart);
+        Date date = parts.getDate(0, 1);
+        String logger = parts.get(4);
+        String message = parts.get(6);
 
         return new RhapsodyLogEntry(date, logger, message, "");
     }
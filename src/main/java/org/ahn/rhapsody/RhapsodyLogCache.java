@@ -0,0 +1,470 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2020 me.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.ahn.rhapsody;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * On-disk cache of parsed log entries for a Rhapsody server and credentials.
+ * <p>
+ * Entries are kept in {@link RhapsodyLogSegment} files, one per time bucket.
+ * A bucket is cached once it is older than the settle time, so no more
+ * entries are expected for it. A request is served from the cached buckets
+ * and only the gaps between them are exported from the server.
+ * <p>
+ * Segments not read or written for longer than the retention time are
+ * deleted, along with the temporary files left over by interrupted exports.
+ *
+ * @author me
+ */
+public class RhapsodyLogCache {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(RhapsodyLogCache.class);
+
+    private static final String SEGMENT_EXTENSION = ".seg";
+    private static final String TEMPORARY_EXTENSION = ".tmp";
+    private static final long PRUNE_INTERVAL = Duration.ofHours(1).toMillis();
+    private static final ConcurrentMap<Path, RhapsodyLogCache> CACHES = new ConcurrentHashMap<>();
+
+    /**
+     * Export of the log entries from the server
+     */
+    @FunctionalInterface
+    public interface Source {
+
+        Stream<RhapsodyLogEntry> stream(long startTime, long endTime) throws IOException;
+    }
+
+    private final Path directory;
+    private long bucketSize = Duration.ofHours(1).toMillis();
+    private long settleTime = Duration.ofMinutes(10).toMillis();
+    private long retention = Duration.ofDays(30).toMillis();
+    private volatile long lastPruned = Long.MIN_VALUE;
+
+    protected RhapsodyLogCache(Path directory) {
+        this.directory = directory;
+    }
+
+    /**
+     * Get the cache shared by everyone exporting the log type from the
+     * server with the same credentials. Entries exported with other
+     * credentials are not served, they may not see the same entries.
+     *
+     * @param root cache root directory
+     * @param baseUrl server URL
+     * @param credentialsId credentials of the export
+     * @param type log type
+     * @return
+     */
+    public static RhapsodyLogCache get(Path root, String baseUrl, String credentialsId, String type) {
+        Path directory = root.resolve(directoryName(baseUrl))
+                .resolve(credentialsName(credentialsId))
+                .resolve(type.toLowerCase(Locale.ENGLISH)).toAbsolutePath().normalize();
+        return CACHES.computeIfAbsent(directory, RhapsodyLogCache::new);
+    }
+
+    static String directoryName(String baseUrl) {
+        return baseUrl.toLowerCase(Locale.ENGLISH)
+                .replaceFirst("/+$", "")
+                .replaceAll("[^a-z0-9.-]+", "_");
+    }
+
+    /**
+     * Hash of the credentials id, which is case sensitive and may contain any
+     * character
+     */
+    static String credentialsName(String credentialsId) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            byte[] hash = digest.digest(String.valueOf(credentialsId).getBytes(StandardCharsets.UTF_8));
+            StringBuilder sb = new StringBuilder();
+            for (int i = 0; i < 8; i++) {
+                sb.append(String.format("%02x", hash[i]));
+            }
+            return sb.toString();
+        } catch (NoSuchAlgorithmException ex) {
+            throw new IllegalStateException(ex);
+        }
+    }
+
+    public Path getDirectory() {
+        return directory;
+    }
+
+    public void setBucketSize(Duration bucketSize) {
+        this.bucketSize = bucketSize.toMillis();
+    }
+
+    /**
+     * How long after the end of a bucket before it can be cached
+     *
+     * @param settleTime
+     */
+    public void setSettleTime(Duration settleTime) {
+        this.settleTime = settleTime.toMillis();
+    }
+
+    /**
+     * How long a segment is kept after it was last read or written
+     *
+     * @param retention
+     */
+    public void setRetention(Duration retention) {
+        this.retention = retention.toMillis();
+    }
+
+    /**
+     * Stream the entries logged between the start and end time. The stream
+     * must be closed.
+     *
+     * @param startTime
+     * @param endTime
+     * @param source export of the missing entries
+     * @return
+     * @throws IOException
+     */
+    public Stream<RhapsodyLogEntry> stream(long startTime, long endTime, Source source) throws IOException {
+        Files.createDirectories(directory);
+
+        long now = System.currentTimeMillis();
+        if (now - lastPruned >= PRUNE_INTERVAL) {
+            lastPruned = now;
+            prune(now);
+        }
+
+        List<Part> parts = plan(startTime, endTime, now);
+        LOGGER.info("Serving logs between {} and {} from {} part(s) of {}", startTime, endTime, parts.size(), directory);
+
+        return parts.stream().flatMap(part -> {
+            try {
+                return part.open(source);
+            } catch (IOException ex) {
+                throw new UncheckedIOException(ex);
+            }
+        });
+    }
+
+    /**
+     * Split the time range into cached buckets and runs of missing buckets
+     */
+    List<Part> plan(long startTime, long endTime, long now) {
+        List<Part> parts = new ArrayList<>();
+        Fetch fetch = null;
+        for (long bucket = Math.floorDiv(startTime, bucketSize); bucket <= Math.floorDiv(endTime, bucketSize); bucket++) {
+            if (Files.isRegularFile(segment(bucket))) {
+                fetch = null;
+                parts.add(new Cached(bucket, startTime, endTime));
+                continue;
+            }
+
+            // Extend the current run of missing buckets
+            if (fetch == null) {
+                fetch = new Fetch(startTime, endTime);
+                parts.add(fetch);
+            }
+            fetch.add(bucket, (bucket + 1) * bucketSize + settleTime <= now);
+        }
+
+        return parts;
+    }
+
+    /**
+     * Delete the segments past the retention time and the temporary files
+     * of the exports which did not complete
+     *
+     * @param now
+     */
+    void prune(long now) {
+        int deleted = 0;
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(directory)) {
+            for (Path file : files) {
+                String name = file.getFileName().toString();
+                if (!name.endsWith(SEGMENT_EXTENSION) && !name.endsWith(TEMPORARY_EXTENSION)) {
+                    continue;
+                }
+
+                try {
+                    long age = now - Files.getLastModifiedTime(file).toMillis();
+                    // Temporary files of a running export are at most a few minutes old
+                    long maxAge = name.endsWith(SEGMENT_EXTENSION) ? retention : Duration.ofDays(1).toMillis();
+                    if (age > maxAge && Files.deleteIfExists(file)) {
+                        deleted++;
+                    }
+                } catch (IOException ex) {
+                    // Read or deleted concurrently, try again next time
+                    LOGGER.debug("Unable to prune {}", file, ex);
+                }
+            }
+        } catch (IOException ex) {
+            LOGGER.warn("Unable to prune the logs cached in {}", directory, ex);
+        }
+
+        if (deleted > 0) {
+            LOGGER.info("Pruned {} file(s) from {}", deleted, directory);
+        }
+    }
+
+    Path segment(long bucket) {
+        return directory.resolve(bucket + SEGMENT_EXTENSION);
+    }
+
+    /**
+     * Keep the segment in use from being pruned
+     */
+    private void touch(Path file) {
+        try {
+            Files.setLastModifiedTime(file, FileTime.fromMillis(System.currentTimeMillis()));
+        } catch (IOException ex) {
+            LOGGER.debug("Unable to touch {}", file, ex);
+        }
+    }
+
+    abstract class Part {
+
+        abstract Stream<RhapsodyLogEntry> open(Source source) throws IOException;
+    }
+
+    class Cached extends Part {
+
+        final long bucket;
+        final long startTime;
+        final long endTime;
+
+        Cached(long bucket, long startTime, long endTime) {
+            this.bucket = bucket;
+            this.startTime = startTime;
+            this.endTime = endTime;
+        }
+
+        @Override
+        Stream<RhapsodyLogEntry> open(Source source) throws IOException {
+            Path file = segment(bucket);
+            RhapsodyLogSegment.Reader reader = RhapsodyLogSegment.read(file, startTime, endTime);
+            touch(file);
+            return StreamSupport.stream(Spliterators.spliteratorUnknownSize(reader, Spliterator.ORDERED | Spliterator.NONNULL), false)
+                    .onClose(() -> {
+                        try {
+                            reader.close();
+                        } catch (IOException ex) {
+                            LOGGER.debug("Unable to close {}", file, ex);
+                        }
+                    });
+        }
+    }
+
+    /**
+     * Run of missing buckets, exported at once. The settled buckets are
+     * exported whole and written to the cache along the way.
+     */
+    class Fetch extends Part {
+
+        final long startTime;
+        final long endTime;
+        final List<Long> buckets = new ArrayList<>();
+        long lastSettled = Long.MIN_VALUE;
+
+        Fetch(long startTime, long endTime) {
+            this.startTime = startTime;
+            this.endTime = endTime;
+        }
+
+        void add(long bucket, boolean settled) {
+            buckets.add(bucket);
+            if (settled) {
+                lastSettled = bucket;
+            }
+        }
+
+        boolean isSettled(long bucket) {
+            return bucket <= lastSettled;
+        }
+
+        boolean contains(long bucket) {
+            // Buckets of a run are consecutive
+            return bucket >= buckets.get(0) && bucket <= buckets.get(buckets.size() - 1);
+        }
+
+        @Override
+        Stream<RhapsodyLogEntry> open(Source source) throws IOException {
+            long first = buckets.get(0);
+            long last = buckets.get(buckets.size() - 1);
+            long fetchStart = isSettled(first) ? first * bucketSize : startTime;
+            // The export is precise to the second, end on the next whole one to get the last second of the bucket
+            long fetchEnd = isSettled(last) ? Math.floorDiv((last + 1) * bucketSize + 999, 1000) * 1000 : endTime;
+
+            Stream<RhapsodyLogEntry> entries = source.stream(fetchStart, fetchEnd);
+            Tee tee = new Tee(entries.iterator(), this);
+            return StreamSupport.stream(Spliterators.spliteratorUnknownSize(tee, Spliterator.ORDERED | Spliterator.NONNULL), false)
+                    .onClose(() -> {
+                        tee.close();
+                        entries.close();
+                    });
+        }
+    }
+
+    /**
+     * Passes the requested entries through while writing the settled
+     * buckets. The buckets are committed only when the export was read to
+     * the end.
+     */
+    class Tee implements Iterator<RhapsodyLogEntry> {
+
+        private final Iterator<RhapsodyLogEntry> entries;
+        private final Fetch fetch;
+        private final Map<Long, RhapsodyLogSegment.Writer> writers = new LinkedHashMap<>();
+        private RhapsodyLogSegment.Writer writer;
+        private long writerBucket = Long.MIN_VALUE;
+        private boolean caching = true;
+        private boolean complete = false;
+        private RhapsodyLogEntry next;
+
+        Tee(Iterator<RhapsodyLogEntry> entries, Fetch fetch) {
+            this.entries = entries;
+            this.fetch = fetch;
+        }
+
+        @Override
+        public boolean hasNext() {
+            while (next == null) {
+                if (!entries.hasNext()) {
+                    complete = true;
+                    return false;
+                }
+
+                RhapsodyLogEntry entry = entries.next();
+                write(entry);
+
+                long time = entry.getDate().getTime();
+                // Entries past the run are served by the next part
+                if (time >= fetch.startTime && time <= fetch.endTime && fetch.contains(Math.floorDiv(time, bucketSize))) {
+                    next = entry;
+                }
+            }
+
+            return true;
+        }
+
+        @Override
+        public RhapsodyLogEntry next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+
+            RhapsodyLogEntry entry = next;
+            next = null;
+            return entry;
+        }
+
+        private void write(RhapsodyLogEntry entry) {
+            long bucket = Math.floorDiv(entry.getDate().getTime(), bucketSize);
+            if (!caching || !fetch.contains(bucket) || !fetch.isSettled(bucket)) {
+                return;
+            }
+
+            try {
+                if (bucket != writerBucket) {
+                    if (bucket < writerBucket) {
+                        throw new IOException("Log entries are out of order");
+                    }
+                    writer = openWriter(bucket);
+                    writerBucket = bucket;
+                }
+
+                if (!writer.append(entry)) {
+                    throw new IOException("Log entries are out of order");
+                }
+            } catch (IOException ex) {
+                LOGGER.warn("Unable to cache logs in {}, continuing without the cache", directory, ex);
+                caching = false;
+                discard();
+            }
+        }
+
+        private RhapsodyLogSegment.Writer openWriter(long bucket) throws IOException {
+            if (writer != null) {
+                // Entries are ordered, the previous bucket is done
+                writer.finish();
+            }
+
+            RhapsodyLogSegment.Writer bucketWriter = new RhapsodyLogSegment.Writer(Files.createTempFile(directory, bucket + "-", TEMPORARY_EXTENSION));
+            writers.put(bucket, bucketWriter);
+            return bucketWriter;
+        }
+
+        void close() {
+            if (!complete || !caching) {
+                discard();
+                return;
+            }
+
+            try {
+                // Every settled bucket is covered, including the ones without entries
+                for (long bucket : fetch.buckets) {
+                    if (fetch.isSettled(bucket) && !writers.containsKey(bucket)) {
+                        openWriter(bucket);
+                    }
+                }
+
+                for (Map.Entry<Long, RhapsodyLogSegment.Writer> bucketWriter : writers.entrySet()) {
+                    bucketWriter.getValue().commit(segment(bucketWriter.getKey()));
+                }
+                LOGGER.debug("Cached {} bucket(s) in {}", writers.size(), directory);
+                writers.clear();
+            } catch (IOException ex) {
+                LOGGER.warn("Unable to cache logs in {}", directory, ex);
+                discard();
+            }
+        }
+
+        private void discard() {
+            writers.values().forEach(RhapsodyLogSegment.Writer::discard);
+            writers.clear();
+        }
+    }
+
+}
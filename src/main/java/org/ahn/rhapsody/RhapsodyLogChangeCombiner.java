@@ -0,0 +1,126 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2020 me.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.ahn.rhapsody;
+
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Combines the system log records of a configuration change into a single
+ * change entry.
+ * <p>
+ * A change is logged as a "Configuration changes committed" record, carrying
+ * the user, version and comment, followed by a "changed by user" record
+ * listing the modified components. Entries are combined in a single pass,
+ * holding at most one entry ahead of the source.
+ *
+ * @author me
+ */
+public class RhapsodyLogChangeCombiner implements Iterator<RhapsodyLogEntry> {
+
+    // Change entries span multiple log lines, need to combine them
+    private static final Pattern userVersionPattern = Pattern.compile("by '([^\\(]+)' at version '([^']+)'", Pattern.CASE_INSENSITIVE);
+
+    private final Iterator<RhapsodyLogEntry> source;
+    private RhapsodyLogEntry pending;
+
+    public RhapsodyLogChangeCombiner(Iterator<RhapsodyLogEntry> source) {
+        this.source = source;
+    }
+
+    @Override
+    public boolean hasNext() {
+        return pending != null || source.hasNext();
+    }
+
+    @Override
+    public RhapsodyLogEntry next() {
+        RhapsodyLogEntry entry = take();
+        if (entry == null) {
+            throw new NoSuchElementException();
+        }
+
+        if (!isCommit(entry)) {
+            return entry;
+        }
+
+        RhapsodyLogEntry nextEntry = take();
+        if (nextEntry == null || !isChange(nextEntry)) {
+            // Not a change pair, the next entry is emitted on its own
+            pending = nextEntry;
+            return entry;
+        }
+
+        return combine(entry, nextEntry);
+    }
+
+    private RhapsodyLogEntry take() {
+        if (pending != null) {
+            RhapsodyLogEntry entry = pending;
+            pending = null;
+            return entry;
+        }
+
+        return source.hasNext() ? source.next() : null;
+    }
+
+    static boolean isCommit(RhapsodyLogEntry entry) {
+        return entry.getMessage().contains("Configuration changes committed");
+    }
+
+    static boolean isChange(RhapsodyLogEntry entry) {
+        return entry.getMessage().contains("changed by user");
+    }
+
+    /**
+     * Change entry start, contains commit comment and version
+     *
+     * @param entry commit entry
+     * @param nextEntry change entry
+     * @return
+     */
+    static RhapsodyChangeEntry combine(RhapsodyLogEntry entry, RhapsodyLogEntry nextEntry) {
+        String version = "";
+        String username = "";
+        String comment = "";
+
+        Matcher userVersionMatcher = userVersionPattern.matcher(entry.getMessage());
+        if (userVersionMatcher.find()) {
+            username = userVersionMatcher.group(1).trim();
+            version = userVersionMatcher.group(2);
+        }
+
+        // Comment
+        String[] commentParts = entry.getMessage().split(RhapsodyLog.MESSAGE_SEPARATOR);
+        if (commentParts.length > 1) {
+            comment = commentParts[1].trim();
+        }
+
+        // Add a change entry combined between current and next entries
+        return new RhapsodyChangeEntry(entry.getDate(), version, comment, username, nextEntry.getMessage(), "");
+    }
+
+}
@@ -0,0 +1,127 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2020 me.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.ahn.rhapsody;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.text.ParseException;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import org.apache.commons.compress.archivers.ArchiveEntry;
+import org.apache.commons.compress.archivers.ArchiveInputStream;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Lazily parses log entries from every file of a log export archive
+ *
+ * @author me
+ */
+public class RhapsodyLogEntryIterator implements Iterator<RhapsodyLogEntry>, Closeable {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(RhapsodyLogEntryIterator.class);
+
+    /**
+     * Parser of a single log record
+     */
+    @FunctionalInterface
+    public interface LineParser {
+
+        RhapsodyLogEntry parse(String line) throws ParseException;
+    }
+
+    private final ArchiveInputStream archive;
+    private final LineParser parser;
+
+    private RhapsodyLogRecordReader reader;
+    private RhapsodyLogEntry next;
+
+    public RhapsodyLogEntryIterator(ArchiveInputStream archive, LineParser parser) {
+        this.archive = archive;
+        this.parser = parser;
+    }
+
+    @Override
+    public boolean hasNext() {
+        if (next == null) {
+            try {
+                next = advance();
+            } catch (IOException ex) {
+                throw new UncheckedIOException(ex);
+            }
+        }
+
+        return next != null;
+    }
+
+    @Override
+    public RhapsodyLogEntry next() {
+        if (!hasNext()) {
+            throw new NoSuchElementException();
+        }
+
+        RhapsodyLogEntry entry = next;
+        next = null;
+        return entry;
+    }
+
+    private RhapsodyLogEntry advance() throws IOException {
+        while (true) {
+            if (reader == null) {
+                ArchiveEntry entry = archive.getNextEntry();
+                if (entry == null) {
+                    return null;
+                }
+
+                LOGGER.trace("Log export zip entry: {}", entry.getName());
+                if (entry.isDirectory()) {
+                    continue;
+                }
+
+                // The archive stream reads only the current entry
+                reader = new RhapsodyLogRecordReader(archive);
+            }
+
+            String record = reader.readRecord();
+            if (record == null) {
+                // Done with the entry, move to the next one
+                reader = null;
+                continue;
+            }
+
+            try {
+                return parser.parse(record);
+            } catch (ParseException e) {
+                LOGGER.warn("Unable to parse line. Ignoring the line", e);
+            }
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        archive.close();
+    }
+
+}
@@ -0,0 +1,212 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2020 me.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.ahn.rhapsody;
+
+import java.text.ParseException;
+import java.text.SimpleDateFormat;
+import java.time.DateTimeException;
+import java.time.OffsetDateTime;
+import java.time.ZoneOffset;
+import java.util.Arrays;
+import java.util.Date;
+
+/**
+ * Splits a pipe delimited log record into fields without copying them.
+ * <p>
+ * Only field offsets are recorded, fields are decoded on request. The field
+ * count follows {@link String#split(java.lang.String)}: trailing empty fields
+ * are not counted.
+ *
+ * @author me
+ */
+public class RhapsodyLogLineTokenizer {
+
+    public static final char SEPARATOR = '|';
+
+    // 2020-03-23 12:20:47.763-04:00
+    private static final String DATE_PATTERN = "yyyy-MM-dd HH:mm:ss.SSSXXX";
+    // SimpleDateFormat is not thread-safe, keep one per thread for the fallback
+    private static final ThreadLocal<SimpleDateFormat> LENIENT_DATE_FORMAT = ThreadLocal.withInitial(() -> new SimpleDateFormat(DATE_PATTERN));
+
+    private final String line;
+    // Raw start & end offsets for every field
+    private int[] bounds = new int[24];
+    private int fieldCount = 0;
+    private int size;
+
+    public RhapsodyLogLineTokenizer(String line) {
+        this.line = line;
+
+        int start = 0;
+        int lastNonEmpty = -1;
+        while (true) {
+            int end = line.indexOf(SEPARATOR, start);
+            if (end < 0) {
+                end = line.length();
+            }
+
+            if (fieldCount * 2 + 2 > bounds.length) {
+                bounds = Arrays.copyOf(bounds, bounds.length * 2);
+            }
+            bounds[fieldCount * 2] = start;
+            bounds[fieldCount * 2 + 1] = end;
+            if (end > start) {
+                lastNonEmpty = fieldCount;
+            }
+            fieldCount++;
+
+            if (end == line.length()) {
+                break;
+            }
+            start = end + 1;
+        }
+
+        size = line.isEmpty() ? 1 : lastNonEmpty + 1;
+    }
+
+    /**
+     * @return number of fields, as returned by
+     * <code>line.split("\\|").length</code>
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * @param index
+     * @return offset of the first non-whitespace character of the field
+     */
+    public int start(int index) {
+        int start = bounds[index * 2];
+        int end = bounds[index * 2 + 1];
+        while (start < end && line.charAt(start) <= ' ') {
+            start++;
+        }
+
+        return start;
+    }
+
+    /**
+     * @param index
+     * @return offset after the last non-whitespace character of the field
+     */
+    public int end(int index) {
+        int start = start(index);
+        int end = bounds[index * 2 + 1];
+        while (end > start && line.charAt(end - 1) <= ' ') {
+            end--;
+        }
+
+        return end;
+    }
+
+    /**
+     * @param index
+     * @return trimmed field value
+     */
+    public String get(int index) {
+        int start = start(index);
+        return line.substring(start, end(index));
+    }
+
+    /**
+     * Parse the date and time fields as <code>yyyy-MM-dd HH:mm:ss.SSSXXX</code>
+     *
+     * @param dateIndex
+     * @param timeIndex
+     * @return
+     * @throws ParseException
+     */
+    public Date getDate(int dateIndex, int timeIndex) throws ParseException {
+        int dateStart = start(dateIndex);
+        int timeStart = start(timeIndex);
+        int timeEnd = end(timeIndex);
+
+        if (end(dateIndex) - dateStart == 10 && (timeEnd - timeStart == 18 || timeEnd - timeStart == 13)) {
+            try {
+                return Date.from(parseDateTime(dateStart, timeStart, timeEnd).toInstant());
+            } catch (DateTimeException | NumberFormatException ex) {
+                // Let the lenient parser decide
+            }
+        }
+
+        return LENIENT_DATE_FORMAT.get().parse(get(dateIndex) + " " + get(timeIndex));
+    }
+
+    /**
+     * Parse fixed width date and time, without the intermediate string
+     */
+    private OffsetDateTime parseDateTime(int dateStart, int timeStart, int timeEnd) {
+        expect(dateStart + 4, '-');
+        expect(dateStart + 7, '-');
+        expect(timeStart + 2, ':');
+        expect(timeStart + 5, ':');
+        expect(timeStart + 8, '.');
+
+        int year = digits(dateStart, 4);
+        int month = digits(dateStart + 5, 2);
+        int day = digits(dateStart + 8, 2);
+        int hour = digits(timeStart, 2);
+        int minute = digits(timeStart + 3, 2);
+        int second = digits(timeStart + 6, 2);
+        int millis = digits(timeStart + 9, 3);
+
+        ZoneOffset offset;
+        char sign = line.charAt(timeStart + 12);
+        if (timeEnd - timeStart == 13 && sign == 'Z') {
+            offset = ZoneOffset.UTC;
+        } else if (timeEnd - timeStart == 18 && (sign == '+' || sign == '-')) {
+            expect(timeStart + 15, ':');
+            int hours = digits(timeStart + 13, 2);
+            int minutes = digits(timeStart + 16, 2);
+            offset = sign == '+'
+                    ? ZoneOffset.ofHoursMinutes(hours, minutes)
+                    : ZoneOffset.ofHoursMinutes(-hours, -minutes);
+        } else {
+            throw new NumberFormatException("Unexpected zone offset");
+        }
+
+        return OffsetDateTime.of(year, month, day, hour, minute, second, millis * 1_000_000, offset);
+    }
+
+    private void expect(int index, char ch) {
+        if (line.charAt(index) != ch) {
+            throw new NumberFormatException("Expected '" + ch + "' at " + index);
+        }
+    }
+
+    private int digits(int start, int length) {
+        int value = 0;
+        for (int i = start; i < start + length; i++) {
+            char ch = line.charAt(i);
+            if (ch < '0' || ch > '9') {
+                throw new NumberFormatException("Expected digit at " + i);
+            }
+            value = value * 10 + (ch - '0');
+        }
+
+        return value;
+    }
+
+}
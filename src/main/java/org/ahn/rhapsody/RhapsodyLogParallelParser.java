@@ -0,0 +1,353 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2020 me.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.ahn.rhapsody;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Path;
+import java.text.ParseException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Deque;
+import java.util.Enumeration;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.PriorityQueue;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+import org.apache.commons.io.IOUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Parses a downloaded log export on a pool of worker threads.
+ * <p>
+ * Every file of the archive is read concurrently and split into chunks of
+ * whole records, which are parsed in parallel while the next chunk is read.
+ * Records of a file come out in order; files are merged by entry date. Only
+ * a few chunks per file are read ahead of the consumer.
+ * <p>
+ * Reads block on the archive, so the parser should not run on a shared pool
+ * such as the common fork/join pool. Unless a pool is given, every stream
+ * has its own small pool, shut down when the stream is closed.
+ *
+ * @author me
+ */
+public class RhapsodyLogParallelParser {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(RhapsodyLogParallelParser.class);
+
+    public static final int DEFAULT_CHUNK_SIZE = 1024 * 1024;
+    public static final int DEFAULT_READ_AHEAD = 4;
+    public static final int DEFAULT_PARALLELISM = 4;
+
+    private static final AtomicInteger THREADS = new AtomicInteger();
+
+    private final RhapsodyLogEntryIterator.LineParser parser;
+    private final Executor pool;
+    private final int parallelism;
+    private int chunkSize = DEFAULT_CHUNK_SIZE;
+    private int readAhead = DEFAULT_READ_AHEAD;
+
+    /**
+     * Parse on a pool owned by each stream
+     *
+     * @param parser
+     * @param parallelism worker threads of a stream
+     */
+    public RhapsodyLogParallelParser(RhapsodyLogEntryIterator.LineParser parser, int parallelism) {
+        this.parser = parser;
+        this.pool = null;
+        this.parallelism = Math.max(1, parallelism);
+    }
+
+    /**
+     * Parse on the given pool, not shut down by the parser
+     *
+     * @param parser
+     * @param pool
+     */
+    public RhapsodyLogParallelParser(RhapsodyLogEntryIterator.LineParser parser, Executor pool) {
+        this.parser = parser;
+        this.pool = pool;
+        this.parallelism = 0;
+    }
+
+    /**
+     * @param chunkSize characters of records parsed by a single task
+     */
+    public void setChunkSize(int chunkSize) {
+        this.chunkSize = Math.max(1, chunkSize);
+    }
+
+    /**
+     * @param readAhead chunks per file read ahead of the consumer
+     */
+    public void setReadAhead(int readAhead) {
+        this.readAhead = Math.max(1, readAhead);
+    }
+
+    /**
+     * Stream the entries of the export archive
+     *
+     * @param archive
+     * @return entries, the stream must be closed
+     * @throws IOException
+     */
+    public Stream<RhapsodyLogEntry> stream(Path archive) throws IOException {
+        ExecutorService ownPool = pool == null ? newPool(parallelism) : null;
+        MergeIterator iterator;
+        try {
+            iterator = new MergeIterator(new ZipFile(archive.toFile()), pool == null ? ownPool : pool, ownPool);
+        } catch (IOException | RuntimeException ex) {
+            if (ownPool != null) {
+                ownPool.shutdownNow();
+            }
+            throw ex;
+        }
+
+        return StreamSupport.stream(Spliterators.spliteratorUnknownSize(iterator, Spliterator.ORDERED | Spliterator.NONNULL), false)
+                .onClose(() -> IOUtils.closeQuietly(iterator));
+    }
+
+    private static ExecutorService newPool(int parallelism) {
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(parallelism, parallelism, 30, TimeUnit.SECONDS, new LinkedBlockingQueue<>(), runnable -> {
+            Thread thread = new Thread(runnable, "rhapsody-log-parser-" + THREADS.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        // Threads of a stream which is never closed do not stay around
+        executor.allowCoreThreadTimeOut(true);
+        return executor;
+    }
+
+    List<RhapsodyLogEntry> parse(List<String> records) {
+        List<RhapsodyLogEntry> entries = new ArrayList<>(records.size());
+        for (String record : records) {
+            try {
+                entries.add(parser.parse(record));
+            } catch (ParseException e) {
+                LOGGER.warn("Unable to parse line. Ignoring the line", e);
+            }
+        }
+
+        return entries;
+    }
+
+    static class Chunk<T> {
+
+        final List<T> items;
+        final boolean last;
+
+        Chunk(List<T> items, boolean last) {
+            this.items = items;
+            this.last = last;
+        }
+    }
+
+    /**
+     * Records of a single archive file
+     */
+    class FileCursor {
+
+        final int index;
+        final RhapsodyLogRecordReader reader;
+        final Executor executor;
+        final Deque<CompletableFuture<Chunk<RhapsodyLogEntry>>> parsed = new ArrayDeque<>();
+        // Reads of a file are chained, parsing is not
+        CompletableFuture<Chunk<String>> lastRead;
+        volatile boolean closed = false;
+
+        Iterator<RhapsodyLogEntry> entries = Collections.emptyIterator();
+        boolean done = false;
+        RhapsodyLogEntry current;
+
+        FileCursor(int index, RhapsodyLogRecordReader reader, Executor executor) {
+            this.index = index;
+            this.reader = reader;
+            this.executor = executor;
+            this.lastRead = CompletableFuture.completedFuture(new Chunk<>(Collections.emptyList(), false));
+
+            for (int i = 0; i < readAhead; i++) {
+                schedule();
+            }
+        }
+
+        private void schedule() {
+            // Nothing left to read after the last chunk
+            lastRead = lastRead.thenApplyAsync(previous -> previous.last ? new Chunk<>(Collections.emptyList(), true) : read(), executor);
+            parsed.add(lastRead.thenApplyAsync(chunk -> new Chunk<>(chunk.last && chunk.items.isEmpty()
+                    ? Collections.emptyList() : parse(chunk.items), chunk.last), executor));
+        }
+
+        private Chunk<String> read() {
+            List<String> records = new ArrayList<>();
+            int size = 0;
+            try {
+                String record;
+                while (!closed && size < chunkSize && (record = reader.readRecord()) != null) {
+                    records.add(record);
+                    size += record.length();
+                }
+
+                return new Chunk<>(records, closed || size < chunkSize);
+            } catch (IOException ex) {
+                throw new UncheckedIOException(ex);
+            }
+        }
+
+        boolean advance() {
+            while (!entries.hasNext()) {
+                if (done || parsed.isEmpty()) {
+                    current = null;
+                    return false;
+                }
+
+                Chunk<RhapsodyLogEntry> chunk = join(parsed.poll());
+                entries = chunk.items.iterator();
+                if (chunk.last) {
+                    // Anything scheduled after the last chunk is empty
+                    done = true;
+                    parsed.clear();
+                } else {
+                    schedule();
+                }
+            }
+
+            current = entries.next();
+            return true;
+        }
+
+        private Chunk<RhapsodyLogEntry> join(CompletableFuture<Chunk<RhapsodyLogEntry>> future) {
+            try {
+                return future.join();
+            } catch (CompletionException ex) {
+                if (ex.getCause() instanceof RuntimeException) {
+                    throw (RuntimeException) ex.getCause();
+                }
+
+                throw ex;
+            }
+        }
+    }
+
+    class MergeIterator implements Iterator<RhapsodyLogEntry>, Closeable {
+
+        private final ZipFile zip;
+        private final ExecutorService ownPool;
+        private final List<FileCursor> cursors = new ArrayList<>();
+        private final PriorityQueue<FileCursor> heads = new PriorityQueue<>(
+                Comparator.comparing((FileCursor c) -> c.current.getDate()).thenComparingInt(c -> c.index));
+        private boolean started = false;
+
+        MergeIterator(ZipFile zip, Executor executor, ExecutorService ownPool) throws IOException {
+            this.zip = zip;
+            this.ownPool = ownPool;
+
+            try {
+                Enumeration<? extends ZipEntry> entries = zip.entries();
+                while (entries.hasMoreElements()) {
+                    ZipEntry entry = entries.nextElement();
+                    LOGGER.trace("Log export zip entry: {}", entry.getName());
+                    if (!entry.isDirectory()) {
+                        cursors.add(new FileCursor(cursors.size(), new RhapsodyLogRecordReader(zip.getInputStream(entry)), executor));
+                    }
+                }
+            } catch (IOException | RuntimeException ex) {
+                close();
+                throw ex;
+            }
+        }
+
+        @Override
+        public boolean hasNext() {
+            if (!started) {
+                started = true;
+                for (FileCursor cursor : cursors) {
+                    if (cursor.advance()) {
+                        heads.add(cursor);
+                    }
+                }
+            }
+
+            return !heads.isEmpty();
+        }
+
+        @Override
+        public RhapsodyLogEntry next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+
+            FileCursor cursor = heads.poll();
+            RhapsodyLogEntry entry = cursor.current;
+            if (cursor.advance()) {
+                heads.add(cursor);
+            }
+
+            return entry;
+        }
+
+        @Override
+        public void close() throws IOException {
+            for (FileCursor cursor : cursors) {
+                cursor.closed = true;
+            }
+
+            // Wait for the reads in flight before closing the archive
+            for (FileCursor cursor : cursors) {
+                try {
+                    cursor.lastRead.join();
+                } catch (CompletionException ex) {
+                    LOGGER.debug("Export read failed", ex);
+                }
+            }
+
+            try {
+                zip.close();
+            } finally {
+                if (ownPool != null) {
+                    ownPool.shutdown();
+                }
+            }
+        }
+    }
+
+}
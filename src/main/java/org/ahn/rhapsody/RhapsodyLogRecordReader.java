@@ -0,0 +1,221 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2020 me.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.ahn.rhapsody;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * Splits a Rhapsody log export into log records.
+ * <p>
+ * The stream is read in chunks and split on new lines. A record starts with
+ * the <code>yyyy-MM-dd</code> date; any line not starting with a date
+ * continues the previous record and is joined with
+ * {@link RhapsodyLog#MESSAGE_SEPARATOR}.
+ *
+ * @author me
+ */
+public class RhapsodyLogRecordReader implements Closeable {
+
+    private static final int DEFAULT_BUFFER_SIZE = 64 * 1024;
+
+    private final InputStream in;
+    private final byte[] buffer;
+    private int position = 0;
+    private int limit = 0;
+
+    // Line spanning more than one chunk
+    private byte[] carry = new byte[256];
+    private int carryLength = 0;
+
+    private StringBuilder record;
+    private boolean eof = false;
+
+    public RhapsodyLogRecordReader(InputStream in) {
+        this(in, DEFAULT_BUFFER_SIZE);
+    }
+
+    public RhapsodyLogRecordReader(InputStream in, int bufferSize) {
+        this.in = in;
+        this.buffer = new byte[bufferSize];
+    }
+
+    /**
+     * Read the next log record
+     *
+     * @return record with continuation lines joined, or null at the end of
+     * the stream
+     * @throws IOException
+     */
+    public String readRecord() throws IOException {
+        String line;
+        while ((line = readLine()) != null) {
+            if (record == null) {
+                // Skip leading blank lines
+                if (!line.isEmpty()) {
+                    record = new StringBuilder(Math.max(256, line.length() * 2)).append(line);
+                }
+                continue;
+            }
+
+            if (isRecordStart(line)) {
+                // New record, return the previous one
+                String result = record.toString();
+                record.setLength(0);
+                record.append(line);
+                return result;
+            }
+
+            // Log record continues on another line
+            record.append(RhapsodyLog.MESSAGE_SEPARATOR).append(line);
+        }
+
+        if (record == null) {
+            return null;
+        }
+
+        String result = record.toString();
+        record = null;
+        return result;
+    }
+
+    /**
+     * Check if the line starts a new record: <code>yyyy-MM-dd</code>
+     * followed by at least one character
+     *
+     * @param line
+     * @return
+     */
+    static boolean isRecordStart(CharSequence line) {
+        return line.length() > 10
+                && isDigit(line.charAt(0)) && isDigit(line.charAt(1))
+                && isDigit(line.charAt(2)) && isDigit(line.charAt(3))
+                && line.charAt(4) == '-'
+                && isDigit(line.charAt(5)) && isDigit(line.charAt(6))
+                && line.charAt(7) == '-'
+                && isDigit(line.charAt(8)) && isDigit(line.charAt(9));
+    }
+
+    private static boolean isDigit(char ch) {
+        return ch >= '0' && ch <= '9';
+    }
+
+    /**
+     * Read the next trimmed line
+     *
+     * @return line without the line terminator, or null at the end of the
+     * stream
+     * @throws IOException
+     */
+    protected String readLine() throws IOException {
+        while (true) {
+            if (position >= limit && !fill()) {
+                // End of stream, flush the last line
+                if (carryLength == 0) {
+                    return null;
+                }
+
+                String line = decode(carry, 0, carryLength);
+                carryLength = 0;
+                return line;
+            }
+
+            for (int i = position; i < limit; i++) {
+                if (buffer[i] != '\n') {
+                    continue;
+                }
+
+                String line;
+                if (carryLength == 0) {
+                    line = decode(buffer, position, i);
+                } else {
+                    appendCarry(position, i);
+                    line = decode(carry, 0, carryLength);
+                    carryLength = 0;
+                }
+
+                position = i + 1;
+                return line;
+            }
+
+            // No line end in the chunk, keep the remainder for the next one
+            appendCarry(position, limit);
+            position = limit;
+        }
+    }
+
+    private boolean fill() throws IOException {
+        if (eof) {
+            return false;
+        }
+
+        int read;
+        do {
+            read = in.read(buffer, 0, buffer.length);
+        } while (read == 0);
+
+        if (read < 0) {
+            eof = true;
+            return false;
+        }
+
+        position = 0;
+        limit = read;
+        return true;
+    }
+
+    private void appendCarry(int from, int to) {
+        int length = to - from;
+        if (carryLength + length > carry.length) {
+            carry = Arrays.copyOf(carry, Math.max(carry.length * 2, carryLength + length));
+        }
+
+        System.arraycopy(buffer, from, carry, carryLength, length);
+        carryLength += length;
+    }
+
+    /**
+     * Decode the bytes as trimmed UTF-8 string
+     */
+    private static String decode(byte[] bytes, int from, int to) {
+        while (from < to && (bytes[from] & 0xFF) <= ' ') {
+            from++;
+        }
+
+        while (to > from && (bytes[to - 1] & 0xFF) <= ' ') {
+            to--;
+        }
+
+        return new String(bytes, from, to - from, StandardCharsets.UTF_8);
+    }
+
+    @Override
+    public void close() throws IOException {
+        in.close();
+    }
+
+}
@@ -0,0 +1,361 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2020 me.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.ahn.rhapsody;
+
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+/**
+ * Immutable file of parsed log entries, ordered by time.
+ * <p>
+ * Layout: the entries, then an index of the time and offset of every
+ * {@value #INDEX_INTERVAL}th entry, then a trailer with the index offset,
+ * the entry count and the magic number. An entry is its time followed by
+ * the length prefixed UTF-8 username, message and type. Segments are read
+ * through a file channel in blocks, a mapped buffer would keep the file open
+ * until it is garbage collected and locked on Windows.
+ *
+ * @author me
+ */
+public class RhapsodyLogSegment {
+
+    private static final int MAGIC = 0x52484C53;
+    private static final int INDEX_INTERVAL = 64;
+    private static final int TRAILER_SIZE = Long.BYTES + Integer.BYTES + Integer.BYTES;
+    private static final int INDEX_ENTRY_SIZE = Long.BYTES + Integer.BYTES;
+    private static final int BLOCK_SIZE = 64 * 1024;
+
+    private RhapsodyLogSegment() {
+    }
+
+    /**
+     * Writes the entries into a temporary file, published on commit
+     */
+    public static class Writer implements Closeable {
+
+        private final Path file;
+        private final DataOutputStream out;
+        private final List<long[]> index = new ArrayList<>();
+        private long lastTime = Long.MIN_VALUE;
+        private int count = 0;
+        private boolean closed = false;
+
+        public Writer(Path file) throws IOException {
+            this.file = file;
+            this.out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(file), 64 * 1024));
+        }
+
+        /**
+         * @param entry
+         * @return false if the entry is out of order and was not written
+         * @throws IOException
+         */
+        public boolean append(RhapsodyLogEntry entry) throws IOException {
+            long time = entry.getDate().getTime();
+            if (time < lastTime) {
+                return false;
+            }
+
+            if (count % INDEX_INTERVAL == 0) {
+                index.add(new long[]{time, out.size()});
+            }
+
+            out.writeLong(time);
+            writeString(entry.getUsername());
+            writeString(entry.getMessage());
+            writeString(entry.getType());
+
+            lastTime = time;
+            count++;
+            return true;
+        }
+
+        private void writeString(String value) throws IOException {
+            byte[] bytes = (value == null ? "" : value).getBytes(StandardCharsets.UTF_8);
+            out.writeInt(bytes.length);
+            out.write(bytes);
+        }
+
+        /**
+         * Write the index and the trailer, no entries can be added after
+         *
+         * @throws IOException
+         */
+        public void finish() throws IOException {
+            if (closed) {
+                return;
+            }
+
+            long indexOffset = out.size();
+            for (long[] point : index) {
+                out.writeLong(point[0]);
+                out.writeInt((int) point[1]);
+            }
+            out.writeLong(indexOffset);
+            out.writeInt(count);
+            out.writeInt(MAGIC);
+            close();
+        }
+
+        /**
+         * Finish the segment and move it into place. An existing segment is
+         * kept, segments never change once written. One committed at the
+         * same time by another export has the same entries and may replace
+         * this one.
+         *
+         * @param target
+         * @throws IOException
+         */
+        public void commit(Path target) throws IOException {
+            finish();
+
+            if (Files.exists(target)) {
+                Files.deleteIfExists(file);
+                return;
+            }
+
+            try {
+                Files.move(file, target, StandardCopyOption.ATOMIC_MOVE);
+            } catch (AtomicMoveNotSupportedException ex) {
+                Files.move(file, target, StandardCopyOption.REPLACE_EXISTING);
+            } catch (IOException ex) {
+                if (!Files.exists(target)) {
+                    throw ex;
+                }
+                // Written concurrently by another export
+                Files.deleteIfExists(file);
+            }
+        }
+
+        /**
+         * Drop the unfinished segment
+         */
+        public void discard() {
+            try {
+                close();
+                Files.deleteIfExists(file);
+            } catch (IOException ex) {
+                // Temporary file, ignore
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (!closed) {
+                closed = true;
+                out.close();
+            }
+        }
+    }
+
+    /**
+     * Read the entries logged between the start and end time, inclusive. The
+     * file is closed once the last entry is read, or by closing the reader.
+     *
+     * @param file
+     * @param startTime
+     * @param endTime
+     * @return
+     * @throws IOException
+     */
+    public static Reader read(Path file, long startTime, long endTime) throws IOException {
+        FileChannel channel = FileChannel.open(file, StandardOpenOption.READ);
+        try {
+            long size = channel.size();
+            if (size < TRAILER_SIZE) {
+                throw new IOException("Not a log segment: " + file);
+            }
+
+            ByteBuffer trailer = readFully(channel, size - TRAILER_SIZE, TRAILER_SIZE);
+            if (trailer.getInt(Long.BYTES + Integer.BYTES) != MAGIC) {
+                throw new IOException("Not a log segment: " + file);
+            }
+
+            long indexOffset = trailer.getLong(0);
+            int count = trailer.getInt(Long.BYTES);
+            if (indexOffset < 0 || indexOffset > size - TRAILER_SIZE) {
+                throw new IOException("Corrupted log segment: " + file);
+            }
+
+            // Start from the last indexed entry before the start time
+            ByteBuffer index = readFully(channel, indexOffset, (int) (size - TRAILER_SIZE - indexOffset));
+            long position = 0;
+            int skipped = 0;
+            for (int i = 0; i + INDEX_ENTRY_SIZE <= index.capacity(); i += INDEX_ENTRY_SIZE) {
+                if (index.getLong(i) >= startTime) {
+                    break;
+                }
+                position = index.getInt(i + Long.BYTES);
+                skipped = i / INDEX_ENTRY_SIZE * INDEX_INTERVAL;
+            }
+
+            return new Reader(channel, position, indexOffset, count - skipped, startTime, endTime);
+        } catch (IOException | RuntimeException ex) {
+            channel.close();
+            throw ex;
+        }
+    }
+
+    private static ByteBuffer readFully(FileChannel channel, long position, int length) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(length);
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, position + buffer.position()) < 0) {
+                throw new EOFException("Truncated log segment");
+            }
+        }
+        buffer.flip();
+        return buffer;
+    }
+
+    /**
+     * Entries of a segment, read a block at a time
+     */
+    public static class Reader implements Iterator<RhapsodyLogEntry>, Closeable {
+
+        private final FileChannel channel;
+        // End of the entries, where the index starts
+        private final long end;
+        private final long startTime;
+        private final long endTime;
+        private ByteBuffer buffer = ByteBuffer.allocate(BLOCK_SIZE);
+        private long position;
+        private int remaining;
+        private RhapsodyLogEntry next;
+
+        Reader(FileChannel channel, long position, long end, int remaining, long startTime, long endTime) {
+            this.channel = channel;
+            this.position = position;
+            this.end = end;
+            this.remaining = remaining;
+            this.startTime = startTime;
+            this.endTime = endTime;
+            buffer.limit(0);
+        }
+
+        @Override
+        public boolean hasNext() {
+            try {
+                while (next == null && remaining > 0) {
+                    remaining--;
+                    fill(Long.BYTES);
+                    long time = buffer.getLong();
+                    if (time > endTime) {
+                        remaining = 0;
+                        break;
+                    }
+
+                    String username = readString();
+                    String message = readString();
+                    String type = readString();
+                    if (time >= startTime) {
+                        next = RhapsodyLog.createEntry(new Date(time), username, message, type);
+                    }
+                }
+
+                if (next == null) {
+                    close();
+                }
+            } catch (IOException ex) {
+                throw new UncheckedIOException(ex);
+            }
+
+            return next != null;
+        }
+
+        @Override
+        public RhapsodyLogEntry next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+
+            RhapsodyLogEntry entry = next;
+            next = null;
+            return entry;
+        }
+
+        @Override
+        public void close() throws IOException {
+            remaining = 0;
+            channel.close();
+        }
+
+        private String readString() throws IOException {
+            fill(Integer.BYTES);
+            int length = buffer.getInt();
+            fill(length);
+            String value = new String(buffer.array(), buffer.arrayOffset() + buffer.position(), length, StandardCharsets.UTF_8);
+            buffer.position(buffer.position() + length);
+            return value;
+        }
+
+        /**
+         * Read the next blocks until the buffer holds the bytes
+         */
+        private void fill(int length) throws IOException {
+            if (buffer.remaining() >= length) {
+                return;
+            }
+            if (length > end - position + buffer.remaining()) {
+                throw new EOFException("Truncated log segment");
+            }
+
+            buffer.compact();
+            if (buffer.capacity() < length) {
+                // Entry larger than a block
+                ByteBuffer larger = ByteBuffer.allocate(length);
+                buffer.flip();
+                larger.put(buffer);
+                buffer = larger;
+            }
+            while (buffer.position() < length) {
+                int limit = (int) Math.min(buffer.capacity(), buffer.position() + end - position);
+                buffer.limit(limit);
+                int read = channel.read(buffer, position);
+                if (read < 0) {
+                    throw new EOFException("Truncated log segment");
+                }
+                position += read;
+            }
+            buffer.flip();
+        }
+    }
+
+}
@@ -0,0 +1,438 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2020 me.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.ahn.rhapsody;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.SocketTimeoutException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.PriorityQueue;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Log export split into time shards.
+ * <p>
+ * The time range is split into shards, exported concurrently into temporary
+ * files with a bounded number of requests in flight. A shard which times out
+ * is split in half and retried, down to the minimum shard size. Shards are
+ * merged by entry time into a single ordered stream, opening a shard only
+ * when the merge reaches its start.
+ *
+ * @author me
+ */
+public class RhapsodyLogShardedExport {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(RhapsodyLogShardedExport.class);
+
+    // Export time range has a precision of a second
+    private static final long SECOND = 1000;
+    private static final AtomicInteger THREAD_COUNT = new AtomicInteger();
+
+    private final RhapsodyLog log;
+    private final String type;
+    private final RhapsodyLogEntryIterator.LineParser parser;
+    private final long shardSize;
+    private final int parallelism;
+    private long minShardSize = Duration.ofMinutes(1).toMillis();
+
+    public RhapsodyLogShardedExport(RhapsodyLog log, String type, RhapsodyLogEntryIterator.LineParser parser, Duration shardSize, int parallelism) {
+        if (shardSize.toMillis() < SECOND) {
+            throw new IllegalArgumentException("Shard size must be at least a second");
+        }
+
+        this.log = log;
+        this.type = type;
+        this.parser = parser;
+        this.shardSize = shardSize.toMillis();
+        this.parallelism = Math.max(1, parallelism);
+    }
+
+    /**
+     * Smallest time window a timed out shard is split into
+     *
+     * @param minShardSize
+     */
+    public void setMinShardSize(Duration minShardSize) {
+        this.minShardSize = Math.max(SECOND, minShardSize.toMillis());
+    }
+
+    /**
+     * Export and stream the entries. The stream must be closed to release
+     * the downloads and the temporary files.
+     *
+     * @param startTime
+     * @param endTime
+     * @return
+     */
+    public Stream<RhapsodyLogEntry> stream(long startTime, long endTime) {
+        ExecutorService executor = Executors.newFixedThreadPool(parallelism, r -> {
+            Thread thread = new Thread(r, "rhapsody-log-export-" + THREAD_COUNT.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+
+        Deque<Download> downloads = new ArrayDeque<>();
+        for (Window window : split(startTime, endTime)) {
+            downloads.add(new Download(window, download(window, executor)));
+        }
+        LOGGER.info("Exporting {} logs in {} shard(s)", type, downloads.size());
+
+        MergeIterator iterator = new MergeIterator(downloads);
+        return StreamSupport.stream(Spliterators.spliteratorUnknownSize(iterator, Spliterator.ORDERED | Spliterator.NONNULL), false)
+                .onClose(() -> {
+                    iterator.close();
+                    executor.shutdownNow();
+                });
+    }
+
+    /**
+     * Split the time range into shards, aligned to a second
+     *
+     * @param startTime
+     * @param endTime
+     * @return
+     */
+    protected List<Window> split(long startTime, long endTime) {
+        List<Window> windows = new ArrayList<>();
+        long start = startTime;
+        while (endTime - start > shardSize) {
+            long end = align(start + shardSize);
+            windows.add(new Window(start, end));
+            start = end;
+        }
+        windows.add(new Window(start, endTime));
+
+        return windows;
+    }
+
+    private static long align(long time) {
+        return time - Math.floorMod(time, SECOND);
+    }
+
+    private CompletableFuture<List<Shard>> download(Window window, ExecutorService executor) {
+        return CompletableFuture.supplyAsync(() -> fetch(window), executor)
+                .handle((shard, error) -> {
+                    if (error == null) {
+                        return CompletableFuture.completedFuture(Collections.singletonList(shard));
+                    }
+
+                    Throwable cause = unwrap(error);
+                    if (cause.getCause() instanceof SocketTimeoutException && window.length() >= 2 * minShardSize) {
+                        // Window is too large to export in time, bisect
+                        long middle = align(window.start + window.length() / 2);
+                        LOGGER.info("Export of {} logs between {} and {} timed out, splitting at {}", type, window.start, window.end, middle);
+
+                        CompletableFuture<List<Shard>> left = download(new Window(window.start, middle), executor);
+                        CompletableFuture<List<Shard>> right = download(new Window(middle, window.end), executor);
+                        return left.thenCombine(right, (l, r) -> {
+                            List<Shard> shards = new ArrayList<>(l);
+                            shards.addAll(r);
+                            return shards;
+                        });
+                    }
+
+                    CompletableFuture<List<Shard>> failed = new CompletableFuture<>();
+                    failed.completeExceptionally(cause);
+                    return failed;
+                })
+                .thenCompose(f -> f);
+    }
+
+    private Shard fetch(Window window) {
+        Path file = null;
+        try {
+            file = Files.createTempFile("rhapsody-" + type.toLowerCase(Locale.ENGLISH) + "-", ".zip");
+            log.downloadExport(type, file, window.start, window.end);
+            return new Shard(window, file);
+        } catch (IOException ex) {
+            deleteQuietly(file);
+            throw new UncheckedIOException(ex);
+        }
+    }
+
+    private static Throwable unwrap(Throwable error) {
+        while (error instanceof CompletionException && error.getCause() != null) {
+            error = error.getCause();
+        }
+
+        return error;
+    }
+
+    private static void deleteQuietly(Path file) {
+        if (file == null) {
+            return;
+        }
+
+        try {
+            Files.deleteIfExists(file);
+        } catch (IOException ex) {
+            LOGGER.warn("Unable to delete {}", file, ex);
+        }
+    }
+
+    /**
+     * Export time range
+     */
+    protected static class Window {
+
+        final long start;
+        final long end;
+
+        Window(long start, long end) {
+            this.start = start;
+            this.end = end;
+        }
+
+        long length() {
+            return end - start;
+        }
+
+        boolean isEdge(long time) {
+            return time / SECOND == start / SECOND || time / SECOND == end / SECOND;
+        }
+
+        @Override
+        public String toString() {
+            return "Window{" + "start=" + start + ", end=" + end + '}';
+        }
+    }
+
+    static class Shard {
+
+        final Window window;
+        final Path file;
+
+        Shard(Window window, Path file) {
+            this.window = window;
+            this.file = file;
+        }
+
+        void delete() {
+            deleteQuietly(file);
+        }
+    }
+
+    static class Download {
+
+        final Window window;
+        final CompletableFuture<List<Shard>> shards;
+
+        Download(Window window, CompletableFuture<List<Shard>> shards) {
+            this.window = window;
+            this.shards = shards;
+        }
+    }
+
+    /**
+     * Current entry of an open shard
+     */
+    class Head implements Closeable {
+
+        final int index;
+        final Shard shard;
+        final Stream<RhapsodyLogEntry> stream;
+        final Iterator<RhapsodyLogEntry> entries;
+        RhapsodyLogEntry current;
+
+        Head(int index, Shard shard) throws IOException {
+            this.index = index;
+            this.shard = shard;
+            this.stream = log.streamEntries(shard.file, parser);
+            this.entries = stream.iterator();
+        }
+
+        boolean advance() {
+            current = entries.hasNext() ? entries.next() : null;
+            return current != null;
+        }
+
+        @Override
+        public void close() {
+            stream.close();
+            shard.delete();
+        }
+    }
+
+    class MergeIterator implements Iterator<RhapsodyLogEntry>, Closeable {
+
+        private final Deque<Download> downloads;
+        private final Deque<Shard> pending = new ArrayDeque<>();
+        private final PriorityQueue<Head> heads = new PriorityQueue<>(
+                Comparator.comparing((Head h) -> h.current.getDate()).thenComparingInt(h -> h.index));
+        private int shardCount = 0;
+
+        // Entries at the shard edges may be exported twice
+        private long edgeSecond = Long.MIN_VALUE;
+        private final Map<String, Integer> edgeEntries = new HashMap<>();
+
+        private RhapsodyLogEntry next;
+
+        MergeIterator(Deque<Download> downloads) {
+            this.downloads = downloads;
+        }
+
+        @Override
+        public boolean hasNext() {
+            if (next == null) {
+                try {
+                    next = advance();
+                } catch (IOException ex) {
+                    throw new UncheckedIOException(ex);
+                }
+            }
+
+            return next != null;
+        }
+
+        @Override
+        public RhapsodyLogEntry next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+
+            RhapsodyLogEntry entry = next;
+            next = null;
+            return entry;
+        }
+
+        private RhapsodyLogEntry advance() throws IOException {
+            while (true) {
+                openShards();
+
+                Head head = heads.poll();
+                if (head == null) {
+                    return null;
+                }
+
+                RhapsodyLogEntry entry = head.current;
+                if (head.advance()) {
+                    heads.add(head);
+                } else {
+                    head.close();
+                }
+
+                if (!isDuplicate(entry, head)) {
+                    return entry;
+                }
+            }
+        }
+
+        /**
+         * Open the shards which may hold entries before the current ones
+         */
+        private void openShards() throws IOException {
+            while (true) {
+                long nextStart;
+                if (!pending.isEmpty()) {
+                    nextStart = pending.peek().window.start;
+                } else if (!downloads.isEmpty()) {
+                    nextStart = downloads.peek().window.start;
+                } else {
+                    return;
+                }
+
+                if (!heads.isEmpty() && heads.peek().current.getDate().getTime() < align(nextStart)) {
+                    return;
+                }
+
+                if (pending.isEmpty()) {
+                    pending.addAll(await(downloads.poll()));
+                    continue;
+                }
+
+                Head head = new Head(shardCount++, pending.poll());
+                if (head.advance()) {
+                    heads.add(head);
+                } else {
+                    head.close();
+                }
+            }
+        }
+
+        private List<Shard> await(Download download) throws IOException {
+            try {
+                return download.shards.join();
+            } catch (CompletionException ex) {
+                Throwable cause = unwrap(ex);
+                if (cause instanceof UncheckedIOException) {
+                    throw ((UncheckedIOException) cause).getCause();
+                }
+
+                throw new IOException("Unable to export logs for " + download.window, cause);
+            }
+        }
+
+        private boolean isDuplicate(RhapsodyLogEntry entry, Head head) {
+            long time = entry.getDate().getTime();
+            if (!head.shard.window.isEdge(time)) {
+                return false;
+            }
+
+            if (time / SECOND != edgeSecond) {
+                edgeSecond = time / SECOND;
+                edgeEntries.clear();
+            }
+
+            String key = time + "|" + entry.getUsername() + "|" + entry.getType() + "|" + entry.getMessage();
+            Integer shard = edgeEntries.putIfAbsent(key, head.index);
+            return shard != null && shard != head.index;
+        }
+
+        @Override
+        public void close() {
+            heads.forEach(Head::close);
+            heads.clear();
+            pending.forEach(Shard::delete);
+            pending.clear();
+            // Remove the files of the downloads still in flight once done
+            downloads.forEach(d -> d.shards.thenAccept(shards -> shards.forEach(Shard::delete)));
+            downloads.clear();
+        }
+    }
+
+}
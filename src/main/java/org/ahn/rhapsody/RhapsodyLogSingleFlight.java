@@ -0,0 +1,155 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2020 me.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.ahn.rhapsody;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+
+/**
+ * Coalesces concurrent calls for the same key into a single call.
+ * <p>
+ * The first caller runs the call while the others wait for its result.
+ * Every caller holds a lease on the result; once the call is done and the
+ * last lease is closed, the result is released. Calls for different keys
+ * run in parallel.
+ *
+ * @author me
+ * @param <K> key
+ * @param <V> result
+ */
+public class RhapsodyLogSingleFlight<K, V> {
+
+    private final ConcurrentMap<K, Flight<V>> flights = new ConcurrentHashMap<>();
+    private final Consumer<V> release;
+
+    /**
+     * @param release called with the result once nobody holds it
+     */
+    public RhapsodyLogSingleFlight(Consumer<V> release) {
+        this.release = release;
+    }
+
+    /**
+     * Run the call, or join the one in flight for the key
+     *
+     * @param key
+     * @param call
+     * @return lease on the result, must be closed
+     * @throws IOException
+     */
+    public Lease<V> acquire(K key, Callable<V> call) throws IOException {
+        Flight<V> candidate = new Flight<>();
+        Flight<V> flight = flights.compute(key, (k, existing) -> {
+            Flight<V> joined = existing != null ? existing : candidate;
+            joined.leases.incrementAndGet();
+            return joined;
+        });
+
+        if (flight == candidate) {
+            try {
+                flight.result.complete(call.call());
+            } catch (Exception ex) {
+                flight.result.completeExceptionally(ex);
+            } finally {
+                // Later callers start a new flight
+                flights.remove(key, flight);
+            }
+        }
+
+        try {
+            return new Lease<>(flight, flight.result.join(), release);
+        } catch (CompletionException ex) {
+            flight.leave(null, release);
+
+            Throwable cause = ex.getCause();
+            if (cause instanceof IOException) {
+                throw (IOException) cause;
+            } else if (cause instanceof UncheckedIOException) {
+                throw ((UncheckedIOException) cause).getCause();
+            } else if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+
+            throw new IOException(cause);
+        }
+    }
+
+    /**
+     * @return number of calls in flight
+     */
+    public int size() {
+        return flights.size();
+    }
+
+    static class Flight<V> {
+
+        final CompletableFuture<V> result = new CompletableFuture<>();
+        final AtomicInteger leases = new AtomicInteger();
+
+        void leave(V value, Consumer<V> release) {
+            if (leases.decrementAndGet() == 0 && value != null && release != null) {
+                release.accept(value);
+            }
+        }
+    }
+
+    /**
+     * Hold on the shared result
+     *
+     * @param <V>
+     */
+    public static class Lease<V> implements AutoCloseable {
+
+        private final Flight<V> flight;
+        private final V value;
+        private final Consumer<V> release;
+        private boolean closed = false;
+
+        Lease(Flight<V> flight, V value, Consumer<V> release) {
+            this.flight = flight;
+            this.value = value;
+            this.release = release;
+        }
+
+        public V get() {
+            return value;
+        }
+
+        @Override
+        public synchronized void close() {
+            if (!closed) {
+                closed = true;
+                flight.leave(value, release);
+            }
+        }
+    }
+
+}
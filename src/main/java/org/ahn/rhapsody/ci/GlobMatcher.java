@@ -0,0 +1,296 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2020 me.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.ahn.rhapsody.ci;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A list of glob patterns compiled once, matching a name against all of them
+ * at once, case insensitive.
+ * <p>
+ * Patterns which are plain text with a * at the start, the end or both are
+ * looked up in hash tables and prefix and suffix tries. The others are
+ * matched as {@link GlobPattern}. For paths, only plain text is looked up.
+ *
+ * @author me
+ */
+public class GlobMatcher {
+
+    private final List<String> patterns;
+    private final boolean paths;
+
+    // Whole names, prefixes and suffixes to the first pattern with them
+    private final Map<String, Integer> literals = new HashMap<>();
+    private final TrieNode prefixes = new TrieNode();
+    private final TrieNode suffixes = new TrieNode();
+    // Text inside the name, and the pattern
+    private final List<String> infixes = new ArrayList<>();
+    private final List<Integer> infixPatterns = new ArrayList<>();
+    // All the other patterns, and their position
+    private final List<GlobPattern> globs = new ArrayList<>();
+    private final List<Integer> globPatterns = new ArrayList<>();
+    // Every pattern, for the names a * does not match
+    private List<GlobPattern> all;
+
+    public GlobMatcher(List<String> patterns) {
+        this(patterns, false);
+    }
+
+    /**
+     * @param patterns
+     * @param paths match folder paths, see {@link GlobPattern#compilePath}
+     */
+    public GlobMatcher(List<String> patterns, boolean paths) {
+        this.patterns = Collections.unmodifiableList(new ArrayList<>(patterns));
+        this.paths = paths;
+
+        for (int i = 0; i < patterns.size(); i++) {
+            String pattern = patterns.get(i);
+
+            // A run of * is the same as one
+            int start = 0;
+            while (start < pattern.length() && pattern.charAt(start) == '*') {
+                start++;
+            }
+            int end = pattern.length();
+            while (end > start && pattern.charAt(end - 1) == '*') {
+                end--;
+            }
+            String text = pattern.substring(start, end);
+
+            if (!isPlain(text) || (paths && text.length() < pattern.length())) {
+                globs.add(toGlobPattern(pattern));
+                globPatterns.add(i);
+                continue;
+            }
+
+            text = toLowerCase(text);
+            boolean leading = start > 0;
+            boolean trailing = end < pattern.length() || (start == pattern.length() && start > 0);
+            if (leading && trailing) {
+                if (text.isEmpty()) {
+                    // Matches everything
+                    prefixes.add(text, i);
+                } else {
+                    infixes.add(text);
+                    infixPatterns.add(i);
+                }
+            } else if (trailing) {
+                prefixes.add(text, i);
+            } else if (leading) {
+                suffixes.add(new StringBuilder(text).reverse().toString(), i);
+            } else {
+                literals.putIfAbsent(text, i);
+            }
+        }
+    }
+
+    /**
+     * @param patterns glob patterns, one per line, blank lines are ignored
+     * @return
+     */
+    public static GlobMatcher compile(String patterns) {
+        return new GlobMatcher(split(patterns), false);
+    }
+
+    /**
+     * @param patterns glob patterns on folder paths, one per line, blank lines
+     * are ignored
+     * @return
+     */
+    public static GlobMatcher compilePaths(String patterns) {
+        return new GlobMatcher(split(patterns), true);
+    }
+
+    private static List<String> split(String patterns) {
+        List<String> list = new ArrayList<>();
+        if (patterns != null) {
+            for (String pattern : patterns.split("\n")) {
+                if (!pattern.isEmpty()) {
+                    list.add(pattern);
+                }
+            }
+        }
+        return list;
+    }
+
+    public List<String> getPatterns() {
+        return patterns;
+    }
+
+    public boolean isEmpty() {
+        return patterns.isEmpty();
+    }
+
+    /**
+     * @param name
+     * @return position of the first pattern matching the name, -1 if none
+     */
+    public int indexOf(String name) {
+        char[] chars = name.toCharArray();
+        if (hasLineTerminator(chars)) {
+            return indexOfAll(chars);
+        }
+
+        String lowerCase = toLowerCase(name);
+        int first = Integer.MAX_VALUE;
+
+        Integer literal = literals.get(lowerCase);
+        if (literal != null) {
+            first = literal;
+        }
+
+        first = Math.min(first, prefixes.find(lowerCase, false));
+        first = Math.min(first, suffixes.find(lowerCase, true));
+
+        for (int i = 0; i < infixes.size() && infixPatterns.get(i) < first; i++) {
+            if (lowerCase.contains(infixes.get(i))) {
+                first = infixPatterns.get(i);
+            }
+        }
+
+        for (int i = 0; i < globs.size() && globPatterns.get(i) < first; i++) {
+            if (globs.get(i).matches(chars, 0, chars.length)) {
+                first = globPatterns.get(i);
+            }
+        }
+
+        return first == Integer.MAX_VALUE ? -1 : first;
+    }
+
+    /**
+     * @param name
+     * @return first pattern matching the name, null if none
+     */
+    public String match(String name) {
+        int index = indexOf(name);
+        return index < 0 ? null : patterns.get(index);
+    }
+
+    public boolean matches(String name) {
+        return indexOf(name) >= 0;
+    }
+
+    private GlobPattern toGlobPattern(String pattern) {
+        return paths ? GlobPattern.compilePath(pattern) : GlobPattern.compile(pattern);
+    }
+
+    private synchronized int indexOfAll(char[] chars) {
+        if (all == null) {
+            all = new ArrayList<>();
+            for (String pattern : patterns) {
+                all.add(toGlobPattern(pattern));
+            }
+        }
+
+        for (int i = 0; i < all.size(); i++) {
+            if (all.get(i).matches(chars, 0, chars.length)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Not matched by a *
+     */
+    private static boolean hasLineTerminator(char[] chars) {
+        for (char ch : chars) {
+            if (GlobPattern.isLineTerminator(ch)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static boolean isPlain(String text) {
+        for (int i = 0; i < text.length(); i++) {
+            switch (text.charAt(i)) {
+                case '\\':
+                case '*':
+                case '?':
+                case '[':
+                case ']':
+                case '{':
+                case '}':
+                    return false;
+                default:
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Same as the case insensitive regular expressions, ASCII only
+     */
+    private static String toLowerCase(String text) {
+        char[] chars = null;
+        for (int i = 0; i < text.length(); i++) {
+            char ch = text.charAt(i);
+            if (ch >= 'A' && ch <= 'Z') {
+                if (chars == null) {
+                    chars = text.toCharArray();
+                }
+                chars[i] = GlobPattern.toLowerCase(ch);
+            }
+        }
+        return chars == null ? text : new String(chars);
+    }
+
+    private static class TrieNode {
+
+        final Map<Character, TrieNode> next = new HashMap<>();
+        // First pattern ending here
+        int pattern = Integer.MAX_VALUE;
+
+        void add(String text, int index) {
+            TrieNode node = this;
+            for (int i = 0; i < text.length(); i++) {
+                node = node.next.computeIfAbsent(text.charAt(i), k -> new TrieNode());
+            }
+            node.pattern = Math.min(node.pattern, index);
+        }
+
+        /**
+         * @return first pattern ending on the way down the name, from its end
+         * when reversed
+         */
+        int find(String name, boolean reversed) {
+            TrieNode node = this;
+            int first = node.pattern;
+            for (int i = 0; i < name.length(); i++) {
+                node = node.next.get(name.charAt(reversed ? name.length() - 1 - i : i));
+                if (node == null) {
+                    break;
+                }
+                first = Math.min(first, node.pattern);
+            }
+            return first;
+        }
+    }
+}
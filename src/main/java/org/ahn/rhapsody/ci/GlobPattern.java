@@ -0,0 +1,540 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2020 me.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.ahn.rhapsody.ci;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * A glob pattern matched directly on the characters of a name, case
+ * insensitive, without a regular expression.
+ * <p>
+ * Supports * and ? wildcards, [abc], [a-z] and [!a] classes, {a,b} groups
+ * and \ escapes. Names match the same as with {@link GlobUtils#toRegex}.
+ * <p>
+ * Paths are matched folder by folder: * and ? do not match /, ** matches
+ * across folders and **&#47; matches any number of folders, none included.
+ * Integration/ADT/** matches all the routes below Integration/ADT.
+ * <p>
+ * A group is expanded into one sequence per alternative. The sequences are
+ * matched by following every possible position in the pattern at once, so a
+ * match never backtracks.
+ *
+ * @author me
+ */
+public class GlobPattern {
+
+    private static final byte LITERAL = 0;
+    private static final byte ANY = 1;
+    private static final byte CLASS = 2;
+    // Any characters, in the folder for paths
+    private static final byte STAR = 3;
+    // Any characters across folders
+    private static final byte ANY_PATH = 4;
+    // Any number of folders, ending with /
+    private static final byte FOLDERS = 5;
+
+    private final String glob;
+    private final boolean paths;
+    private final List<Sequence> sequences;
+
+    private GlobPattern(String glob, boolean paths) {
+        this.glob = glob;
+        this.paths = paths;
+        this.sequences = Collections.unmodifiableList(new Parser(glob, paths).parse());
+    }
+
+    /**
+     * @param glob
+     * @return pattern matching names
+     */
+    public static GlobPattern compile(String glob) {
+        return new GlobPattern(glob, false);
+    }
+
+    /**
+     * @param glob
+     * @return pattern matching folder paths, as Folder/Sub Folder/Name
+     */
+    public static GlobPattern compilePath(String glob) {
+        return new GlobPattern(glob, true);
+    }
+
+    public String getGlob() {
+        return glob;
+    }
+
+    public boolean isPath() {
+        return paths;
+    }
+
+    public boolean matches(String name) {
+        return matches(name.toCharArray(), 0, name.length());
+    }
+
+    /**
+     * @param chars
+     * @param from first character of the name
+     * @param to end of the name, exclusive
+     * @return true if the whole name matches
+     */
+    public boolean matches(char[] chars, int from, int to) {
+        for (Sequence sequence : sequences) {
+            if (sequence.run(chars, from, to, false)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * @param prefix start of a name, usually a folder path ending with /
+     * @return false if no name starting with the prefix can match
+     */
+    public boolean matchesPrefix(String prefix) {
+        char[] chars = prefix.toCharArray();
+        for (Sequence sequence : sequences) {
+            if (sequence.run(chars, 0, chars.length, true)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    @Override
+    public String toString() {
+        return glob;
+    }
+
+    /**
+     * Not matched by * and ?, as with regular expressions
+     */
+    static boolean isLineTerminator(char ch) {
+        return ch == '\n' || ch == '\r' || ch == '\u0085' || ch == '\u2028' || ch == '\u2029';
+    }
+
+    static char toLowerCase(char ch) {
+        return ch >= 'A' && ch <= 'Z' ? (char) (ch + ('a' - 'A')) : ch;
+    }
+
+    static char toUpperCase(char ch) {
+        return ch >= 'a' && ch <= 'z' ? (char) (ch - ('a' - 'A')) : ch;
+    }
+
+    private static final class CharClass {
+
+        // Ranges as first and last character
+        final char[] ranges;
+        final boolean negated;
+        final boolean paths;
+
+        CharClass(char[] ranges, boolean negated, boolean paths) {
+            this.ranges = ranges;
+            this.negated = negated;
+            this.paths = paths;
+        }
+
+        boolean matches(char ch) {
+            boolean in = contains(ch) || contains(toLowerCase(ch)) || contains(toUpperCase(ch));
+            if (negated) {
+                return !in && !(paths && ch == '/');
+            }
+            return in;
+        }
+
+        private boolean contains(char ch) {
+            for (int i = 0; i < ranges.length; i += 2) {
+                if (ch >= ranges[i] && ch <= ranges[i + 1]) {
+                    return true;
+                }
+            }
+            return false;
+        }
+    }
+
+    /**
+     * One alternative of the pattern, as a list of tokens
+     */
+    private static final class Sequence {
+
+        final byte[] types;
+        final char[] chars;
+        final CharClass[] classes;
+        final boolean paths;
+        // Positions of the tokens which may match nothing
+        final long empty;
+        // Characters at least, literals at the start and at the end
+        final int minLength;
+        final int head;
+        final int tail;
+
+        Sequence(List<Object> tokens, boolean paths) {
+            this.paths = paths;
+            types = new byte[tokens.size()];
+            chars = new char[tokens.size()];
+            classes = new CharClass[tokens.size()];
+            long emptyTokens = 0;
+            int length = 0;
+            for (int i = 0; i < tokens.size(); i++) {
+                Object token = tokens.get(i);
+                if (token instanceof Character) {
+                    types[i] = LITERAL;
+                    chars[i] = toLowerCase((Character) token);
+                } else if (token instanceof CharClass) {
+                    types[i] = CLASS;
+                    classes[i] = (CharClass) token;
+                } else {
+                    types[i] = (Byte) token;
+                }
+
+                if (types[i] >= STAR) {
+                    emptyTokens |= i < 64 ? 1L << i : 0;
+                } else {
+                    length++;
+                }
+            }
+            empty = emptyTokens;
+            minLength = length;
+
+            int literals = 0;
+            while (literals < types.length && types[literals] == LITERAL) {
+                literals++;
+            }
+            head = literals;
+            literals = 0;
+            while (literals < types.length - head && types[types.length - 1 - literals] == LITERAL) {
+                literals++;
+            }
+            tail = literals;
+        }
+
+        boolean run(char[] name, int from, int to, boolean prefix) {
+            if (prefix) {
+                return run(name, from, to, 0, types.length, true);
+            }
+
+            // The literals at both ends first
+            if (to - from < minLength) {
+                return false;
+            }
+            for (int i = 0; i < head; i++) {
+                if (toLowerCase(name[from + i]) != chars[i]) {
+                    return false;
+                }
+            }
+            for (int i = 1; i <= tail; i++) {
+                if (toLowerCase(name[to - i]) != chars[types.length - i]) {
+                    return false;
+                }
+            }
+            if (head + tail == types.length) {
+                return to - from == types.length;
+            }
+
+            return run(name, from + head, to - tail, head, types.length - tail, false);
+        }
+
+        private boolean run(char[] name, int from, int to, int start, int end, boolean prefix) {
+            return end < 64 ? runMask(name, from, to, start, end, prefix) : runArray(name, from, to, start, end, prefix);
+        }
+
+        /**
+         * Positions in the pattern as bits of a long
+         */
+        private boolean runMask(char[] name, int from, int to, int start, int end, boolean prefix) {
+            long endBit = 1L << end;
+            long emptyBefore = empty & (endBit - 1);
+
+            long state = closure(1L << start, emptyBefore);
+            for (int i = from; i < to && state != 0; i++) {
+                char ch = name[i];
+                long next = 0;
+                for (long bits = state & ~endBit; bits != 0; bits &= bits - 1) {
+                    int position = Long.numberOfTrailingZeros(bits);
+                    switch (step(position, ch)) {
+                        case 1:
+                            next |= 1L << (position + 1);
+                            break;
+                        case 2:
+                            next |= 1L << position;
+                            break;
+                        case 3:
+                            next |= 3L << position;
+                            break;
+                        default:
+                    }
+                }
+                state = closure(next, emptyBefore);
+            }
+
+            // A prefix can go on from any position but the end
+            return prefix ? (state & ~endBit) != 0 : (state & endBit) != 0;
+        }
+
+        private static long closure(long state, long empty) {
+            long next = state | ((state & empty) << 1);
+            while (next != state) {
+                state = next;
+                next = state | ((state & empty) << 1);
+            }
+            return state;
+        }
+
+        /**
+         * Same as {@link #runMask} for the longer patterns
+         */
+        private boolean runArray(char[] name, int from, int to, int start, int end, boolean prefix) {
+            boolean[] state = new boolean[end + 1];
+            boolean[] next = new boolean[end + 1];
+            state[start] = true;
+            closure(state, start, end);
+
+            for (int i = from; i < to; i++) {
+                char ch = name[i];
+                boolean alive = false;
+                Arrays.fill(next, false);
+                for (int position = start; position < end; position++) {
+                    if (!state[position]) {
+                        continue;
+                    }
+                    int step = step(position, ch);
+                    if ((step & 1) != 0) {
+                        next[position + 1] = true;
+                        alive = true;
+                    }
+                    if ((step & 2) != 0) {
+                        next[position] = true;
+                        alive = true;
+                    }
+                }
+                if (!alive) {
+                    return false;
+                }
+
+                boolean[] swap = state;
+                state = next;
+                next = swap;
+                closure(state, start, end);
+            }
+
+            if (!prefix) {
+                return state[end];
+            }
+            for (int position = start; position < end; position++) {
+                if (state[position]) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        private void closure(boolean[] state, int start, int end) {
+            for (int position = start; position < end; position++) {
+                if (state[position] && types[position] >= STAR) {
+                    state[position + 1] = true;
+                }
+            }
+        }
+
+        /**
+         * @return 1 to move past the token, 2 to stay on it, 3 for both, 0
+         * when the character does not match
+         */
+        private int step(int position, char ch) {
+            switch (types[position]) {
+                case LITERAL:
+                    return toLowerCase(ch) == chars[position] ? 1 : 0;
+                case ANY:
+                    return isLineTerminator(ch) || (paths && ch == '/') ? 0 : 1;
+                case CLASS:
+                    return classes[position].matches(ch) ? 1 : 0;
+                case STAR:
+                    return isLineTerminator(ch) || (paths && ch == '/') ? 0 : 2;
+                case ANY_PATH:
+                    return isLineTerminator(ch) ? 0 : 2;
+                case FOLDERS:
+                    if (isLineTerminator(ch)) {
+                        return 0;
+                    }
+                    return ch == '/' ? 3 : 2;
+                default:
+                    return 0;
+            }
+        }
+    }
+
+    /**
+     * Splits the glob into sequences of tokens, one per alternative of the
+     * groups
+     */
+    private static final class Parser {
+
+        final String glob;
+        final boolean paths;
+        int position = 0;
+
+        Parser(String glob, boolean paths) {
+            this.glob = glob;
+            this.paths = paths;
+        }
+
+        List<Sequence> parse() {
+            List<Sequence> result = new ArrayList<>();
+            for (List<Object> tokens : parseAlternatives(false)) {
+                result.add(new Sequence(tokens, paths));
+            }
+            return result;
+        }
+
+        private List<List<Object>> parseAlternatives(boolean inGroup) {
+            List<List<Object>> result = new ArrayList<>();
+            List<List<Object>> current = new ArrayList<>();
+            current.add(new ArrayList<>());
+
+            while (position < glob.length()) {
+                char ch = glob.charAt(position);
+                if (inGroup && ch == ',') {
+                    position++;
+                    result.addAll(current);
+                    current = new ArrayList<>();
+                    current.add(new ArrayList<>());
+                } else if (inGroup && ch == '}') {
+                    position++;
+                    result.addAll(current);
+                    return result;
+                } else if (ch == '{' && isGroup(position)) {
+                    position++;
+                    List<List<Object>> group = parseAlternatives(true);
+                    List<List<Object>> combined = new ArrayList<>();
+                    for (List<Object> head : current) {
+                        for (List<Object> tail : group) {
+                            List<Object> tokens = new ArrayList<>(head);
+                            tokens.addAll(tail);
+                            combined.add(tokens);
+                        }
+                    }
+                    current = combined;
+                } else {
+                    Object token = parseToken();
+                    for (List<Object> tokens : current) {
+                        tokens.add(token);
+                    }
+                }
+            }
+
+            result.addAll(current);
+            return result;
+        }
+
+        /**
+         * @return true if the { at the position is closed
+         */
+        private boolean isGroup(int start) {
+            int depth = 0;
+            for (int i = start; i < glob.length(); i++) {
+                char ch = glob.charAt(i);
+                if (ch == '\\') {
+                    i++;
+                } else if (ch == '{') {
+                    depth++;
+                } else if (ch == '}' && --depth == 0) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        private Object parseToken() {
+            char ch = glob.charAt(position++);
+            switch (ch) {
+                case '\\':
+                    // Trailing \ is itself
+                    return position < glob.length() ? glob.charAt(position++) : ch;
+                case '*':
+                    int stars = 1;
+                    while (position < glob.length() && glob.charAt(position) == '*') {
+                        position++;
+                        stars++;
+                    }
+                    if (!paths) {
+                        return STAR;
+                    }
+                    if (stars == 1) {
+                        return STAR;
+                    }
+                    if (position < glob.length() && glob.charAt(position) == '/') {
+                        position++;
+                        return FOLDERS;
+                    }
+                    return ANY_PATH;
+                case '?':
+                    return ANY;
+                case '[':
+                    CharClass charClass = parseClass();
+                    return charClass != null ? charClass : ch;
+                default:
+                    return ch;
+            }
+        }
+
+        /**
+         * @return class after the [, null if it is not closed
+         */
+        private CharClass parseClass() {
+            int i = position;
+            boolean negated = i < glob.length() && glob.charAt(i) == '!';
+            if (negated) {
+                i++;
+            }
+
+            StringBuilder ranges = new StringBuilder();
+            boolean first = true;
+            while (i < glob.length()) {
+                char ch = glob.charAt(i++);
+                if (ch == ']' && !first) {
+                    position = i;
+                    return new CharClass(ranges.toString().toCharArray(), negated, paths);
+                }
+                first = false;
+
+                if (ch == '\\' && i < glob.length()) {
+                    ch = glob.charAt(i++);
+                }
+
+                char last = ch;
+                if (i + 1 < glob.length() && glob.charAt(i) == '-' && glob.charAt(i + 1) != ']') {
+                    last = glob.charAt(i + 1);
+                    i += 2;
+                    if (last == '\\' && i < glob.length()) {
+                        last = glob.charAt(i++);
+                    }
+                }
+                ranges.append(ch).append(last);
+            }
+            return null;
+        }
+    }
+}
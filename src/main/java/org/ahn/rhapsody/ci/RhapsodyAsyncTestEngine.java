@@ -0,0 +1,450 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2020 me.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.ahn.rhapsody.ci;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import java.io.Closeable;
+import java.io.IOException;
+import java.net.URI;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.Supplier;
+import org.ahn.rhapsody.ci.model.Component;
+import org.ahn.rhapsody.ci.model.TestStatus;
+import org.apache.http.Header;
+import org.apache.http.HttpResponse;
+import org.apache.http.HttpStatus;
+import org.apache.http.client.methods.HttpGet;
+import org.apache.http.client.methods.HttpPost;
+import org.apache.http.client.methods.HttpUriRequest;
+import org.apache.http.client.protocol.HttpClientContext;
+import org.apache.http.concurrent.FutureCallback;
+import org.apache.http.impl.nio.client.CloseableHttpAsyncClient;
+import org.apache.http.util.EntityUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Runs component tests without blocking a thread per test.
+ * <p>
+ * Tests are submitted and their status polled through the non-blocking HTTP
+ * client shared by the builds using the server: a single I/O thread carries
+ * all the requests and a single timer thread schedules the polls. Every test
+ * has at most one request in flight, so no request is left behind when a poll
+ * is late.
+ * <p>
+ * A failed poll is tried again after the backoff of the connection policy,
+ * rescheduled on the timer. Submissions are not retried.
+ *
+ * @author me
+ */
+public class RhapsodyAsyncTestEngine implements Closeable {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(RhapsodyAsyncTestEngine.class);
+
+    // Statuses of a server too busy to start another test
+    private static final Collection<Integer> PUSH_BACK_STATUSES = Arrays.asList(HttpStatus.SC_CONFLICT, 429,
+            HttpStatus.SC_SERVICE_UNAVAILABLE);
+
+    private final String restUrl;
+    private final ObjectMapper mapper;
+    private final RhapsodyConnectionPolicy policy;
+    private final RhapsodyCircuitBreaker breaker;
+    private final RhapsodyRetryHandler retryHandler;
+    private final Supplier<CloseableHttpAsyncClient> client;
+    private final ScheduledExecutorService timer;
+    // Tests not completed yet, failed on close
+    private final Set<CompletableFuture<TestStatus>> pending = ConcurrentHashMap.newKeySet();
+    // Requests in flight, cancelled on close
+    private final Set<Future<HttpResponse>> requests = ConcurrentHashMap.newKeySet();
+
+    private RhapsodyPollSchedule schedule = new RhapsodyPollSchedule();
+
+    public RhapsodyAsyncTestEngine(String restUrl, String username, String password, RhapsodyConnectionPolicy policy, ObjectMapper mapper) {
+        this(restUrl, () -> RhapsodyHttpClientRegistry.get().getAsyncClient(restUrl, username, password, policy), policy, mapper);
+    }
+
+    /**
+     * @param restUrl
+     * @param client shared client, looked up for every request so a client
+     * closed by the registry is not used again
+     * @param policy
+     * @param mapper
+     */
+    RhapsodyAsyncTestEngine(String restUrl, Supplier<CloseableHttpAsyncClient> client, RhapsodyConnectionPolicy policy, ObjectMapper mapper) {
+        this.restUrl = restUrl;
+        this.mapper = mapper;
+        this.policy = policy;
+        this.breaker = RhapsodyCircuitBreaker.forServer(restUrl, policy);
+        this.retryHandler = new RhapsodyRetryHandler(policy, breaker);
+        this.client = client;
+
+        timer = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "Rhapsody test status poller");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    public String getRestUrl() {
+        return restUrl;
+    }
+
+    public RhapsodyPollSchedule getSchedule() {
+        return schedule;
+    }
+
+    /**
+     * @param schedule default polling of the submitted tests
+     */
+    public void setSchedule(RhapsodyPollSchedule schedule) {
+        this.schedule = schedule;
+    }
+
+    /**
+     * @return number of tests submitted and not completed yet
+     */
+    public int getInFlight() {
+        return pending.size();
+    }
+
+    /**
+     * Submit the test of the component, polled on the default schedule
+     *
+     * @param component
+     * @return status of the completed test
+     * @see #submit(Component, RhapsodyPollSchedule)
+     */
+    public CompletableFuture<TestStatus> submit(Component component) {
+        return submit(component, schedule);
+    }
+
+    /**
+     * Submit the test of the component
+     *
+     * @param component
+     * @param schedule polling of the test
+     * @return status of the completed test, with the polls and time it took.
+     * Completed exceptionally on errors or when the test does not complete in
+     * time; cancelling it stops polling
+     */
+    public CompletableFuture<TestStatus> submit(Component component, RhapsodyPollSchedule schedule) {
+        return submit(component, schedule, null);
+    }
+
+    /**
+     * Submit the test of the component
+     *
+     * @param component
+     * @param schedule polling of the test
+     * @param onStarted called once the server reports the test as running or
+     * completed, before the result is available; may be null
+     * @return status of the completed test
+     * @see #submit(Component, RhapsodyPollSchedule)
+     */
+    public CompletableFuture<TestStatus> submit(Component component, RhapsodyPollSchedule schedule, Runnable onStarted) {
+        Poll poll = new Poll(component, schedule, onStarted);
+        CompletableFuture<TestStatus> result = poll.result;
+        pending.add(result);
+        // Cancelled by the caller
+        result.whenComplete((status, ex) -> pending.remove(result));
+
+        execute(() -> new HttpPost(restUrl + "/api/test/" + component.getId()), true, false, PUSH_BACK_STATUSES).whenComplete((response, ex) -> {
+            if (ex != null) {
+                fail(result, ex);
+                return;
+            }
+
+            EntityUtils.consumeQuietly(response.getEntity());
+            int statusCode = response.getStatusLine().getStatusCode();
+            if (PUSH_BACK_STATUSES.contains(statusCode)) {
+                fail(result, new PushBackException(statusCode, response.getStatusLine().getReasonPhrase()));
+                return;
+            }
+
+            Header location = response.getFirstHeader("Location");
+            if (response.getStatusLine().getStatusCode() != HttpStatus.SC_ACCEPTED || location == null) {
+                fail(result, new IOException("Unexpected test response status: "
+                        + response.getStatusLine().getReasonPhrase()));
+                return;
+            }
+
+            LOGGER.debug("Submitted request to test {} component", component);
+            poll.statusUri = URI.create(location.getValue());
+            schedulePoll(poll);
+        });
+
+        return result;
+    }
+
+    private void schedulePoll(Poll poll) {
+        // Never past the deadline, polled one last time
+        long delay = Math.min(poll.schedule.delay(poll.count), TimeUnit.NANOSECONDS.toMillis(Math.max(0, poll.deadline - System.nanoTime())));
+        try {
+            timer.schedule(() -> poll(poll), delay, TimeUnit.MILLISECONDS);
+        } catch (RejectedExecutionException ex) {
+            fail(poll.result, new IOException("Test engine is closed", ex));
+        }
+    }
+
+    private void poll(Poll poll) {
+        CompletableFuture<TestStatus> result = poll.result;
+        if (result.isDone()) {
+            // Cancelled by the caller
+            return;
+        }
+
+        Component component = poll.component;
+        LOGGER.trace("Checking test execution status on component {}", component);
+        poll.count++;
+        // Retries of a poll count as a single failure for the circuit breaker
+        execute(() -> new HttpGet(poll.statusUri), false, poll.retries > 0, null).whenComplete((response, ex) -> {
+            if (ex != null) {
+                retryPoll(poll, ex);
+                return;
+            }
+
+            try {
+                int statusCode = response.getStatusLine().getStatusCode();
+                if (RhapsodyRetryHandler.TRANSIENT_STATUSES.contains(statusCode)) {
+                    retryPoll(poll, new IOException("Unexpected status response: " + response.getStatusLine()));
+                    return;
+                }
+                if (statusCode != HttpStatus.SC_OK) {
+                    throw new IOException("Unexpected status response: " + response.getStatusLine().getReasonPhrase());
+                }
+
+                TestStatus status = new TestStatus(mapper.readValue(EntityUtils.toByteArray(response.getEntity()), Map.class));
+                poll.retries = 0;
+                status.setPollCount(poll.count);
+                status.setDurationMillis(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - poll.start));
+                if (status.isStarted()) {
+                    poll.started();
+                }
+                if (status.isCompleted()) {
+                    LOGGER.debug("Component testing is complete for {} after {} polls", component, poll.count);
+                    complete(result, status);
+                } else if (System.nanoTime() - poll.deadline >= 0) {
+                    fail(result, new TimeoutException("Test timeout exception after " + poll.count + " polls in "
+                            + status.getDurationMillis() + " ms"));
+                } else {
+                    schedulePoll(poll);
+                }
+            } catch (IOException | RuntimeException e) {
+                fail(result, e);
+            } finally {
+                EntityUtils.consumeQuietly(response.getEntity());
+            }
+        });
+    }
+
+    /**
+     * Poll again after the backoff of the policy, the status request is
+     * idempotent
+     */
+    private void retryPoll(Poll poll, Throwable ex) {
+        Throwable cause = ex instanceof CompletionException && ex.getCause() != null ? ex.getCause() : ex;
+        if (cause instanceof RhapsodyCircuitBreaker.CircuitOpenException || cause instanceof CancellationException
+                || poll.retries >= policy.getMaxRetries() || System.nanoTime() - poll.deadline >= 0) {
+            fail(poll.result, cause);
+            return;
+        }
+
+        poll.retries++;
+        long delay = policy.backoff(poll.retries);
+        LOGGER.info("Retrying the status of {} in {} ms after {} ({}/{})", poll.component, delay, cause,
+                poll.retries, policy.getMaxRetries());
+        try {
+            timer.schedule(() -> poll(poll), delay, TimeUnit.MILLISECONDS);
+        } catch (RejectedExecutionException rejected) {
+            fail(poll.result, new IOException("Test engine is closed", rejected));
+        }
+    }
+
+    private void complete(CompletableFuture<TestStatus> result, TestStatus status) {
+        // No longer in flight once the caller sees the result
+        pending.remove(result);
+        result.complete(status);
+    }
+
+    private void fail(CompletableFuture<TestStatus> result, Throwable ex) {
+        pending.remove(result);
+        result.completeExceptionally(ex);
+    }
+
+    /**
+     * Execute the request, again once if its CSRF token was rejected
+     *
+     * @param request
+     * @param retryCsrf
+     * @param failureReported the request is a retry, already counted by the
+     * circuit breaker when failed
+     * @param expected statuses not reported to the circuit breaker, or null
+     */
+    private CompletableFuture<HttpResponse> execute(Supplier<HttpUriRequest> request, boolean retryCsrf, boolean failureReported, Collection<Integer> expected) {
+        CompletableFuture<HttpResponse> future = new CompletableFuture<>();
+        HttpClientContext context = HttpClientContext.create();
+        if (failureReported) {
+            context.setAttribute(RhapsodyRetryHandler.FAILURE_REPORTED, Boolean.TRUE);
+        }
+        if (expected != null) {
+            // A server pushing back is busy, not failing
+            context.setAttribute(RhapsodyRetryHandler.EXPECTED_STATUSES, expected);
+        }
+
+        try {
+            Future<HttpResponse> inFlight = client.get().execute(request.get(), context, new FutureCallback<HttpResponse>() {
+                @Override
+                public void completed(HttpResponse response) {
+                    if (retryCsrf && Boolean.TRUE.equals(context.getAttribute(CsrfHttpResponseInterceptor.CSRF_REJECTED))) {
+                        EntityUtils.consumeQuietly(response.getEntity());
+                        execute(request, false, failureReported, expected).whenComplete((retried, ex) -> {
+                            if (ex != null) {
+                                future.completeExceptionally(ex);
+                            } else {
+                                future.complete(retried);
+                            }
+                        });
+                        return;
+                    }
+
+                    future.complete(response);
+                }
+
+                @Override
+                public void failed(Exception ex) {
+                    if (!(ex instanceof RhapsodyCircuitBreaker.CircuitOpenException)) {
+                        retryHandler.reportFailure(context);
+                    }
+                    future.completeExceptionally(ex);
+                }
+
+                @Override
+                public void cancelled() {
+                    // Could have been the trial of a half-open circuit
+                    breaker.onCancel();
+                    future.cancel(false);
+                }
+            });
+            requests.add(inFlight);
+            future.whenComplete((response, ex) -> requests.remove(inFlight));
+        } catch (RuntimeException ex) {
+            // Client already shut down
+            future.completeExceptionally(ex);
+        }
+
+        return future;
+    }
+
+    /**
+     * Run the task on the timer thread after the delay
+     */
+    void schedule(Runnable task, long delayMillis) {
+        timer.schedule(task, delayMillis, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Stop polling and fail the tests still in flight
+     */
+    @Override
+    public void close() throws IOException {
+        timer.shutdownNow();
+        for (CompletableFuture<TestStatus> future : pending) {
+            fail(future, new IOException("Test engine is closed"));
+        }
+        // The client is shared, only the requests of this engine are stopped
+        for (Future<HttpResponse> request : requests) {
+            request.cancel(true);
+        }
+    }
+
+    /**
+     * Polling state of a submitted test
+     */
+    static class Poll {
+
+        final Component component;
+        final RhapsodyPollSchedule schedule;
+        final Runnable onStarted;
+        final CompletableFuture<TestStatus> result = new CompletableFuture<>();
+        final long start = System.nanoTime();
+        final long deadline;
+        volatile URI statusUri;
+        volatile int count;
+        // Failed polls in a row
+        volatile int retries;
+        volatile boolean started;
+
+        Poll(Component component, RhapsodyPollSchedule schedule, Runnable onStarted) {
+            this.component = component;
+            this.schedule = schedule;
+            this.onStarted = onStarted;
+            this.deadline = start + schedule.getTimeout().toNanos();
+        }
+
+        void started() {
+            if (started) {
+                return;
+            }
+
+            started = true;
+            if (onStarted != null) {
+                try {
+                    onStarted.run();
+                } catch (RuntimeException ex) {
+                    LOGGER.warn("Exception notifying the start of the test of {}", component, ex);
+                }
+            }
+        }
+    }
+
+    /**
+     * Test refused by a server too busy to run it now
+     */
+    public static class PushBackException extends IOException {
+
+        private final int statusCode;
+
+        public PushBackException(int statusCode, String reason) {
+            super("Test refused by the server: " + statusCode + " " + reason);
+            this.statusCode = statusCode;
+        }
+
+        public int getStatusCode() {
+            return statusCode;
+        }
+    }
+}
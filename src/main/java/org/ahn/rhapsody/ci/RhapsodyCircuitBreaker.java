@@ -0,0 +1,234 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2020 me.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.ahn.rhapsody.ci;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongSupplier;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Circuit breaker of a Rhapsody server, shared by the builds talking to it.
+ * <p>
+ * After too many consecutive failures the circuit opens and requests fail
+ * fast instead of waiting on timeouts. Once the open period is over a single
+ * trial request is let through: its success closes the circuit, its failure
+ * opens it again. A trial which never reports back, for instance when it is
+ * cancelled, is replaced after another open period.
+ * <p>
+ * The state of the circuit is per server. Breakers of different connection
+ * policies for the same server share it and only apply their own threshold
+ * and open period.
+ *
+ * @author me
+ */
+public class RhapsodyCircuitBreaker {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(RhapsodyCircuitBreaker.class);
+
+    private static final ConcurrentMap<String, Circuit> CIRCUITS = new ConcurrentHashMap<>();
+    private static final ConcurrentMap<List<Object>, RhapsodyCircuitBreaker> BREAKERS = new ConcurrentHashMap<>();
+
+    public enum State {
+        CLOSED, OPEN, HALF_OPEN
+    }
+
+    private final String url;
+    private final int failureThreshold;
+    private final long openMillis;
+    private final LongSupplier clock;
+    private final Circuit circuit;
+
+    RhapsodyCircuitBreaker(String url, int failureThreshold, long openMillis, LongSupplier clock) {
+        this(url, failureThreshold, openMillis, clock, new Circuit());
+    }
+
+    private RhapsodyCircuitBreaker(String url, int failureThreshold, long openMillis, LongSupplier clock, Circuit circuit) {
+        this.url = url;
+        this.failureThreshold = failureThreshold;
+        this.openMillis = openMillis;
+        this.clock = clock;
+        this.circuit = circuit;
+    }
+
+    /**
+     * Get the breaker of the server for the connection policy
+     *
+     * @param url Rhapsody REST URL
+     * @param policy
+     * @return breaker sharing the circuit of the server with the other
+     * policies
+     */
+    public static RhapsodyCircuitBreaker forServer(String url, RhapsodyConnectionPolicy policy) {
+        long openMillis = TimeUnit.SECONDS.toMillis(policy.getOpenSeconds());
+        return BREAKERS.computeIfAbsent(Arrays.asList(url, policy.getFailureThreshold(), openMillis),
+                k -> new RhapsodyCircuitBreaker(url, policy.getFailureThreshold(), openMillis, System::currentTimeMillis,
+                        CIRCUITS.computeIfAbsent(url, u -> new Circuit())));
+    }
+
+    public boolean isEnabled() {
+        return failureThreshold > 0;
+    }
+
+    /**
+     * Check whether a request may go to the server
+     *
+     * @return false if the circuit is open
+     */
+    public boolean allowRequest() {
+        if (!isEnabled()) {
+            return true;
+        }
+
+        synchronized (circuit) {
+            long now = clock.getAsLong();
+            switch (circuit.state) {
+                case OPEN:
+                    if (now - circuit.openedAt < openMillis) {
+                        return false;
+                    }
+                    LOGGER.info("Circuit of {} half-open, trying a request", url);
+                    circuit.state = State.HALF_OPEN;
+                    circuit.startTrial(now);
+                    return true;
+                case HALF_OPEN:
+                    // A single trial at a time, unless it never reported back
+                    if (circuit.trialInFlight && now - circuit.trialStartedAt < openMillis) {
+                        return false;
+                    }
+                    circuit.startTrial(now);
+                    return true;
+                default:
+                    return true;
+            }
+        }
+    }
+
+    public void onSuccess() {
+        synchronized (circuit) {
+            if (circuit.state != State.CLOSED) {
+                LOGGER.info("Circuit of {} closed", url);
+            }
+            circuit.state = State.CLOSED;
+            circuit.failures = 0;
+            circuit.trialInFlight = false;
+        }
+    }
+
+    public void onFailure() {
+        if (!isEnabled()) {
+            return;
+        }
+
+        synchronized (circuit) {
+            circuit.failures++;
+            circuit.trialInFlight = false;
+            if (circuit.state == State.HALF_OPEN || circuit.failures >= failureThreshold) {
+                if (circuit.state != State.OPEN) {
+                    LOGGER.warn("Circuit of {} opened after {} failures", url, circuit.failures);
+                }
+                circuit.state = State.OPEN;
+                circuit.openedAt = clock.getAsLong();
+            }
+        }
+    }
+
+    /**
+     * A request let through was cancelled before its outcome was known, the
+     * next request can be the trial
+     */
+    public void onCancel() {
+        synchronized (circuit) {
+            circuit.trialInFlight = false;
+        }
+    }
+
+    public State getState() {
+        synchronized (circuit) {
+            // An expired open period is reported as half-open
+            if (circuit.state == State.OPEN && clock.getAsLong() - circuit.openedAt >= openMillis) {
+                return State.HALF_OPEN;
+            }
+            return circuit.state;
+        }
+    }
+
+    public int getFailures() {
+        synchronized (circuit) {
+            return circuit.failures;
+        }
+    }
+
+    /**
+     * @return state of the circuit for the build log
+     */
+    public String describe() {
+        if (!isEnabled()) {
+            return "Circuit breaker of " + url + " disabled";
+        }
+
+        synchronized (circuit) {
+            State current = getState();
+            StringBuilder sb = new StringBuilder("Circuit breaker of ").append(url).append(": ").append(current);
+            sb.append(" (").append(circuit.failures).append('/').append(failureThreshold).append(" consecutive failures");
+            if (current == State.OPEN) {
+                long remaining = openMillis - (clock.getAsLong() - circuit.openedAt);
+                sb.append(", retrying in ").append(TimeUnit.MILLISECONDS.toSeconds(remaining + 999)).append("s");
+            }
+            return sb.append(')').toString();
+        }
+    }
+
+    /**
+     * State of the circuit of a server
+     */
+    private static final class Circuit {
+
+        State state = State.CLOSED;
+        int failures;
+        long openedAt;
+        boolean trialInFlight;
+        long trialStartedAt;
+
+        void startTrial(long now) {
+            trialInFlight = true;
+            trialStartedAt = now;
+        }
+    }
+
+    /**
+     * Request refused without contacting the server
+     */
+    public static class CircuitOpenException extends IOException {
+
+        public CircuitOpenException(String message) {
+            super(message);
+        }
+    }
+}
@@ -0,0 +1,196 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2020 me.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.ahn.rhapsody.ci;
+
+import hudson.Extension;
+import hudson.model.AbstractDescribableImpl;
+import hudson.model.Descriptor;
+import java.util.Objects;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import org.apache.http.client.config.RequestConfig;
+import org.kohsuke.stapler.DataBoundConstructor;
+import org.kohsuke.stapler.DataBoundSetter;
+
+/**
+ * How the plugin talks to a Rhapsody server: timeouts, retries of idempotent
+ * requests and the circuit breaker failing fast on a struggling server
+ *
+ * @author me
+ */
+public class RhapsodyConnectionPolicy extends AbstractDescribableImpl<RhapsodyConnectionPolicy> {
+
+    public static final int DEFAULT_TIMEOUT = 10;
+    public static final int DEFAULT_MAX_RETRIES = 3;
+    public static final int DEFAULT_RETRY_BACKOFF = 500;
+    public static final int MAX_RETRY_BACKOFF = 30000;
+    public static final int DEFAULT_FAILURE_THRESHOLD = 5;
+    public static final int DEFAULT_OPEN_SECONDS = 60;
+
+    // Seconds
+    private int connectTimeout = DEFAULT_TIMEOUT;
+    private int socketTimeout = DEFAULT_TIMEOUT;
+    private int requestTimeout = DEFAULT_TIMEOUT;
+
+    private int maxRetries = DEFAULT_MAX_RETRIES;
+    // Milliseconds, doubled on every retry
+    private int retryBackoff = DEFAULT_RETRY_BACKOFF;
+
+    private int failureThreshold = DEFAULT_FAILURE_THRESHOLD;
+    private int openSeconds = DEFAULT_OPEN_SECONDS;
+
+    @DataBoundConstructor
+    public RhapsodyConnectionPolicy() {
+    }
+
+    public int getConnectTimeout() {
+        return connectTimeout;
+    }
+
+    @DataBoundSetter
+    public void setConnectTimeout(int connectTimeout) {
+        this.connectTimeout = connectTimeout > 0 ? connectTimeout : DEFAULT_TIMEOUT;
+    }
+
+    public int getSocketTimeout() {
+        return socketTimeout;
+    }
+
+    @DataBoundSetter
+    public void setSocketTimeout(int socketTimeout) {
+        this.socketTimeout = socketTimeout > 0 ? socketTimeout : DEFAULT_TIMEOUT;
+    }
+
+    /**
+     * @return seconds to wait for a pooled connection
+     */
+    public int getRequestTimeout() {
+        return requestTimeout;
+    }
+
+    @DataBoundSetter
+    public void setRequestTimeout(int requestTimeout) {
+        this.requestTimeout = requestTimeout > 0 ? requestTimeout : DEFAULT_TIMEOUT;
+    }
+
+    public int getMaxRetries() {
+        return maxRetries;
+    }
+
+    @DataBoundSetter
+    public void setMaxRetries(int maxRetries) {
+        this.maxRetries = Math.max(0, maxRetries);
+    }
+
+    public int getRetryBackoff() {
+        return retryBackoff;
+    }
+
+    @DataBoundSetter
+    public void setRetryBackoff(int retryBackoff) {
+        this.retryBackoff = Math.max(0, retryBackoff);
+    }
+
+    public int getFailureThreshold() {
+        return failureThreshold;
+    }
+
+    /**
+     * @param failureThreshold consecutive failures opening the circuit, 0 to
+     * disable the circuit breaker
+     */
+    @DataBoundSetter
+    public void setFailureThreshold(int failureThreshold) {
+        this.failureThreshold = Math.max(0, failureThreshold);
+    }
+
+    public int getOpenSeconds() {
+        return openSeconds;
+    }
+
+    @DataBoundSetter
+    public void setOpenSeconds(int openSeconds) {
+        this.openSeconds = openSeconds > 0 ? openSeconds : DEFAULT_OPEN_SECONDS;
+    }
+
+    public RequestConfig toRequestConfig() {
+        return RequestConfig.custom()
+                .setConnectTimeout((int) TimeUnit.SECONDS.toMillis(connectTimeout))
+                .setConnectionRequestTimeout((int) TimeUnit.SECONDS.toMillis(requestTimeout))
+                .setSocketTimeout((int) TimeUnit.SECONDS.toMillis(socketTimeout))
+                .build();
+    }
+
+    /**
+     * Exponential backoff with jitter, between half and the full delay so
+     * retrying builds do not hit the server at the same time
+     *
+     * @param retry retry number starting at 1
+     * @return milliseconds to wait before the retry
+     */
+    public long backoff(int retry) {
+        long delay = Math.min(MAX_RETRY_BACKOFF, (long) retryBackoff << Math.min(Math.max(0, retry - 1), 20));
+        return delay / 2 + ThreadLocalRandom.current().nextLong(delay / 2 + 1);
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (o == null || getClass() != o.getClass()) {
+            return false;
+        }
+
+        RhapsodyConnectionPolicy other = (RhapsodyConnectionPolicy) o;
+        return connectTimeout == other.connectTimeout
+                && socketTimeout == other.socketTimeout
+                && requestTimeout == other.requestTimeout
+                && maxRetries == other.maxRetries
+                && retryBackoff == other.retryBackoff
+                && failureThreshold == other.failureThreshold
+                && openSeconds == other.openSeconds;
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(connectTimeout, socketTimeout, requestTimeout, maxRetries, retryBackoff, failureThreshold, openSeconds);
+    }
+
+    @Override
+    public String toString() {
+        return "RhapsodyConnectionPolicy{" + "connectTimeout=" + connectTimeout + ", socketTimeout=" + socketTimeout
+                + ", requestTimeout=" + requestTimeout + ", maxRetries=" + maxRetries + ", retryBackoff=" + retryBackoff
+                + ", failureThreshold=" + failureThreshold + ", openSeconds=" + openSeconds + '}';
+    }
+
+    @Extension
+    public static class DescriptorImpl extends Descriptor<RhapsodyConnectionPolicy> {
+
+        @Override
+        public String getDisplayName() {
+            return "Rhapsody connection policy";
+        }
+    }
+}
@@ -0,0 +1,121 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2020 me.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.ahn.rhapsody.ci;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+import org.apache.http.HttpHost;
+import org.apache.http.client.CookieStore;
+import org.apache.http.cookie.Cookie;
+
+/**
+ * CSRF tokens issued by Rhapsody servers, per host and session.
+ * <p>
+ * Tokens are taken from the <code>X-CSRF-Token</code> response header and
+ * sent with the following requests to the same host in the same session, so
+ * concurrent jobs talking to different servers do not overwrite each other's
+ * token.
+ * <p>
+ * Every new session adds a token, only the tokens of the most recently used
+ * sessions are kept. A session whose token was dropped gets a new one on its
+ * next request.
+ *
+ * @author me
+ */
+public class RhapsodyCsrfTokenStore {
+
+    public static final String HEADER = "X-CSRF-Token";
+
+    public static final int MAX_TOKENS = 256;
+
+    private static final RhapsodyCsrfTokenStore INSTANCE = new RhapsodyCsrfTokenStore(MAX_TOKENS);
+
+    // Least recently used first
+    private final Map<String, String> tokens;
+
+    RhapsodyCsrfTokenStore(int maxTokens) {
+        this.tokens = Collections.synchronizedMap(new LinkedHashMap<String, String>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, String> eldest) {
+                return size() > maxTokens;
+            }
+        });
+    }
+
+    public static RhapsodyCsrfTokenStore get() {
+        return INSTANCE;
+    }
+
+    /**
+     * Key of the host and the session, identified by the session cookie
+     *
+     * @param host
+     * @param cookies cookies of the client, may be null
+     * @return
+     */
+    public static String key(HttpHost host, CookieStore cookies) {
+        String session = "";
+        if (cookies != null) {
+            for (Cookie cookie : cookies.getCookies()) {
+                if (cookie.getName().toLowerCase(Locale.ENGLISH).contains("session")
+                        && (cookie.getDomain() == null || cookie.getDomain().equalsIgnoreCase(host.getHostName()))) {
+                    session = cookie.getValue();
+                    break;
+                }
+            }
+        }
+
+        return host.toURI() + "|" + session;
+    }
+
+    public String getToken(String key) {
+        return tokens.get(key);
+    }
+
+    public void putToken(String key, String token) {
+        tokens.put(key, token);
+    }
+
+    /**
+     * Drop the token rejected by the server, unless it was already replaced
+     *
+     * @param key
+     * @param token
+     */
+    public void invalidate(String key, String token) {
+        if (token != null) {
+            synchronized (tokens) {
+                if (token.equals(tokens.get(key))) {
+                    tokens.remove(key);
+                }
+            }
+        }
+    }
+
+    public int size() {
+        return tokens.size();
+    }
+}
@@ -0,0 +1,369 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2020 me.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.ahn.rhapsody.ci;
+
+import hudson.init.Terminator;
+import java.io.IOException;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import org.apache.http.HeaderElement;
+import org.apache.http.HeaderElementIterator;
+import org.apache.http.HttpHost;
+import org.apache.http.HttpRequestInterceptor;
+import org.apache.http.HttpResponse;
+import org.apache.http.auth.AuthScope;
+import org.apache.http.auth.UsernamePasswordCredentials;
+import org.apache.http.client.AuthCache;
+import org.apache.http.client.CookieStore;
+import org.apache.http.client.CredentialsProvider;
+import org.apache.http.client.HttpClient;
+import org.apache.http.client.protocol.HttpClientContext;
+import org.apache.http.client.utils.URIUtils;
+import org.apache.http.config.RegistryBuilder;
+import org.apache.http.conn.ConnectionKeepAliveStrategy;
+import org.apache.http.conn.socket.ConnectionSocketFactory;
+import org.apache.http.conn.socket.PlainConnectionSocketFactory;
+import org.apache.http.conn.ssl.NoopHostnameVerifier;
+import org.apache.http.impl.auth.BasicScheme;
+import org.apache.http.impl.client.BasicAuthCache;
+import org.apache.http.impl.client.BasicCookieStore;
+import org.apache.http.impl.client.BasicCredentialsProvider;
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.impl.client.HttpClients;
+import org.apache.http.impl.conn.PoolingHttpClientConnectionManager;
+import org.apache.http.impl.nio.client.CloseableHttpAsyncClient;
+import org.apache.http.impl.nio.client.HttpAsyncClients;
+import org.apache.http.impl.nio.reactor.IOReactorConfig;
+import org.apache.http.message.BasicHeaderElementIterator;
+import org.apache.http.protocol.HTTP;
+import org.apache.http.protocol.HttpContext;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Plugin-wide HTTP clients, one per Rhapsody server and credentials.
+ * <p>
+ * Every client pools its connections, so builds talking to the same server
+ * reuse warm connections instead of a new TLS handshake per client. Idle and
+ * expired connections are evicted in the background; clients not used for a
+ * while are closed, the rest on Jenkins shutdown. Shared clients must not be
+ * closed by the callers.
+ * <p>
+ * Credentials are sent preemptively to the server, and its session cookies
+ * are kept by the client across builds. The non-blocking client used to run
+ * the tests shares them with the blocking client of the same server and
+ * credentials. Timeouts and retries follow the
+ * {@link RhapsodyConnectionPolicy} of the client, requests to a failing server
+ * are stopped by its {@link RhapsodyCircuitBreaker}.
+ *
+ * @author me
+ */
+public class RhapsodyHttpClientRegistry {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(RhapsodyHttpClientRegistry.class);
+
+    public static final int DEFAULT_MAX_PER_ROUTE = 8;
+    public static final int DEFAULT_MAX_TOTAL = 32;
+    // Used when the server does not send a Keep-Alive timeout
+    public static final long DEFAULT_KEEP_ALIVE = TimeUnit.SECONDS.toMillis(30);
+    public static final long IDLE_CONNECTION_TIMEOUT = TimeUnit.SECONDS.toMillis(60);
+    public static final long IDLE_CLIENT_TIMEOUT = TimeUnit.MINUTES.toMillis(30);
+
+    private static final RhapsodyHttpClientRegistry INSTANCE = new RhapsodyHttpClientRegistry();
+
+    private final ConcurrentMap<List<String>, Entry> clients = new ConcurrentHashMap<>();
+    private int maxPerRoute = DEFAULT_MAX_PER_ROUTE;
+    private int maxTotal = DEFAULT_MAX_TOTAL;
+
+    public static RhapsodyHttpClientRegistry get() {
+        return INSTANCE;
+    }
+
+    public void setMaxPerRoute(int maxPerRoute) {
+        this.maxPerRoute = Math.max(1, maxPerRoute);
+    }
+
+    public void setMaxTotal(int maxTotal) {
+        this.maxTotal = Math.max(1, maxTotal);
+    }
+
+    /**
+     * Get the shared client for the server
+     *
+     * @param url Rhapsody REST URL
+     * @param username
+     * @param password
+     * @return shared client, not to be closed
+     */
+    public HttpClient getClient(String url, String username, String password) {
+        return getClient(url, username, password, new RhapsodyConnectionPolicy());
+    }
+
+    /**
+     * Get the shared client for the server and connection policy
+     *
+     * @param url Rhapsody REST URL
+     * @param username
+     * @param password
+     * @param policy
+     * @return shared client, not to be closed
+     */
+    public HttpClient getClient(String url, String username, String password, RhapsodyConnectionPolicy policy) {
+        return entry(url, username, password, policy).client;
+    }
+
+    /**
+     * Get the shared non-blocking client for the server and connection
+     * policy. It shares the session, CSRF token and circuit breaker of the
+     * blocking client.
+     *
+     * @param url Rhapsody REST URL
+     * @param username
+     * @param password
+     * @param policy
+     * @return shared running client, not to be closed
+     */
+    public CloseableHttpAsyncClient getAsyncClient(String url, String username, String password, RhapsodyConnectionPolicy policy) {
+        return entry(url, username, password, policy).getAsyncClient();
+    }
+
+    private Entry entry(String url, String username, String password, RhapsodyConnectionPolicy policy) {
+        closeIdleClients();
+
+        Entry entry = clients.computeIfAbsent(key(url, username, password, policy), k -> {
+            LOGGER.info("Creating HTTP client for {}", url);
+            return new Entry(url, username, password, policy);
+        });
+        entry.touch();
+
+        return entry;
+    }
+
+    /**
+     * @return number of shared clients
+     */
+    public int size() {
+        return clients.size();
+    }
+
+    /**
+     * Close all clients and their connections
+     */
+    public void shutdown() {
+        Iterator<Entry> iterator = clients.values().iterator();
+        while (iterator.hasNext()) {
+            Entry entry = iterator.next();
+            iterator.remove();
+            entry.close();
+        }
+    }
+
+    @Terminator
+    public static void shutdownAll() {
+        INSTANCE.shutdown();
+    }
+
+    private void closeIdleClients() {
+        long now = System.currentTimeMillis();
+        for (Map.Entry<List<String>, Entry> e : clients.entrySet()) {
+            Entry entry = e.getValue();
+            if (now - entry.lastUsed > IDLE_CLIENT_TIMEOUT
+                    && entry.manager.getTotalStats().getLeased() == 0
+                    && clients.remove(e.getKey(), entry)) {
+                LOGGER.info("Closing idle HTTP client for {}", entry.url);
+                entry.close();
+            }
+        }
+    }
+
+    private static List<String> key(String url, String username, String password, RhapsodyConnectionPolicy policy) {
+        // Do not keep the password itself in the key
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            byte[] hash = digest.digest(String.valueOf(password).getBytes(StandardCharsets.UTF_8));
+            StringBuilder sb = new StringBuilder();
+            for (byte b : hash) {
+                sb.append(String.format("%02x", b));
+            }
+
+            return Arrays.asList(url, username, sb.toString(), policy.toString());
+        } catch (NoSuchAlgorithmException ex) {
+            throw new IllegalStateException(ex);
+        }
+    }
+
+    /**
+     * Keep connections alive as long as the server allows, or the default
+     */
+    static class KeepAliveStrategy implements ConnectionKeepAliveStrategy {
+
+        @Override
+        public long getKeepAliveDuration(HttpResponse response, HttpContext context) {
+            HeaderElementIterator it = new BasicHeaderElementIterator(response.headerIterator(HTTP.CONN_KEEP_ALIVE));
+            while (it.hasNext()) {
+                HeaderElement he = it.nextElement();
+                if (he.getValue() != null && he.getName().equalsIgnoreCase("timeout")) {
+                    try {
+                        return Long.parseLong(he.getValue()) * 1000;
+                    } catch (NumberFormatException ignore) {
+                        // Use the default
+                    }
+                }
+            }
+
+            return DEFAULT_KEEP_ALIVE;
+        }
+    }
+
+    class Entry {
+
+        final String url;
+        final PoolingHttpClientConnectionManager manager;
+        final CloseableHttpClient client;
+        // Shared by all the builds using the client
+        final AuthCache authCache = new BasicAuthCache();
+        final CookieStore cookieStore = new BasicCookieStore();
+        final RhapsodyConnectionPolicy policy;
+        final CredentialsProvider credsProvider = new BasicCredentialsProvider();
+        final RhapsodyRetryHandler retryHandler;
+        volatile long lastUsed = System.currentTimeMillis();
+        // Created on first use
+        private CloseableHttpAsyncClient asyncClient;
+
+        Entry(String url, String username, String password, RhapsodyConnectionPolicy policy) {
+            this.url = url;
+            this.policy = policy;
+
+            manager = new PoolingHttpClientConnectionManager(RegistryBuilder.<ConnectionSocketFactory>create()
+                    .register("http", PlainConnectionSocketFactory.getSocketFactory())
+                    .register("https", RhapsodyRestHelper.getSSLSocketFactory())
+                    .build());
+            manager.setDefaultMaxPerRoute(maxPerRoute);
+            manager.setMaxTotal(maxTotal);
+            // Check connections idle for a while before reusing them
+            manager.setValidateAfterInactivity(2000);
+
+            // Basic credentials for REST services
+            credsProvider.setCredentials(AuthScope.ANY, new UsernamePasswordCredentials(username, password));
+
+            // Preemptive authentication, no 401 challenge on new connections
+            HttpHost host = targetHost(url);
+            if (host != null) {
+                authCache.put(host, new BasicScheme());
+            }
+
+            retryHandler = new RhapsodyRetryHandler(policy, RhapsodyCircuitBreaker.forServer(url, policy));
+
+            client = HttpClients.custom()
+                    .setConnectionManager(manager)
+                    .setKeepAliveStrategy(new KeepAliveStrategy())
+                    .evictExpiredConnections()
+                    .evictIdleConnections(IDLE_CONNECTION_TIMEOUT, TimeUnit.MILLISECONDS)
+                    .setDefaultCredentialsProvider(credsProvider)
+                    .setDefaultRequestConfig(policy.toRequestConfig())
+                    .setDefaultCookieStore(cookieStore)
+                    .addInterceptorFirst(sessionInterceptor())
+                    .addInterceptorFirst(new CsrfHttpRequestInterceptor())
+                    .addInterceptorFirst(retryHandler.getRequestInterceptor())
+                    .addInterceptorLast(new CsrfHttpResponseInterceptor())
+                    .addInterceptorLast(retryHandler.getResponseInterceptor())
+                    .setRetryHandler(retryHandler)
+                    .setServiceUnavailableRetryStrategy(retryHandler)
+                    .build();
+        }
+
+        /**
+         * Retries of the non-blocking requests are up to the caller, only
+         * the circuit breaker applies
+         */
+        synchronized CloseableHttpAsyncClient getAsyncClient() {
+            if (asyncClient == null) {
+                asyncClient = HttpAsyncClients.custom()
+                        .setDefaultCredentialsProvider(credsProvider)
+                        .setDefaultCookieStore(cookieStore)
+                        .setDefaultRequestConfig(policy.toRequestConfig())
+                        .setSSLContext(RhapsodyRestHelper.getSSLContext())
+                        .setSSLHostnameVerifier(NoopHostnameVerifier.INSTANCE)
+                        .setMaxConnPerRoute(maxPerRoute)
+                        .setMaxConnTotal(maxTotal)
+                        // A single I/O thread carries all the tests
+                        .setDefaultIOReactorConfig(IOReactorConfig.custom().setIoThreadCount(1).build())
+                        .addInterceptorFirst(sessionInterceptor())
+                        .addInterceptorFirst(new CsrfHttpRequestInterceptor())
+                        .addInterceptorFirst(retryHandler.getRequestInterceptor())
+                        .addInterceptorLast(new CsrfHttpResponseInterceptor())
+                        .addInterceptorLast(retryHandler.getResponseInterceptor())
+                        .build();
+                asyncClient.start();
+            }
+
+            return asyncClient;
+        }
+
+        private HttpRequestInterceptor sessionInterceptor() {
+            return (request, context) -> {
+                touch();
+                // Unless the caller brought its own context
+                if (context.getAttribute(HttpClientContext.AUTH_CACHE) == null) {
+                    context.setAttribute(HttpClientContext.AUTH_CACHE, authCache);
+                }
+            };
+        }
+
+        private HttpHost targetHost(String url) {
+            try {
+                return URIUtils.extractHost(URI.create(url));
+            } catch (IllegalArgumentException ex) {
+                LOGGER.warn("Invalid Rhapsody URL {}, authentication will not be preemptive", url);
+                return null;
+            }
+        }
+
+        void touch() {
+            lastUsed = System.currentTimeMillis();
+        }
+
+        void close() {
+            try {
+                client.close();
+                synchronized (this) {
+                    if (asyncClient != null) {
+                        asyncClient.close();
+                    }
+                }
+            } catch (IOException ex) {
+                LOGGER.warn("Unable to close HTTP client for {}", url, ex);
+            }
+        }
+    }
+}
@@ -23,16 +23,24 @@
  */
 package org.ahn.rhapsody.ci;
 
+import hudson.Extension;
+import hudson.model.AbstractDescribableImpl;
+import hudson.model.Descriptor;
+import hudson.util.FormValidation;
+import org.kohsuke.stapler.DataBoundConstructor;
+import org.kohsuke.stapler.QueryParameter;
+
 /**
  *
  * @author me
  */
-public class RhapsodyInstance {
+public class RhapsodyInstance extends AbstractDescribableImpl<RhapsodyInstance> {
     
     final String apiProtocol;
     final String host;
     final int apiPort;
 
+    @DataBoundConstructor
     public RhapsodyInstance(String apiProtocol, String host, int apiPort) {
         this.apiProtocol = apiProtocol;
         this.host = host;
@@ -43,9 +51,41 @@ public class RhapsodyInstance {
         this("https", host, apiPort);
     }
     
+    public String getApiProtocol() {
+        return apiProtocol;
+    }
+
+    public String getHost() {
+        return host;
+    }
+
+    public int getApiPort() {
+        return apiPort;
+    }
+    
     public String getBaseUrl() {
         return apiProtocol + "://" + host + ":" + apiPort;
     }
-    
-    
+
+    @Override
+    public String toString() {
+        return getBaseUrl();
+    }
+
+    @Extension
+    public static class DescriptorImpl extends Descriptor<RhapsodyInstance> {
+
+        @Override
+        public String getDisplayName() {
+            return "Rhapsody instance";
+        }
+
+        public FormValidation doCheckHost(@QueryParameter String host) {
+            if (host == null || host.trim().isEmpty()) {
+                return FormValidation.error("Host is required");
+            }
+
+            return FormValidation.ok();
+        }
+    }
 }
@@ -0,0 +1,126 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2020 me.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.ahn.rhapsody.ci;
+
+import java.time.Duration;
+
+/**
+ * When to poll the status of a component test, and for how long.
+ * <p>
+ * Polls start fast and stretch out by a constant factor up to a maximum
+ * delay. With an expected duration, learned from previous runs, the first
+ * poll waits for most of it and the deadline allows for a slower run.
+ *
+ * @author me
+ */
+public class RhapsodyPollSchedule {
+
+    public static final Duration DEFAULT_INITIAL_DELAY = Duration.ofMillis(200);
+    public static final Duration DEFAULT_MAX_DELAY = Duration.ofSeconds(5);
+    public static final double DEFAULT_MULTIPLIER = 1.5;
+    public static final Duration DEFAULT_TIMEOUT = Duration.ofSeconds(5);
+
+    // Share of the expected duration waited before the first poll
+    static final double EXPECTED_FIRST_POLL = 0.8;
+    // Deadline as a multiple of the expected duration
+    static final int EXPECTED_TIMEOUT_FACTOR = 3;
+
+    private final Duration initialDelay;
+    private final Duration maxDelay;
+    private final double multiplier;
+    private final Duration timeout;
+    private final Duration firstDelay;
+
+    public RhapsodyPollSchedule() {
+        this(DEFAULT_INITIAL_DELAY, DEFAULT_MAX_DELAY, DEFAULT_MULTIPLIER, DEFAULT_TIMEOUT);
+    }
+
+    /**
+     * @param initialDelay delay before the first poll, and the second
+     * @param maxDelay longest delay between polls
+     * @param multiplier growth of the delay after each poll
+     * @param timeout how long to wait for the test to complete
+     */
+    public RhapsodyPollSchedule(Duration initialDelay, Duration maxDelay, double multiplier, Duration timeout) {
+        this(initialDelay, maxDelay, multiplier, timeout, initialDelay);
+    }
+
+    private RhapsodyPollSchedule(Duration initialDelay, Duration maxDelay, double multiplier, Duration timeout, Duration firstDelay) {
+        this.initialDelay = initialDelay;
+        this.maxDelay = maxDelay.compareTo(initialDelay) < 0 ? initialDelay : maxDelay;
+        this.multiplier = Math.max(1, multiplier);
+        this.timeout = timeout;
+        this.firstDelay = firstDelay;
+    }
+
+    public Duration getInitialDelay() {
+        return initialDelay;
+    }
+
+    public Duration getMaxDelay() {
+        return maxDelay;
+    }
+
+    public double getMultiplier() {
+        return multiplier;
+    }
+
+    public Duration getTimeout() {
+        return timeout;
+    }
+
+    /**
+     * @param poll number of polls already sent
+     * @return milliseconds to wait before the next poll
+     */
+    public long delay(int poll) {
+        if (poll == 0) {
+            return firstDelay.toMillis();
+        }
+
+        double delay = initialDelay.toMillis() * Math.pow(multiplier, poll - 1);
+        return (long) Math.min(delay, maxDelay.toMillis());
+    }
+
+    /**
+     * Adapt the schedule to a test expected to take this long
+     *
+     * @param expected duration of the previous runs
+     * @return
+     */
+    public RhapsodyPollSchedule expect(Duration expected) {
+        Duration first = Duration.ofMillis((long) (expected.toMillis() * EXPECTED_FIRST_POLL));
+        Duration deadline = expected.multipliedBy(EXPECTED_TIMEOUT_FACTOR);
+
+        return new RhapsodyPollSchedule(initialDelay, maxDelay, multiplier,
+                deadline.compareTo(timeout) > 0 ? deadline : timeout,
+                first.compareTo(initialDelay) > 0 ? first : initialDelay);
+    }
+
+    @Override
+    public String toString() {
+        return "RhapsodyPollSchedule{" + "initialDelay=" + initialDelay + ", maxDelay=" + maxDelay + ", multiplier="
+                + multiplier + ", timeout=" + timeout + ", firstDelay=" + firstDelay + '}';
+    }
+}
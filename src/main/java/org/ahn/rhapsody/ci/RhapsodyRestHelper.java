@@ -28,18 +28,19 @@ import java.security.KeyManagementException;
 import java.security.KeyStore;
 import java.security.KeyStoreException;
 import java.security.NoSuchAlgorithmException;
-import java.util.concurrent.TimeUnit;
 import javax.net.ssl.SSLContext;
 import org.apache.http.Header;
 import org.apache.http.HttpException;
 import org.apache.http.HttpRequestInterceptor;
 import org.apache.http.HttpResponse;
 import org.apache.http.HttpResponseInterceptor;
+import org.apache.http.HttpStatus;
 import org.apache.http.auth.AuthScope;
 import org.apache.http.auth.UsernamePasswordCredentials;
+import org.apache.http.client.HttpClient;
 import org.apache.http.client.CookieStore;
 import org.apache.http.client.CredentialsProvider;
-import org.apache.http.client.config.RequestConfig;
+import org.apache.http.client.protocol.HttpClientContext;
 import org.apache.http.conn.ssl.SSLConnectionSocketFactory;
 import org.apache.http.conn.ssl.SSLContexts;
 import org.apache.http.conn.ssl.TrustSelfSignedStrategy;
@@ -59,71 +60,142 @@ public class RhapsodyRestHelper {
     
     private static final Logger LOGGER = LoggerFactory.getLogger(RhapsodyRestHelper.class);
 
+    /**
+     * Get the shared client for the Rhapsody server
+     *
+     * @param url REST URL of the server
+     * @param username
+     * @param password
+     * @return pooled client shared between builds, must not be closed
+     * @see RhapsodyHttpClientRegistry
+     */
+    public static HttpClient getHttpClient(String url, String username, String password) {
+        return RhapsodyHttpClientRegistry.get().getClient(url, username, password);
+    }
+
+    /**
+     * Get the shared client for the Rhapsody server and connection policy
+     *
+     * @param url REST URL of the server
+     * @param username
+     * @param password
+     * @param policy
+     * @return pooled client shared between builds, must not be closed
+     */
+    public static HttpClient getHttpClient(String url, String username, String password, RhapsodyConnectionPolicy policy) {
+        return RhapsodyHttpClientRegistry.get().getClient(url, username, password, policy);
+    }
+
+    /**
+     * @param url REST URL of the server
+     * @param policy
+     * @return circuit breaker shared by the clients of the server
+     */
+    public static RhapsodyCircuitBreaker getCircuitBreaker(String url, RhapsodyConnectionPolicy policy) {
+        return RhapsodyCircuitBreaker.forServer(url, policy);
+    }
+
+    /**
+     * Build a new client, not shared with other callers
+     *
+     * @param username
+     * @param password
+     * @return client to be closed by the caller
+     * @deprecated use the shared {@link #getHttpClient(String, String, String)}
+     */
+    @Deprecated
     public static CloseableHttpClient getHttpClient(String username, String password) {
         // Basic credentials for REST services
-        // TODO: Setup preemptive authentication. See http://hc.apache.org/httpcomponents-client-ga/tutorial/html/authentication.html
         CredentialsProvider credsProvider = new BasicCredentialsProvider();
         credsProvider.setCredentials(AuthScope.ANY, new UsernamePasswordCredentials(username, password));
 
-        // Custom SSL context to allow for self-signed certificates
-        CloseableHttpClient httpClient;
         CookieStore cookieStore = new BasicCookieStore();
+        // Create http client with credentials and custom SSL
+        return HttpClients.custom()
+                .setDefaultCredentialsProvider(credsProvider)
+                .setDefaultRequestConfig(new RhapsodyConnectionPolicy().toRequestConfig())
+                .setSSLSocketFactory(getSSLSocketFactory())
+                .setDefaultCookieStore(cookieStore)
+                .addInterceptorFirst(new CsrfHttpRequestInterceptor())
+                .addInterceptorLast(new CsrfHttpResponseInterceptor())
+                .setServiceUnavailableRetryStrategy(new RhapsodyRetryHandler(new RhapsodyConnectionPolicy(), null))
+                .build();
+    }
+
+    /**
+     * Custom SSL context to allow for self-signed certificates
+     *
+     * @return
+     */
+    static SSLConnectionSocketFactory getSSLSocketFactory() {
+        return new SSLConnectionSocketFactory(getSSLContext(),
+                SSLConnectionSocketFactory.ALLOW_ALL_HOSTNAME_VERIFIER);
+    }
+
+    static SSLContext getSSLContext() {
         try {
-            RequestConfig config = RequestConfig.custom()
-                    .setConnectTimeout(10000)
-                    .setConnectionRequestTimeout(10000)
-                    .setSocketTimeout(10000)
-                    .build();
-            SSLContext sslContext = SSLContexts.custom()
+            return SSLContexts.custom()
                     .loadTrustMaterial(KeyStore.getInstance(KeyStore.getDefaultType()), new TrustSelfSignedStrategy())
                     .build();
-            SSLConnectionSocketFactory sslsf = new SSLConnectionSocketFactory(sslContext,
-                    SSLConnectionSocketFactory.ALLOW_ALL_HOSTNAME_VERIFIER);
-            // Create http client with credentials and custom SSL
-            httpClient = HttpClients.custom()
-                    .setDefaultCredentialsProvider(credsProvider)
-                    .setDefaultRequestConfig(config)
-                    .setSSLSocketFactory(sslsf)
-                    .setDefaultCookieStore(cookieStore)
-                    .addInterceptorFirst(new CsrfHttpRequestInterceptor())
-                    .addInterceptorLast(new CsrfHttpResponseInterceptor())
-                    .build();
         } catch (KeyStoreException | NoSuchAlgorithmException | KeyManagementException ex) {
             LOGGER.info("Exception building the HTTP client", ex);
             throw new RuntimeException(ex);
         }
-
-        return httpClient;
     }
 }
 
+/**
+ * Adds the CSRF token of the host and session to the request
+ */
 class CsrfHttpRequestInterceptor implements HttpRequestInterceptor {
 
+    static final String CSRF_SENT = "rhapsody.csrf.sent";
+
     @Override
     public void process(org.apache.http.HttpRequest request, HttpContext context) throws HttpException, IOException {
-        String csrf = CsrfHttpResponseInterceptor.getCsrf();
+        HttpClientContext clientContext = HttpClientContext.adapt(context);
+        String csrf = RhapsodyCsrfTokenStore.get().getToken(
+                RhapsodyCsrfTokenStore.key(clientContext.getTargetHost(), clientContext.getCookieStore()));
+
+        // Replace the token of a retried request
+        request.removeHeaders(RhapsodyCsrfTokenStore.HEADER);
         if (null != csrf) {
-            request.addHeader("X-CSRF-Token", csrf);
+            request.addHeader(RhapsodyCsrfTokenStore.HEADER, csrf);
         }
+        context.setAttribute(CSRF_SENT, csrf);
     }
 
 }
 
+/**
+ * Keeps the CSRF token issued by the host and detects rejected tokens
+ */
 class CsrfHttpResponseInterceptor implements HttpResponseInterceptor {
 
-    private static String csrf = null;
+    static final String CSRF_REJECTED = "rhapsody.csrf.rejected";
 
     @Override
     public void process(HttpResponse response, HttpContext context) throws HttpException, IOException {
-        Header csrfHeader = response.getFirstHeader("X-CSRF-Token");
-        if (null != csrfHeader) {
-            // Set the header for next request
-            csrf = csrfHeader.getValue();
+        HttpClientContext clientContext = HttpClientContext.adapt(context);
+        String key = RhapsodyCsrfTokenStore.key(clientContext.getTargetHost(), clientContext.getCookieStore());
+        String sent = (String) context.getAttribute(CsrfHttpRequestInterceptor.CSRF_SENT);
+
+        Header csrfHeader = response.getFirstHeader(RhapsodyCsrfTokenStore.HEADER);
+        String received = csrfHeader != null ? csrfHeader.getValue() : null;
+
+        String method = clientContext.getRequest().getRequestLine().getMethod();
+        boolean rejected = response.getStatusLine().getStatusCode() == HttpStatus.SC_FORBIDDEN
+                && !"GET".equals(method) && !"HEAD".equals(method)
+                && (sent == null || (received != null && !received.equals(sent)));
+        context.setAttribute(CSRF_REJECTED, rejected);
+        if (rejected) {
+            RhapsodyCsrfTokenStore.get().invalidate(key, sent);
         }
-    }
 
-    public static String getCsrf() {
-        return csrf;
+        if (null != received) {
+            // Set the header for next request
+            RhapsodyCsrfTokenStore.get().putToken(key, received);
+        }
     }
 
 }
@@ -0,0 +1,180 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2020 me.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.ahn.rhapsody.ci;
+
+import java.io.IOException;
+import java.net.UnknownHostException;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Locale;
+import javax.net.ssl.SSLException;
+import org.apache.http.HttpRequest;
+import org.apache.http.HttpRequestInterceptor;
+import org.apache.http.HttpResponse;
+import org.apache.http.HttpResponseInterceptor;
+import org.apache.http.HttpStatus;
+import org.apache.http.client.HttpRequestRetryHandler;
+import org.apache.http.client.ServiceUnavailableRetryStrategy;
+import org.apache.http.client.protocol.HttpClientContext;
+import org.apache.http.protocol.HttpContext;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Retries requests as allowed by the connection policy.
+ * <p>
+ * Idempotent requests are retried with a jittered exponential backoff on I/O
+ * errors and on the transient 429, 502, 503 and 504 statuses. Any request
+ * rejected for its CSRF token is retried once, right away, with the new token.
+ * Failures are reported to the circuit breaker of the server, which refuses
+ * the requests while open. A request counts as a single failure however many
+ * times it was tried.
+ *
+ * @author me
+ */
+public class RhapsodyRetryHandler implements HttpRequestRetryHandler, ServiceUnavailableRetryStrategy {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(RhapsodyRetryHandler.class);
+
+    // Set on the context once the request was reported as failed
+    static final String FAILURE_REPORTED = "rhapsody.breaker.failed";
+    // Statuses of the request not reported to the circuit breaker, set on the context
+    static final String EXPECTED_STATUSES = "rhapsody.breaker.expected";
+
+    private static final Collection<String> IDEMPOTENT_METHODS = Arrays.asList("GET", "HEAD", "OPTIONS");
+    static final Collection<Integer> TRANSIENT_STATUSES = Arrays.asList(429,
+            HttpStatus.SC_BAD_GATEWAY, HttpStatus.SC_SERVICE_UNAVAILABLE, HttpStatus.SC_GATEWAY_TIMEOUT);
+
+    private final RhapsodyConnectionPolicy policy;
+    private final RhapsodyCircuitBreaker breaker;
+
+    /**
+     * @param policy
+     * @param breaker circuit breaker of the server, or null
+     */
+    public RhapsodyRetryHandler(RhapsodyConnectionPolicy policy, RhapsodyCircuitBreaker breaker) {
+        this.policy = policy;
+        this.breaker = breaker;
+    }
+
+    /**
+     * @return interceptor refusing requests while the circuit is open
+     */
+    public HttpRequestInterceptor getRequestInterceptor() {
+        return (request, context) -> {
+            if (breaker != null && !breaker.allowRequest()) {
+                throw new RhapsodyCircuitBreaker.CircuitOpenException(breaker.describe());
+            }
+        };
+    }
+
+    /**
+     * @return interceptor reporting server errors to the circuit breaker,
+     * except the statuses the caller expects
+     */
+    public HttpResponseInterceptor getResponseInterceptor() {
+        return (response, context) -> {
+            if (breaker == null) {
+                return;
+            }
+            Object expected = context.getAttribute(EXPECTED_STATUSES);
+            if (expected instanceof Collection && ((Collection<?>) expected).contains(response.getStatusLine().getStatusCode())) {
+                return;
+            }
+            if (response.getStatusLine().getStatusCode() >= HttpStatus.SC_INTERNAL_SERVER_ERROR) {
+                reportFailure(context);
+            } else {
+                breaker.onSuccess();
+            }
+        };
+    }
+
+    /**
+     * Report the failure of the request to the circuit breaker, once for all
+     * its attempts
+     *
+     * @param context context of the request
+     */
+    void reportFailure(HttpContext context) {
+        if (breaker == null || Boolean.TRUE.equals(context.getAttribute(FAILURE_REPORTED))) {
+            return;
+        }
+
+        context.setAttribute(FAILURE_REPORTED, Boolean.TRUE);
+        breaker.onFailure();
+    }
+
+    @Override
+    public boolean retryRequest(IOException exception, int executionCount, HttpContext context) {
+        if (exception instanceof RhapsodyCircuitBreaker.CircuitOpenException) {
+            return false;
+        }
+        reportFailure(context);
+        if (exception instanceof UnknownHostException || exception instanceof SSLException) {
+            return false;
+        }
+
+        return shouldRetry(executionCount, context, exception.toString());
+    }
+
+    @Override
+    public boolean retryRequest(HttpResponse response, int executionCount, HttpContext context) {
+        if (executionCount == 1 && Boolean.TRUE.equals(context.getAttribute(CsrfHttpResponseInterceptor.CSRF_REJECTED))) {
+            return true;
+        }
+        if (!TRANSIENT_STATUSES.contains(response.getStatusLine().getStatusCode())) {
+            return false;
+        }
+
+        return shouldRetry(executionCount, context, response.getStatusLine().toString());
+    }
+
+    @Override
+    public long getRetryInterval() {
+        // The backoff is already waited in retryRequest
+        return 0;
+    }
+
+    private boolean shouldRetry(int executionCount, HttpContext context, String reason) {
+        HttpRequest request = HttpClientContext.adapt(context).getRequest();
+        if (executionCount > policy.getMaxRetries() || request == null
+                || !IDEMPOTENT_METHODS.contains(request.getRequestLine().getMethod().toUpperCase(Locale.ROOT))) {
+            return false;
+        }
+        if (breaker != null && breaker.getState() == RhapsodyCircuitBreaker.State.OPEN) {
+            return false;
+        }
+
+        long delay = policy.backoff(executionCount);
+        LOGGER.info("Retrying {} in {} ms after {} ({}/{})", request.getRequestLine().getUri(), delay, reason,
+                executionCount, policy.getMaxRetries());
+        try {
+            Thread.sleep(delay);
+            return true;
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+}
@@ -0,0 +1,340 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2020 me.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.ahn.rhapsody.ci;
+
+import java.io.IOException;
+import java.io.PrintStream;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+import org.ahn.rhapsody.ci.model.Component;
+import org.ahn.rhapsody.ci.model.TestStatus;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Runs component tests a few at a time through one or more test engines.
+ * <p>
+ * Every engine, one per Rhapsody instance, has its own queue of components,
+ * dealt in turn. An engine done with its queue steals from the end of the
+ * longest other queue, so faster instances take on more of the tests.
+ * <p>
+ * When pipelined, the next test is submitted as soon as the server reports
+ * the previous one as running, instead of once its result is known. Up to
+ * twice the concurrency of tests can then be outstanding on an instance.
+ * <p>
+ * When an instance pushes back on a test, its engine falls back to one test
+ * at a time, not pipelined, and submits the refused test again after a delay
+ * growing with every attempt. Nothing else is submitted to the instance, or
+ * stolen from its queue, in the meantime.
+ *
+ * @author me
+ */
+public class RhapsodyTestRunner {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(RhapsodyTestRunner.class);
+
+    // Times a test is submitted again after a push back
+    public static final int MAX_PUSH_BACKS = 3;
+    public static final long PUSH_BACK_DELAY = 1000;
+    // Outstanding tests of a pipelined instance, as a multiple of its concurrency
+    public static final int PIPELINE_DEPTH = 2;
+
+    private final List<Lane> lanes = new ArrayList<>();
+    private final PrintStream log;
+    private long pushBackDelay = PUSH_BACK_DELAY;
+    // Default schedule of the engines when not set
+    private Function<Component, RhapsodyPollSchedule> schedules;
+
+    /**
+     * @param engine
+     * @param concurrency maximum number of tests running at the same time
+     * @param log build log
+     */
+    public RhapsodyTestRunner(RhapsodyAsyncTestEngine engine, int concurrency, PrintStream log) {
+        this(Collections.singletonList(engine), concurrency, log);
+    }
+
+    /**
+     * @param engines engines of identical Rhapsody instances
+     * @param concurrency maximum number of tests running at the same time on
+     * each instance
+     * @param log build log
+     */
+    public RhapsodyTestRunner(List<RhapsodyAsyncTestEngine> engines, int concurrency, PrintStream log) {
+        if (engines.isEmpty()) {
+            throw new IllegalArgumentException("At least one test engine is required");
+        }
+
+        for (RhapsodyAsyncTestEngine engine : engines) {
+            lanes.add(new Lane(engine, Math.max(1, concurrency)));
+        }
+        this.log = log;
+    }
+
+    /**
+     * @param pushBackDelay milliseconds to wait before submitting a refused
+     * test again, multiplied by the number of attempts
+     */
+    public void setPushBackDelay(long pushBackDelay) {
+        this.pushBackDelay = pushBackDelay;
+    }
+
+    /**
+     * @param pipelined submit the next test once the previous one is running
+     */
+    public synchronized void setPipelined(boolean pipelined) {
+        for (Lane lane : lanes) {
+            lane.pipelined = pipelined;
+        }
+    }
+
+    /**
+     * @param schedules polling of the test of each component
+     */
+    public void setSchedules(Function<Component, RhapsodyPollSchedule> schedules) {
+        this.schedules = schedules;
+    }
+
+    /**
+     * @return current concurrency of all the instances, reduced after falling
+     * back to serial execution
+     */
+    public synchronized int getConcurrency() {
+        int concurrency = 0;
+        for (Lane lane : lanes) {
+            concurrency += lane.concurrency;
+        }
+        return concurrency;
+    }
+
+    /**
+     * @return number of tests completed by every instance
+     */
+    public synchronized Map<String, Integer> getCompleted() {
+        Map<String, Integer> completed = new LinkedHashMap<>();
+        for (Lane lane : lanes) {
+            completed.put(lane.engine.getRestUrl(), lane.completed);
+        }
+        return completed;
+    }
+
+    /**
+     * Start testing the components
+     *
+     * @param components
+     * @return status of every component, in the same order
+     */
+    public List<CompletableFuture<TestStatus>> run(List<? extends Component> components) {
+        List<CompletableFuture<TestStatus>> results = new ArrayList<>(components.size());
+        synchronized (this) {
+            for (int i = 0; i < components.size(); i++) {
+                Pending pending = new Pending(components.get(i));
+                lanes.get(i % lanes.size()).queue.add(pending);
+                results.add(pending.result);
+            }
+        }
+
+        pump();
+        return results;
+    }
+
+    /**
+     * Fail the tests not submitted yet
+     */
+    public void cancel() {
+        List<Pending> cancelled = new ArrayList<>();
+        synchronized (this) {
+            for (Lane lane : lanes) {
+                cancelled.addAll(lane.queue);
+                lane.queue.clear();
+            }
+        }
+
+        for (Pending pending : cancelled) {
+            pending.result.completeExceptionally(new IOException("Test cancelled"));
+        }
+    }
+
+    private void pump() {
+        List<Pending> toSubmit = new ArrayList<>();
+        synchronized (this) {
+            long now = System.nanoTime();
+            for (Lane lane : lanes) {
+                while (lane.hasCapacity()) {
+                    Pending pending = lane.queue.peekFirst();
+                    if (pending != null && !pending.isReady(now)) {
+                        // Refused test waits for its delay, pumped again then
+                        break;
+                    }
+                    pending = pending != null ? lane.queue.pollFirst() : steal(lane, now);
+                    if (pending == null) {
+                        break;
+                    }
+
+                    pending.lane = lane;
+                    pending.started = false;
+                    lane.inFlight++;
+                    lane.starting++;
+                    toSubmit.add(pending);
+                }
+            }
+        }
+
+        for (Pending pending : toSubmit) {
+            pending.attempts++;
+            RhapsodyAsyncTestEngine engine = pending.lane.engine;
+            RhapsodyPollSchedule schedule = schedules != null ? schedules.apply(pending.component) : engine.getSchedule();
+            engine.submit(pending.component, schedule, () -> onStarted(pending))
+                    .whenComplete((status, ex) -> onComplete(pending, status, ex));
+        }
+    }
+
+    private void onStarted(Pending pending) {
+        synchronized (this) {
+            if (pending.started) {
+                return;
+            }
+            pending.started = true;
+            pending.lane.starting--;
+        }
+
+        // Next test while this one runs
+        pump();
+    }
+
+    /**
+     * Take the last component of the longest queue of the other instances,
+     * unless it waits after a push back
+     */
+    private Pending steal(Lane thief, long now) {
+        Lane victim = null;
+        for (Lane lane : lanes) {
+            Pending last = lane.queue.peekLast();
+            if (lane != thief && last != null && last.isReady(now)
+                    && (victim == null || lane.queue.size() > victim.queue.size())) {
+                victim = lane;
+            }
+        }
+
+        return victim != null ? victim.queue.pollLast() : null;
+    }
+
+    private void onComplete(Pending pending, TestStatus status, Throwable ex) {
+        Throwable cause = ex instanceof CompletionException && ex.getCause() != null ? ex.getCause() : ex;
+        Lane lane = pending.lane;
+        boolean resubmit = false;
+        synchronized (this) {
+            lane.inFlight--;
+            if (!pending.started) {
+                pending.started = true;
+                lane.starting--;
+            }
+            if (cause instanceof RhapsodyAsyncTestEngine.PushBackException && pending.attempts <= MAX_PUSH_BACKS) {
+                if (lane.concurrency > 1 || lane.pipelined) {
+                    lane.concurrency = 1;
+                    lane.pipelined = false;
+                    LOGGER.info("{} pushed back on {}, testing one component at a time", lane.engine.getRestUrl(), pending.component);
+                    log.println("Rhapsody server " + lane.engine.getRestUrl() + " pushed back (" + cause.getMessage()
+                            + "), testing one component at a time");
+                }
+                pending.notBefore = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(pushBackDelay * pending.attempts);
+                lane.queue.addFirst(pending);
+                resubmit = true;
+            } else {
+                lane.completed++;
+            }
+        }
+
+        if (resubmit) {
+            // Give the server some time before the next submission
+            try {
+                lane.engine.schedule(this::pump, pushBackDelay * pending.attempts);
+            } catch (RejectedExecutionException closed) {
+                cancel();
+            }
+            return;
+        }
+
+        if (cause != null) {
+            pending.result.completeExceptionally(cause);
+        } else {
+            pending.result.complete(status);
+        }
+        pump();
+    }
+
+    static class Lane {
+
+        final RhapsodyAsyncTestEngine engine;
+        final Deque<Pending> queue = new ArrayDeque<>();
+        int concurrency;
+        boolean pipelined;
+        // Submitted and not completed
+        int inFlight;
+        // Submitted and not reported running yet
+        int starting;
+        int completed;
+
+        Lane(RhapsodyAsyncTestEngine engine, int concurrency) {
+            this.engine = engine;
+            this.concurrency = concurrency;
+        }
+
+        boolean hasCapacity() {
+            if (pipelined) {
+                return starting < concurrency && inFlight < concurrency * PIPELINE_DEPTH;
+            }
+            return inFlight < concurrency;
+        }
+    }
+
+    static class Pending {
+
+        final Component component;
+        final CompletableFuture<TestStatus> result = new CompletableFuture<>();
+        Lane lane;
+        int attempts;
+        boolean started;
+        // Not submitted again before, after a push back
+        long notBefore;
+
+        Pending(Component component) {
+            this.component = component;
+        }
+
+        boolean isReady(long now) {
+            return attempts == 0 || now - notBefore >= 0;
+        }
+    }
+}
@@ -47,6 +47,8 @@ public class RhapsodyBuildAction implements RunAction2 {
     private int failCount;
     private int totalCount;
     private int skippedCount;
+    // Results of the previous builds, not tested again
+    private int carriedCount;
 
     public RhapsodyBuildAction(int successCount, int failCount, int skippedCount, int totalCount) {
         this.successCount = successCount;
@@ -70,6 +72,14 @@ public class RhapsodyBuildAction implements RunAction2 {
     public int getSkippedCount() {
         return skippedCount;
     }
+
+    public int getCarriedCount() {
+        return carriedCount;
+    }
+
+    public void setCarriedCount(int carriedCount) {
+        this.carriedCount = carriedCount;
+    }
     
     public Run getRun() {
         return run;
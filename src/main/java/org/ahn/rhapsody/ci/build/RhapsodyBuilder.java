@@ -40,32 +40,44 @@ import hudson.util.FormValidation;
 import java.io.File;
 import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
 import java.io.OutputStream;
 import java.io.PrintStream;
+import java.time.Duration;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.Optional;
-import java.util.concurrent.Executors;
-import java.util.concurrent.ScheduledExecutorService;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
-import org.ahn.rhapsody.ci.GlobUtils;
-import org.ahn.rhapsody.ci.RhapsodyComponentTestTask;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.function.Predicate;
+import java.util.stream.Collectors;
+import org.ahn.rhapsody.ci.GlobMatcher;
+import org.ahn.rhapsody.ci.GlobPattern;
+import org.ahn.rhapsody.ci.RhapsodyAsyncTestEngine;
+import org.ahn.rhapsody.ci.RhapsodyConnectionPolicy;
+import org.ahn.rhapsody.ci.RhapsodyInstance;
+import org.ahn.rhapsody.ci.RhapsodyPollSchedule;
 import org.ahn.rhapsody.ci.RhapsodyRestHelper;
+import org.ahn.rhapsody.ci.RhapsodyTestRunner;
 import org.ahn.rhapsody.ci.json.TestCase;
 import org.ahn.rhapsody.ci.json.TestComponent;
 import org.ahn.rhapsody.ci.json.TestSuite;
 import org.ahn.rhapsody.ci.model.Component;
+import org.ahn.rhapsody.ci.model.ComponentReader;
 import org.ahn.rhapsody.ci.model.Filter;
 import org.ahn.rhapsody.ci.model.Route;
+import org.ahn.rhapsody.ci.model.TestStatus;
 import org.ahn.rhapsody.ci.scm.RhapsodySCM;
 import org.ahn.rhapsody.ci.scm.RhapsodySCMAction;
 import org.apache.http.client.HttpClient;
 import org.kohsuke.stapler.DataBoundConstructor;
+import org.kohsuke.stapler.DataBoundSetter;
 import org.kohsuke.stapler.QueryParameter;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -82,6 +94,24 @@ public class RhapsodyBuilder extends Builder {
     private String routePatterns;
     private String filterPatterns;
     private boolean allowEmptyResults = false;
+    // Connection policy of the SCM when not configured
+    private RhapsodyConnectionPolicy connectionPolicy;
+    // Components tested at the same time, on each instance
+    private int concurrency = 1;
+    // Submit the next test once the previous one is running
+    private boolean pipelined = false;
+    // Test the components impacted by the changes only
+    private boolean impactedOnly = false;
+    // Identical instances running the tests instead of the SCM's
+    private List<RhapsodyInstance> instances;
+    // Compiled route and filter patterns, by pattern text
+    private transient Map<String, GlobMatcher> matchers;
+    private transient Map<String, GlobMatcher> pathMatchers;
+    // Seconds to wait for a test, longer for tests known to be slow
+    private int testTimeout = (int) RhapsodyPollSchedule.DEFAULT_TIMEOUT.getSeconds();
+    // Milliseconds between the first polls of a test, and at most
+    private int pollInterval = (int) RhapsodyPollSchedule.DEFAULT_INITIAL_DELAY.toMillis();
+    private int maxPollInterval = (int) RhapsodyPollSchedule.DEFAULT_MAX_DELAY.toMillis();
 
     private transient HttpClient httpClient;
     private transient ObjectMapper objectMapper;
@@ -105,6 +135,151 @@ public class RhapsodyBuilder extends Builder {
         return allowEmptyResults;
     }
 
+    public RhapsodyConnectionPolicy getConnectionPolicy() {
+        return connectionPolicy;
+    }
+
+    @DataBoundSetter
+    public void setConnectionPolicy(RhapsodyConnectionPolicy connectionPolicy) {
+        this.connectionPolicy = connectionPolicy;
+    }
+
+    public int getConcurrency() {
+        return Math.max(1, concurrency);
+    }
+
+    /**
+     * @param concurrency number of components tested at the same time, 1 to
+     * test them one at a time
+     */
+    @DataBoundSetter
+    public void setConcurrency(int concurrency) {
+        this.concurrency = Math.max(1, concurrency);
+    }
+
+    public boolean isPipelined() {
+        return pipelined;
+    }
+
+    /**
+     * @param pipelined submit the next test as soon as the previous one is
+     * running, hiding the round trips to the server
+     */
+    @DataBoundSetter
+    public void setPipelined(boolean pipelined) {
+        this.pipelined = pipelined;
+    }
+
+    public boolean isImpactedOnly() {
+        return impactedOnly;
+    }
+
+    /**
+     * @param impactedOnly test only the routes modified in the change log and
+     * the ones which failed, carry forward the previous results of the others
+     */
+    @DataBoundSetter
+    public void setImpactedOnly(boolean impactedOnly) {
+        this.impactedOnly = impactedOnly;
+    }
+
+    public List<RhapsodyInstance> getInstances() {
+        return instances;
+    }
+
+    /**
+     * @param instances identical Rhapsody instances sharing the tests, empty
+     * to run them on the instance of the SCM
+     */
+    @DataBoundSetter
+    public void setInstances(List<RhapsodyInstance> instances) {
+        this.instances = instances;
+    }
+
+    public int getTestTimeout() {
+        return testTimeout > 0 ? testTimeout : (int) RhapsodyPollSchedule.DEFAULT_TIMEOUT.getSeconds();
+    }
+
+    /**
+     * @param testTimeout seconds to wait for a test to complete, extended for
+     * tests which took longer in the previous builds
+     */
+    @DataBoundSetter
+    public void setTestTimeout(int testTimeout) {
+        this.testTimeout = testTimeout;
+    }
+
+    public int getPollInterval() {
+        return pollInterval > 0 ? pollInterval : (int) RhapsodyPollSchedule.DEFAULT_INITIAL_DELAY.toMillis();
+    }
+
+    @DataBoundSetter
+    public void setPollInterval(int pollInterval) {
+        this.pollInterval = pollInterval;
+    }
+
+    public int getMaxPollInterval() {
+        return Math.max(getPollInterval(), maxPollInterval);
+    }
+
+    @DataBoundSetter
+    public void setMaxPollInterval(int maxPollInterval) {
+        this.maxPollInterval = maxPollInterval;
+    }
+
+    /**
+     * Default the settings missing from the configurations saved by the
+     * previous versions, field initializers are not run when loading them
+     *
+     * @return this builder
+     */
+    protected Object readResolve() {
+        if (concurrency < 1) {
+            concurrency = 1;
+        }
+        if (testTimeout <= 0) {
+            testTimeout = (int) RhapsodyPollSchedule.DEFAULT_TIMEOUT.getSeconds();
+        }
+        if (pollInterval <= 0) {
+            pollInterval = (int) RhapsodyPollSchedule.DEFAULT_INITIAL_DELAY.toMillis();
+        }
+        if (maxPollInterval <= 0) {
+            maxPollInterval = (int) RhapsodyPollSchedule.DEFAULT_MAX_DELAY.toMillis();
+        }
+        return this;
+    }
+
+    RhapsodyPollSchedule getPollSchedule() {
+        return new RhapsodyPollSchedule(Duration.ofMillis(getPollInterval()), Duration.ofMillis(getMaxPollInterval()),
+                RhapsodyPollSchedule.DEFAULT_MULTIPLIER, Duration.ofSeconds(getTestTimeout()));
+    }
+
+    /**
+     * @param restUrl REST URL of the SCM
+     * @return REST URLs of the instances running the tests
+     */
+    List<String> getTestUrls(String restUrl) {
+        List<String> urls = new ArrayList<>();
+        if (instances != null) {
+            for (RhapsodyInstance instance : instances) {
+                urls.add(instance.getBaseUrl());
+            }
+        }
+
+        if (urls.isEmpty()) {
+            urls.add(restUrl);
+        }
+        return urls;
+    }
+
+    RhapsodyConnectionPolicy getEffectiveConnectionPolicy(RhapsodySCMAction scmAction) {
+        if (connectionPolicy != null) {
+            return connectionPolicy;
+        }
+
+        return scmAction.getConnectionPolicy() != null ? scmAction.getConnectionPolicy() : new RhapsodyConnectionPolicy();
+    }
+
     @Override
     public Collection<? extends Action> getProjectActions(AbstractProject<?, ?> project) {
         return Arrays.asList(new RhapsodyProjectAction(project), new RhapsodyGraphAction(project));
@@ -118,15 +293,63 @@ public class RhapsodyBuilder extends Builder {
      * @throws Exception
      */
     protected List<Route> getAllRoutes(AbstractBuild<?, ?> build) throws Exception {
-        ObjectMapper mapper = getObjectMapper();
-
-        // Read the saved file
+        // Stream the saved file
         FilePath componentsFile = new FilePath(build.getWorkspace(), RhapsodySCM.COMPONENTS_FILENAME);
-        Map json = mapper.readValue(componentsFile.read(), Map.class);
-        Map data = (Map) json.get("data");
+        try (InputStream is = componentsFile.read()) {
+            return new ComponentReader(getObjectMapper().getFactory()).read(is, getFolderFilter(routePatterns));
+        }
+    }
+
+    /**
+     * Index the definitions and communication points used by the routes
+     *
+     * @param build
+     * @param allRoutes
+     * @param stdout
+     * @return
+     */
+    protected RhapsodyDependencyIndex indexDependencies(AbstractBuild<?, ?> build, List<Route> allRoutes, PrintStream stdout) {
+        RhapsodyDependencyIndex index = RhapsodyDependencyIndex.of(allRoutes);
+        stdout.println("Indexed the dependencies of " + index.size() + " route(s)");
+
+        try {
+            index.save(new File(build.getRootDir(), RhapsodyDependencyIndex.FILENAME));
+        } catch (IOException ex) {
+            LOGGER.warn("Unable to save the dependency index", ex);
+        }
+
+        return index;
+    }
+
+    /**
+     * Folders which may contain routes matching the patterns, when all the
+     * patterns are on the route path
+     *
+     * @param routeFilterPatterns
+     * @return null when any folder may contain matching routes
+     */
+    protected static Predicate<String> getFolderFilter(String routeFilterPatterns) {
+        if (routeFilterPatterns == null || routeFilterPatterns.trim().isEmpty()) {
+            return null;
+        }
+
+        List<GlobPattern> patterns = new ArrayList<>();
+        for (String pattern : routeFilterPatterns.split("\n")) {
+            if (pattern.isEmpty()) {
+                continue;
+            }
+            if (!pattern.contains("/")) {
+                // Route name, in any folder
+                return null;
+            }
+            patterns.add(GlobPattern.compilePath(pattern));
+        }
 
-        // Find all routes
-        return findAllRoutes(data, new ArrayList<>());
+        // Routes of the folder start with its path
+        return path -> {
+            String folderPrefix = path + "/";
+            return patterns.stream().anyMatch(pattern -> pattern.matchesPrefix(folderPrefix));
+        };
     }
 
     /**
@@ -138,67 +361,111 @@ public class RhapsodyBuilder extends Builder {
      * @return
      */
     protected List<Component> filterComponentsToTest(List<Route> allRoutes, String routeFilterPattens, String filterFilterPatterns) {
+        return filterComponentsToTest(allRoutes, routeFilterPattens, filterFilterPatterns, null);
+    }
+
+    /**
+     * Filter the components needed for testing, based on configured patterns
+     *
+     * @param allRoutes
+     * @param routeFilterPattens
+     * @param filterFilterPatterns
+     * @param matches number of components selected by each pattern, may be null
+     * @return
+     */
+    protected List<Component> filterComponentsToTest(List<Route> allRoutes, String routeFilterPattens, String filterFilterPatterns, Map<String, Integer> matches) {
         if (routeFilterPattens == null || routeFilterPattens.isEmpty()) {
             throw new IllegalArgumentException("Route filter patterns must not be blank");
         }
-        
-        List<Component> componentsToTest = new ArrayList<>();
-        String[] routeFilterPattern = routeFilterPattens.split("\n");
-        
-        List<Pattern> routeRegex = new ArrayList<>();
-        List<Pattern> filterRegex = new ArrayList<>();
-        for (String pattern : routeFilterPattern) {
-            routeRegex.add(Pattern.compile(GlobUtils.toRegex(pattern), Pattern.CASE_INSENSITIVE));
-        }
-        
-        if (filterFilterPatterns != null && !filterFilterPatterns.isEmpty()) {
-            String[] filterFilterPattern = filterFilterPatterns.split("\n");
-            for (String pattern : filterFilterPattern) {
-                filterRegex.add(Pattern.compile(GlobUtils.toRegex(pattern), Pattern.CASE_INSENSITIVE));
-            }
+
+        // Patterns with folders match on the route path
+        StringBuilder namePatterns = new StringBuilder();
+        StringBuilder pathPatterns = new StringBuilder();
+        for (String pattern : routeFilterPattens.split("\n")) {
+            (pattern.contains("/") ? pathPatterns : namePatterns).append(pattern).append('\n');
+        }
+
+        GlobMatcher routeNames = getMatcher(namePatterns.toString());
+        GlobMatcher routePaths = getPathMatcher(pathPatterns.toString());
+        GlobMatcher filterNames = getMatcher(filterFilterPatterns);
+        if (matches != null) {
+            routeNames.getPatterns().forEach(p -> matches.putIfAbsent(p, 0));
+            routePaths.getPatterns().forEach(p -> matches.putIfAbsent(p, 0));
+            filterNames.getPatterns().forEach(p -> matches.putIfAbsent(p, 0));
         }
 
         // Filter on the name of either route & filter or just route
         // Just route testing allows for connector testing
-        allRoutes.forEach(r -> {
-            // Match on the route name
-            Optional<Matcher> routeMatcher = routeRegex.stream()
-                    .map(regex -> regex.matcher(r.getName()))
-                    .filter(m -> m.matches())
-                    .findAny();
-            if (routeMatcher.isPresent()) {
-                // Route name is matching, check if are only testing filters on the route
-                if (!filterRegex.isEmpty()) {
-                    // Check if route's filter name matches, will test
-                    for (Filter f : r.getFilters()) {
-                        Optional<Matcher> matcher = filterRegex.stream()
-                                .map(p -> p.matcher(f.getName()))
-                                .filter(m -> m.matches())
-                                .findAny();
-                        if (matcher.isPresent()) {
-                            componentsToTest.add(f);
-                        }
+        List<Component> componentsToTest = new ArrayList<>();
+        for (Route r : allRoutes) {
+            // Match on the route name, or on its path for the patterns with folders
+            String routePattern = routeNames.match(r.getName());
+            if (routePattern == null && !routePaths.isEmpty()) {
+                routePattern = routePaths.match(r.getPath());
+            }
+            if (routePattern == null) {
+                continue;
+            }
+
+            // Route name is matching, check if are only testing filters on the route
+            if (!filterNames.isEmpty()) {
+                // Check if route's filter name matches, will test
+                for (Filter f : r.getFilters()) {
+                    String filterPattern = filterNames.match(f.getName());
+                    if (filterPattern != null) {
+                        componentsToTest.add(f);
+                        count(matches, routePattern);
+                        count(matches, filterPattern);
                     }
-                } else {
-                    // Add the whole route to be tester
-                    componentsToTest.add(r);
                 }
+            } else {
+                // Add the whole route to be tester
+                componentsToTest.add(r);
+                count(matches, routePattern);
             }
-        });
+        }
 
         return componentsToTest;
     }
 
+    private static void count(Map<String, Integer> matches, String pattern) {
+        if (matches != null) {
+            matches.merge(pattern, 1, Integer::sum);
+        }
+    }
+
+    /**
+     * @param patterns glob patterns, one per line
+     * @return patterns compiled once for the builder
+     */
+    protected synchronized GlobMatcher getMatcher(String patterns) {
+        if (matchers == null) {
+            matchers = new HashMap<>();
+        }
+        return matchers.computeIfAbsent(patterns == null ? "" : patterns, GlobMatcher::compile);
+    }
+
+    /**
+     * @param patterns glob patterns on the route path, one per line
+     * @return patterns compiled once for the builder
+     */
+    protected synchronized GlobMatcher getPathMatcher(String patterns) {
+        if (pathMatchers == null) {
+            pathMatchers = new HashMap<>();
+        }
+        return pathMatchers.computeIfAbsent(patterns == null ? "" : patterns, GlobMatcher::compilePaths);
+    }
+
     /**
      * Execute the test on Rhapsody's component via REST API
      *
      * @param component
      * @param listener
-     * @param executorService
+     * @param test status of the test submitted to the engine
      * @return
      * @throws Exception
      */
-    protected TestComponent performComponentTest(Component component, BuildListener listener, HttpClient client, String restUrl, ScheduledExecutorService executorService) throws Exception {
+    protected TestComponent performComponentTest(Component component, BuildListener listener, CompletableFuture<TestStatus> test) throws Exception {
         ObjectMapper mapper = getObjectMapper();
         PrintStream stdout = listener.getLogger();
 
@@ -209,12 +476,20 @@ public class RhapsodyBuilder extends Builder {
             parentRoute = (Route) component;
         }
         TestComponent testComponent = new TestComponent(parentRoute.getId(), parentRoute.getName(), parentRoute.getFolder());
+        testComponent.setTestedComponentId(component.getId());
 
-        RhapsodyComponentTestTask task = new RhapsodyComponentTestTask(component, restUrl, client, mapper, executorService);
         stdout.println("Executing the test for '" + component.toString() + "'");
-        Map status = task.call();
+        TestStatus status;
+        try {
+            status = test.get();
+        } catch (ExecutionException ex) {
+            throw ex.getCause() instanceof Exception ? (Exception) ex.getCause() : ex;
+        }
+        testComponent.setPollCount(status.getPollCount());
+        testComponent.setDurationMillis(status.getDurationMillis());
+        stdout.println("Test completed in " + status.getDurationMillis() + " ms, " + status.getPollCount() + " status check(s)");
         // Check the filter tests
-        List results = (List) status.get("results");
+        List results = status.getResults();
         List<TestCase> cases = new ArrayList<>();
         // For each result, generate a JUnit test
         stdout.println(results.size() + " test results returned for " + component.toString());
@@ -326,7 +601,11 @@ public class RhapsodyBuilder extends Builder {
         // Track the access to credentials
         CredentialsProvider.track(build, credentials);
 
-        HttpClient client = RhapsodyRestHelper.getHttpClient(credentials.getUsername(), credentials.getPassword().getPlainText());
+        RhapsodyConnectionPolicy policy = getEffectiveConnectionPolicy(scmAction);
+        List<String> testUrls = getTestUrls(restUrl);
+        for (String testUrl : testUrls) {
+            stdout.println(RhapsodyRestHelper.getCircuitBreaker(testUrl, policy).describe());
+        }
         // Get services in-case the builder was de-serialized
         // See: https://javadoc.jenkins-ci.org/hudson/tasks/BuildStep.html
         ObjectMapper mapper = getObjectMapper();
@@ -334,9 +613,10 @@ public class RhapsodyBuilder extends Builder {
         // Find all components
         List<Route> allRoutes = null;
         List<Component> componentsToTest = new ArrayList<>();
+        Map<String, Integer> patternMatches = new LinkedHashMap<>();
         try {
             allRoutes = getAllRoutes(build);
-            componentsToTest = filterComponentsToTest(allRoutes, routePatterns, filterPatterns);
+            componentsToTest = filterComponentsToTest(allRoutes, routePatterns, filterPatterns, patternMatches);
         } catch (Exception ex) {
 
         }
@@ -347,68 +627,146 @@ public class RhapsodyBuilder extends Builder {
             return false;
         }
 
-        stdout.println("Will test " + componentsToTest.size() + " component(s) out of " + allRoutes.size() + " total routes");
+        for (Map.Entry<String, Integer> matched : patternMatches.entrySet()) {
+            stdout.println("Pattern '" + matched.getKey() + "' matched " + matched.getValue() + " component(s)");
+        }
+
+        // Only the impacted components, the others keep their previous results
+        List<Component> componentsToRun = componentsToTest;
+        RhapsodyImpactAnalysis impact = impactedOnly ? RhapsodyImpactAnalysis.load(build) : null;
+        if (impact != null) {
+            impact.setAllowEmptyResults(allowEmptyResults);
+            impact.setDependencyIndex(indexDependencies(build, allRoutes, stdout));
+        }
+        if (impact != null && impact.hasPreviousResults()) {
+            componentsToRun = componentsToTest.stream().filter(impact::isImpacted).collect(Collectors.toList());
+            stdout.println("Impacted only: " + impact.getChangedRoutes().size() + " modified route(s), "
+                    + impact.getDependentRoutes().size() + " route(s) using modified definitions or communication points, "
+                    + (componentsToTest.size() - componentsToRun.size()) + " result(s) carried forward");
+            if (!impact.getUnresolvedChanges().isEmpty()) {
+                stdout.println("Modified, not used by any route: " + String.join(", ", impact.getUnresolvedChanges()));
+            }
+        } else if (impact != null) {
+            stdout.println("Impacted only: no previous results, testing all the components");
+        }
+
+        // Routes of the folders the patterns can match only
+        stdout.println("Will test " + componentsToRun.size() + " component(s) out of " + allRoutes.size() + " route(s) read"
+                + (getFolderFilter(routePatterns) != null ? " from the folders matching the patterns" : ""));
         stdout.println("");
 
-        // Run through the testing, one test at a time
-        // Rhapsody does not support running multiple tests via REST API
-        ScheduledExecutorService executorService = Executors.newScheduledThreadPool(1);
+        // Run through the testing, one test at a time unless configured otherwise
+        // Falls back to one at a time when the server does not support more
+        // Instances share the credentials of the SCM
+        List<RhapsodyAsyncTestEngine> engines = new ArrayList<>();
+        RhapsodyTestRunner runner = null;
         TestSuite suite = new TestSuite();
         boolean answer = true;
         int testsExecuted = 0;
         int testsFailed = 0;
         int testsSucceeded = 0;
         int testsSkipped = 0;
+        int testsCarried = 0;
+        try {
+            for (String testUrl : testUrls) {
+                engines.add(new RhapsodyAsyncTestEngine(testUrl, credentials.getUsername(),
+                        credentials.getPassword().getPlainText(), policy, mapper));
+            }
+            runner = new RhapsodyTestRunner(engines, getConcurrency(), stdout);
+            runner.setPipelined(pipelined);
+            // Poll each test on a schedule learned from the previous builds
+            RhapsodyPollSchedule schedule = getPollSchedule();
+            RhapsodyTestHistory history = RhapsodyTestHistory.load(build);
+            runner.setSchedules(component -> history.getSchedule(component, schedule));
+            if (history.size() > 0) {
+                stdout.println("Test durations of " + history.size() + " component(s) known from the previous builds");
+            }
+            if (testUrls.size() > 1) {
+                stdout.println("Testing on " + testUrls.size() + " instances: " + String.join(", ", testUrls));
+            }
+            if (getConcurrency() > 1) {
+                stdout.println("Testing up to " + getConcurrency() + " components at a time on each instance");
+            }
+            if (pipelined) {
+                stdout.println("Submitting the next test as soon as the previous one is running");
+            }
+            // Results are read in the order of the components
+            List<CompletableFuture<TestStatus>> runs = runner.run(componentsToRun);
+            Map<Component, CompletableFuture<TestStatus>> tests = new IdentityHashMap<>();
+            for (int i = 0; i < componentsToRun.size(); i++) {
+                tests.put(componentsToRun.get(i), runs.get(i));
+            }
 
-        for (Component component : componentsToTest) {
-            try {
-                testsExecuted++;
-                TestComponent testComponent = performComponentTest(component, listener, client, scmAction.getRestUrl(), executorService);
+            for (Component component : componentsToTest) {
+                try {
+                    if (!tests.containsKey(component)) {
+                        // Passed in a previous build, not executed in this one
+                        TestComponent carried = impact.carryForward(component);
+                        stdout.println("Result of '" + component.toString() + "' carried forward from build #" + carried.getCarriedFrom());
+                        suite.addComponent(carried);
+                        testsCarried++;
+                        continue;
+                    }
 
-                // Add to the suite
-                suite.addComponent(testComponent);
+                    testsExecuted++;
+                    TestComponent testComponent = performComponentTest(component, listener, tests.get(component));
+                    if (testComponent.getTests().isEmpty() && !allowEmptyResults && testComponent.getError() == null) {
+                        // Failed in the report too, tested again by the next build
+                        testComponent.setError("Empty results are not allowed");
+                    }
 
-                // Check if any tests actually executed
-                if (testComponent.getTests().isEmpty() && !allowEmptyResults) {
-                    // Return failed on no tests
-                    listener.error("Empty results are not allowed. Fail.");
-                    testsFailed++;
-                    answer = false;
-                    continue;
-                } else if (testComponent.getTests().isEmpty()) {
-                    stdout.println("Empty results are allowed. Pass.");
-                    testsSkipped++;
-                    continue;
-                }
+                    // Add to the suite
+                    suite.addComponent(testComponent);
+
+                    // Check if any tests actually executed
+                    if (testComponent.getTests().isEmpty() && !allowEmptyResults) {
+                        // Return failed on no tests
+                        listener.error("Empty results are not allowed. Fail.");
+                        testsFailed++;
+                        answer = false;
+                        continue;
+                    } else if (testComponent.getTests().isEmpty()) {
+                        stdout.println("Empty results are allowed. Pass.");
+                        testsSkipped++;
+                        continue;
+                    }
 
-                // Evaluate individual test
-                if (testComponent.getErrorCount() > 0 || testComponent.getFailedCount() > 0) {
-                    // Failed tests
-                    listener.error("Failed test result for " + component.toString());
-                    testsFailed++;
-                    answer = false;
-                    continue;
-                }
+                    // Evaluate individual test
+                    if (testComponent.getErrorCount() > 0 || testComponent.getFailedCount() > 0) {
+                        // Failed tests
+                        listener.error("Failed test result for " + component.toString());
+                        testsFailed++;
+                        answer = false;
+                        continue;
+                    }
 
-                testsSucceeded++;
+                    testsSucceeded++;
 
-            } catch (Exception ex) {
-                listener.error("Exception executing tests on component: " + component);
-                ex.printStackTrace(stdout);
-                // Assume failure
-                testsFailed++;
+                } catch (Exception ex) {
+                    listener.error("Exception executing tests on component: " + component);
+                    ex.printStackTrace(stdout);
+                    // Assume failure
+                    testsFailed++;
                 
-                answer = false;
-            } finally {
-                stdout.println("");
+                    answer = false;
+                } finally {
+                    stdout.println("");
+                }
+            }
+        } finally {
+            // Shutdown the engines, whatever happened to the tests
+            if (runner != null) {
+                runner.cancel();
+            }
+            for (RhapsodyAsyncTestEngine engine : engines) {
+                engine.close();
             }
         }
 
-        // Shutdown the executor
-        executorService.shutdownNow();
-
         // Add the action
-        build.addAction(new RhapsodyBuildAction(testsSucceeded, testsFailed, testsSkipped, testsExecuted));
+        RhapsodyBuildAction action = new RhapsodyBuildAction(testsSucceeded, testsFailed, testsSkipped, testsExecuted);
+        action.setCarriedCount(testsCarried);
+        build.addAction(action);
 
         // Save the report
         File outputFile = new File(build.getRootDir(), "rh-test-suite.json");
@@ -419,6 +777,17 @@ public class RhapsodyBuilder extends Builder {
         // Output stats
         stdout.println("");
         stdout.println(testsExecuted + " executed / " + testsSucceeded + " succeeded / " + testsFailed + " failed / " + testsSkipped + " skipped.");
+        if (testsCarried > 0) {
+            stdout.println(testsCarried + " result(s) carried forward from the previous builds");
+        }
+        if (testUrls.size() > 1) {
+            for (Map.Entry<String, Integer> completed : runner.getCompleted().entrySet()) {
+                stdout.println(completed.getValue() + " tested on " + completed.getKey());
+            }
+        }
+        for (String testUrl : testUrls) {
+            stdout.println(RhapsodyRestHelper.getCircuitBreaker(testUrl, policy).describe());
+        }
 
         LOGGER.info("Build complete on Rhapsody instance at {}", restUrl);
         return answer;
@@ -432,48 +801,6 @@ public class RhapsodyBuilder extends Builder {
         return objectMapper;
     }
 
-    /**
-     * Get a list of routes from configuration hierarchy
-     *
-     * @param root
-     * @param folderPath
-     * @return
-     */
-    private static List<Route> findAllRoutes(Map root, List<String> folderPath) {
-        List<Route> routes = new ArrayList<>();
-
-        List children = (List) root.get("childComponents");
-        if (children != null) {
-            // Traverse through children
-            for (Object child : children) {
-                Object type = ((Map) child).get("type");
-                if (type != null && type.toString().equals("ROUTE")) {
-                    Route route = new Route((Map) child, String.join("/", folderPath));
-                    // Get all filters
-                    List filters = (List) ((Map) child).get("childComponents");
-                    for (Object filter : filters) {
-                        route.getFilters().add(new Filter(route, (Map) filter));
-                    }
-
-                    routes.add(route);
-                }
-            }
-        }
-
-        List folders = (List) root.get("childFolders");
-        if (folders != null) {
-            // Traverse through children
-            for (Object folder : folders) {
-                List<String> path = new ArrayList<>(folderPath);
-                path.add(((Map) folder).get("name").toString());
-
-                routes.addAll(findAllRoutes((Map) folder, path));
-            }
-        }
-
-        return routes;
-    }
-
     @Extension
     public static final class DescriptorImpl extends BuildStepDescriptor<Builder> {
 
@@ -0,0 +1,213 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2020 me.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.ahn.rhapsody.ci.build;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import org.ahn.rhapsody.ci.model.Route;
+
+/**
+ * Routes using each definition and communication point of the component tree.
+ * <p>
+ * The index is built from the references read with the component tree of
+ * each build, and saved with the build.
+ *
+ * @author me
+ */
+public class RhapsodyDependencyIndex {
+
+    public static final String FILENAME = "rh-dependencies.idx";
+    public static final String DEFINITION = Route.DEFINITION;
+    public static final String COMMUNICATION_POINT = Route.COMMUNICATION_POINT;
+
+    private static final int MAGIC = 0x52484449;
+    private static final int VERSION = 1;
+
+    // Reference names, as type:name, and their position
+    private final List<String> keys = new ArrayList<>();
+    private final Map<String, Integer> keyIds = new HashMap<>();
+    // Route id to the positions of its references
+    private final Map<String, int[]> routes = new LinkedHashMap<>();
+    // Reference position to the ids of the routes using it, built on first lookup
+    private List<Set<String>> dependents;
+
+    /**
+     * Index the references of the routes, as read from the component tree of
+     * this build
+     *
+     * @param routes all routes of the component tree
+     * @return
+     */
+    public static RhapsodyDependencyIndex of(List<Route> routes) {
+        RhapsodyDependencyIndex index = new RhapsodyDependencyIndex();
+        for (Route route : routes) {
+            if (route.getId() != null) {
+                index.add(route.getId(), new LinkedHashSet<>(route.getReferences()));
+            }
+        }
+        return index;
+    }
+
+    public static RhapsodyDependencyIndex load(File file) throws IOException {
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+            if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+                throw new IOException("Not a dependency index: " + file);
+            }
+
+            RhapsodyDependencyIndex index = new RhapsodyDependencyIndex();
+            int keyCount = in.readInt();
+            for (int i = 0; i < keyCount; i++) {
+                index.keyId(in.readUTF());
+            }
+
+            int routeCount = in.readInt();
+            for (int i = 0; i < routeCount; i++) {
+                String routeId = in.readUTF();
+                int[] refs = new int[in.readInt()];
+                for (int j = 0; j < refs.length; j++) {
+                    refs[j] = in.readInt();
+                    if (refs[j] < 0 || refs[j] >= keyCount) {
+                        throw new IOException("Corrupted dependency index: " + file);
+                    }
+                }
+                index.routes.put(routeId, refs);
+            }
+
+            return index;
+        }
+    }
+
+    public void save(File file) throws IOException {
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file)))) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+
+            out.writeInt(keys.size());
+            for (String key : keys) {
+                out.writeUTF(key);
+            }
+
+            out.writeInt(routes.size());
+            for (Map.Entry<String, int[]> route : routes.entrySet()) {
+                out.writeUTF(route.getKey());
+                out.writeInt(route.getValue().length);
+                for (int ref : route.getValue()) {
+                    out.writeInt(ref);
+                }
+            }
+        }
+    }
+
+    /**
+     * @param type {@link #DEFINITION} or {@link #COMMUNICATION_POINT}
+     * @param name
+     * @return ids of the routes using the definition or communication point
+     */
+    public Set<String> getRoutes(String type, String name) {
+        Integer keyId = keyIds.get(type + ":" + name);
+        if (keyId == null) {
+            return Collections.emptySet();
+        }
+
+        if (dependents == null) {
+            dependents = buildDependents();
+        }
+        return Collections.unmodifiableSet(dependents.get(keyId));
+    }
+
+    /**
+     * @param routeId
+     * @return definitions and communication points used by the route, as
+     * type:name
+     */
+    public Set<String> getReferences(String routeId) {
+        int[] refs = routes.get(routeId);
+        if (refs == null) {
+            return Collections.emptySet();
+        }
+
+        Set<String> references = new LinkedHashSet<>();
+        for (int ref : refs) {
+            references.add(keys.get(ref));
+        }
+        return references;
+    }
+
+    /**
+     * @return number of routes indexed
+     */
+    public int size() {
+        return routes.size();
+    }
+
+    void add(String routeId, Set<String> references) {
+        int[] refs = new int[references.size()];
+        int i = 0;
+        for (String reference : references) {
+            refs[i++] = keyId(reference);
+        }
+
+        routes.put(routeId, refs);
+        dependents = null;
+    }
+
+    private int keyId(String key) {
+        Integer id = keyIds.get(key);
+        if (id == null) {
+            id = keys.size();
+            keys.add(key);
+            keyIds.put(key, id);
+        }
+        return id;
+    }
+
+    private List<Set<String>> buildDependents() {
+        List<Set<String>> result = new ArrayList<>(keys.size());
+        for (int i = 0; i < keys.size(); i++) {
+            result.add(new HashSet<>());
+        }
+
+        for (Map.Entry<String, int[]> route : routes.entrySet()) {
+            for (int ref : route.getValue()) {
+                result.get(ref).add(route.getKey());
+            }
+        }
+        return result;
+    }
+}
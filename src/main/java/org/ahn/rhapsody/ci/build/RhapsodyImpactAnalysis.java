@@ -0,0 +1,277 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2020 me.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.ahn.rhapsody.ci.build;
+
+import hudson.model.AbstractBuild;
+import hudson.model.Run;
+import hudson.scm.ChangeLogSet;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import org.ahn.rhapsody.ci.json.TestComponent;
+import org.ahn.rhapsody.ci.json.TestSuite;
+import org.ahn.rhapsody.ci.model.Component;
+import org.ahn.rhapsody.ci.model.Filter;
+import org.ahn.rhapsody.ci.scm.RhapsodyChangeLogSet;
+
+/**
+ * Which components a build needs to test, from the changes in its change log.
+ * <p>
+ * A component is tested again when its route was modified, directly or
+ * through a definition or communication point it uses, when it failed in the
+ * previous build, when it had no results and empty results are not allowed
+ * or when it has no previous result. The previous results of the others are
+ * carried forward.
+ *
+ * @author me
+ */
+public class RhapsodyImpactAnalysis {
+
+    public static final String ROUTE = "route";
+
+    // Route names or paths
+    private final Set<String> changedRoutes = new HashSet<>();
+    // Communication points and definitions, as type and name
+    private final Set<String> otherChanges = new LinkedHashSet<>();
+    private final List<String[]> otherItems = new ArrayList<>();
+    // Routes using the modified communication points and definitions
+    private final Set<String> dependentRoutes = new HashSet<>();
+    private final Set<String> unresolvedChanges = new LinkedHashSet<>();
+    private RhapsodyDependencyIndex dependencyIndex;
+    // Tested component id to its previous result
+    private final Map<String, TestComponent> previousResults = new HashMap<>();
+    private int previousBuild;
+    private boolean allowEmptyResults = true;
+
+    /**
+     * Analyse the changes since the last build with test results against its
+     * results: the change log of the build and of the builds in between,
+     * which did not test anything
+     *
+     * @param build
+     * @return
+     */
+    public static RhapsodyImpactAnalysis load(AbstractBuild<?, ?> build) {
+        RhapsodyImpactAnalysis analysis = new RhapsodyImpactAnalysis();
+        analysis.addChanges(build.getChangeSet());
+
+        for (Run<?, ?> previous = build.getPreviousBuild(); previous != null; previous = previous.getPreviousBuild()) {
+            RhapsodyBuildAction action = previous.getAction(RhapsodyBuildAction.class);
+            if (action != null && action.getTestSuite() != null) {
+                analysis.setPreviousSuite(action.getTestSuite(), previous.getNumber());
+                break;
+            }
+
+            // Failed before testing, its changes are not tested yet
+            if (previous instanceof AbstractBuild) {
+                analysis.addChanges(((AbstractBuild<?, ?>) previous).getChangeSet());
+            }
+        }
+
+        return analysis;
+    }
+
+    public void addChanges(ChangeLogSet<? extends ChangeLogSet.Entry> changes) {
+        if (changes == null) {
+            return;
+        }
+
+        for (ChangeLogSet.Entry entry : changes) {
+            if (!(entry instanceof RhapsodyChangeLogSet.Entry)) {
+                continue;
+            }
+
+            for (RhapsodyChangeLogSet.Item item : ((RhapsodyChangeLogSet.Entry) entry).getItems()) {
+                if (ROUTE.equals(item.getType())) {
+                    addChangedRoute(item.getComponent());
+                } else {
+                    addOtherChange(item.getType(), item.getComponent());
+                }
+            }
+        }
+    }
+
+    public void addChangedRoute(String route) {
+        if (route != null && !route.trim().isEmpty()) {
+            changedRoutes.add(route.trim());
+        }
+    }
+
+    /**
+     * @param type type of the change log item
+     * @param name modified communication point or definition
+     */
+    public void addOtherChange(String type, String name) {
+        if (name == null || name.trim().isEmpty() || !otherChanges.add(type + " " + name.trim())) {
+            return;
+        }
+
+        String[] item = {type, name.trim()};
+        otherItems.add(item);
+        resolve(item);
+    }
+
+    /**
+     * Map the modified communication points and definitions to the routes
+     * using them
+     *
+     * @param dependencyIndex
+     */
+    public void setDependencyIndex(RhapsodyDependencyIndex dependencyIndex) {
+        this.dependencyIndex = dependencyIndex;
+        dependentRoutes.clear();
+        unresolvedChanges.clear();
+        otherItems.forEach(this::resolve);
+    }
+
+    private void resolve(String[] item) {
+        if (dependencyIndex == null) {
+            unresolvedChanges.add(item[0] + " " + item[1]);
+            return;
+        }
+
+        Set<String> routes = dependencyIndex.getRoutes(item[0], item[1]);
+        if (routes.isEmpty()) {
+            unresolvedChanges.add(item[0] + " " + item[1]);
+        }
+        dependentRoutes.addAll(routes);
+    }
+
+    public Set<String> getChangedRoutes() {
+        return Collections.unmodifiableSet(changedRoutes);
+    }
+
+    /**
+     * @return modified communication points and definitions
+     */
+    public Set<String> getOtherChanges() {
+        return Collections.unmodifiableSet(otherChanges);
+    }
+
+    /**
+     * @return modified communication points and definitions not used by any
+     * indexed route
+     */
+    public Set<String> getUnresolvedChanges() {
+        return Collections.unmodifiableSet(unresolvedChanges);
+    }
+
+    /**
+     * @return ids of the routes using a modified communication point or
+     * definition
+     */
+    public Set<String> getDependentRoutes() {
+        return Collections.unmodifiableSet(dependentRoutes);
+    }
+
+    /**
+     * @param suite test results of the previous build
+     * @param buildNumber number of the previous build
+     */
+    public void setPreviousSuite(TestSuite suite, int buildNumber) {
+        previousResults.clear();
+        previousBuild = buildNumber;
+        for (TestComponent result : suite.getComponents()) {
+            // Older builds did not record the tested component
+            if (result.getTestedComponentId() != null) {
+                previousResults.put(result.getTestedComponentId(), result);
+            }
+        }
+    }
+
+    /**
+     * @param allowEmptyResults false to test again the components which had
+     * no results, they failed the previous build
+     */
+    public void setAllowEmptyResults(boolean allowEmptyResults) {
+        this.allowEmptyResults = allowEmptyResults;
+    }
+
+    public boolean hasPreviousResults() {
+        return !previousResults.isEmpty();
+    }
+
+    /**
+     * @param component
+     * @return true if the component must be tested in this build
+     */
+    public boolean isImpacted(Component component) {
+        TestComponent previous = previousResults.get(component.getId());
+        if (previous == null || previous.isFailed()) {
+            return true;
+        }
+        // Recorded without an error by the builds before they were failed
+        if (!allowEmptyResults && (previous.getTests() == null || previous.getTests().isEmpty())) {
+            return true;
+        }
+
+        Component route = component instanceof Filter ? ((Filter) component).getRoute() : component;
+        // Filters without their route are always tested
+        return route == null || isChanged(route);
+    }
+
+    /**
+     * @param route
+     * @return true if the route or what it uses was modified
+     */
+    public boolean isChanged(Component route) {
+        return isModified(route) || dependentRoutes.contains(route.getId());
+    }
+
+    /**
+     * @param route
+     * @return true if the route itself was modified, by name or folder path
+     */
+    public boolean isModified(Component route) {
+        if (changedRoutes.contains(route.getName())) {
+            return true;
+        }
+
+        return changedRoutes.contains(route.getPath());
+    }
+
+    /**
+     * @param component
+     * @return copy of the previous result of the component, marked as carried
+     * forward
+     */
+    public TestComponent carryForward(Component component) {
+        TestComponent previous = previousResults.get(component.getId());
+        if (previous == null) {
+            return null;
+        }
+
+        // The previous build keeps its own result untouched
+        TestComponent carried = new TestComponent(previous);
+        if (carried.getCarriedFrom() == 0) {
+            carried.setCarriedFrom(previousBuild);
+        }
+        return carried;
+    }
+}
@@ -0,0 +1,108 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2020 me.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.ahn.rhapsody.ci.build;
+
+import hudson.model.Run;
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.Map;
+import org.ahn.rhapsody.ci.RhapsodyPollSchedule;
+import org.ahn.rhapsody.ci.json.TestComponent;
+import org.ahn.rhapsody.ci.json.TestSuite;
+import org.ahn.rhapsody.ci.model.Component;
+
+/**
+ * Durations of the component tests in the previous builds, used to poll each
+ * test on a schedule fitting how long it usually takes
+ *
+ * @author me
+ */
+public class RhapsodyTestHistory {
+
+    // Previous builds looked at
+    public static final int MAX_BUILDS = 5;
+
+    // Component id to total duration and number of runs
+    private final Map<String, long[]> durations = new HashMap<>();
+
+    /**
+     * Learn from the test suites of the builds before this one
+     *
+     * @param build
+     * @return
+     */
+    public static RhapsodyTestHistory load(Run<?, ?> build) {
+        RhapsodyTestHistory history = new RhapsodyTestHistory();
+
+        Run<?, ?> previous = build.getPreviousBuild();
+        for (int i = 0; i < MAX_BUILDS && previous != null; i++) {
+            RhapsodyBuildAction action = previous.getAction(RhapsodyBuildAction.class);
+            if (action != null && action.getTestSuite() != null) {
+                history.add(action.getTestSuite());
+            }
+            previous = previous.getPreviousBuild();
+        }
+
+        return history;
+    }
+
+    public void add(TestSuite suite) {
+        for (TestComponent component : suite.getComponents()) {
+            // Older builds did not record the durations
+            if (component.getTestedComponentId() == null || component.getDurationMillis() <= 0) {
+                continue;
+            }
+
+            long[] total = durations.computeIfAbsent(component.getTestedComponentId(), k -> new long[2]);
+            total[0] += component.getDurationMillis();
+            total[1]++;
+        }
+    }
+
+    /**
+     * @param component
+     * @return average duration of the test, null if never recorded
+     */
+    public Duration getExpectedDuration(Component component) {
+        long[] total = durations.get(component.getId());
+        return total != null ? Duration.ofMillis(total[0] / total[1]) : null;
+    }
+
+    /**
+     * @param component
+     * @param schedule configured schedule
+     * @return schedule adapted to the previous runs of the test
+     */
+    public RhapsodyPollSchedule getSchedule(Component component, RhapsodyPollSchedule schedule) {
+        Duration expected = getExpectedDuration(component);
+        return expected != null ? schedule.expect(expected) : schedule;
+    }
+
+    /**
+     * @return number of components with a recorded duration
+     */
+    public int size() {
+        return durations.size();
+    }
+}
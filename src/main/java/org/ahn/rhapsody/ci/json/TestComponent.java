@@ -23,6 +23,7 @@
  */
 package org.ahn.rhapsody.ci.json;
 
+import com.fasterxml.jackson.annotation.JsonIgnore;
 import java.util.ArrayList;
 import java.util.List;
 
@@ -36,6 +37,12 @@ public class TestComponent {
     String componentId;
     String folderPath;
     String error;
+    // Route or filter actually tested
+    String testedComponentId;
+    int pollCount = 0;
+    long durationMillis = 0;
+    // Build the result was carried forward from, 0 when tested in this build
+    int carriedFrom = 0;
     
     int totalCount = 0;
     int passedCount = 0;
@@ -55,6 +62,27 @@ public class TestComponent {
         this.folderPath = folderPath;
         this.tests = new ArrayList<>();
     }
+
+    /**
+     * @param other result to copy, sharing its test cases
+     */
+    public TestComponent(TestComponent other) {
+        this.componentName = other.componentName;
+        this.componentId = other.componentId;
+        this.folderPath = other.folderPath;
+        this.error = other.error;
+        this.testedComponentId = other.testedComponentId;
+        this.pollCount = other.pollCount;
+        this.durationMillis = other.durationMillis;
+        this.carriedFrom = other.carriedFrom;
+        this.totalCount = other.totalCount;
+        this.passedCount = other.passedCount;
+        this.executedCount = other.executedCount;
+        this.failedCount = other.failedCount;
+        this.errorCount = other.errorCount;
+        this.skippedCount = other.skippedCount;
+        this.tests = other.tests != null ? new ArrayList<>(other.tests) : null;
+    }
     
     public String getComponentName() {
         return componentName;
@@ -85,6 +113,52 @@ public class TestComponent {
         return tests;
     }
 
+    public String getTestedComponentId() {
+        return testedComponentId;
+    }
+
+    public void setTestedComponentId(String testedComponentId) {
+        this.testedComponentId = testedComponentId;
+    }
+
+    /**
+     * @return status requests sent until the test completed
+     */
+    public int getPollCount() {
+        return pollCount;
+    }
+
+    public void setPollCount(int pollCount) {
+        this.pollCount = pollCount;
+    }
+
+    /**
+     * @return milliseconds from the submission to the completion of the test
+     */
+    public long getDurationMillis() {
+        return durationMillis;
+    }
+
+    public void setDurationMillis(long durationMillis) {
+        this.durationMillis = durationMillis;
+    }
+
+    public int getCarriedFrom() {
+        return carriedFrom;
+    }
+
+    public void setCarriedFrom(int carriedFrom) {
+        this.carriedFrom = carriedFrom;
+    }
+
+    /**
+     * @return true if any test failed or the test could not run
+     */
+    @JsonIgnore
+    public boolean isFailed() {
+        return failedCount > 0 || errorCount > 0 || error != null;
+    }
+
     public int getTotalCount() {
         return totalCount;
     }
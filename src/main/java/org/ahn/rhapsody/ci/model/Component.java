@@ -81,4 +81,11 @@ public class Component {
     public String getFolder() {
         return folder;
     }
+
+    /**
+     * @return folder path and name, as Folder/Sub Folder/Name
+     */
+    public String getPath() {
+        return folder == null || folder.isEmpty() ? name : folder + "/" + name;
+    }
 }
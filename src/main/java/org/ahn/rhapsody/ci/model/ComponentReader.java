@@ -0,0 +1,262 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2020 me.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.ahn.rhapsody.ci.model;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Predicate;
+
+/**
+ * Streams the routes and their filters out of the components export, without
+ * reading the whole configuration tree in memory.
+ * <p>
+ * Only the fields of the components themselves are kept. The routes of a
+ * folder share the same folder path. Folders can be pruned by path, their
+ * content is then skipped without being read.
+ *
+ * @author me
+ */
+public class ComponentReader {
+
+    public static final String ROUTE = "ROUTE";
+    public static final String COMMUNICATION_POINT = "COMMUNICATION_POINT";
+
+    private final JsonFactory factory;
+
+    public ComponentReader() {
+        this(new JsonFactory());
+    }
+
+    public ComponentReader(JsonFactory factory) {
+        this.factory = factory;
+    }
+
+    /**
+     * @param is components export, with the configuration tree under "data"
+     * @return all routes, folder by folder
+     * @throws IOException
+     */
+    public List<Route> read(InputStream is) throws IOException {
+        return read(is, null);
+    }
+
+    /**
+     * @param is components export, with the configuration tree under "data"
+     * @param folders folder paths to read, all when null
+     * @return routes of the folders read, folder by folder
+     * @throws IOException
+     */
+    public List<Route> read(InputStream is, Predicate<String> folders) throws IOException {
+        Folder root = new Folder(null);
+        try (JsonParser parser = factory.createParser(is)) {
+            if (parser.nextToken() != JsonToken.START_OBJECT) {
+                throw new IOException("Components export must be a JSON object");
+            }
+
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                String field = parser.getCurrentName();
+                JsonToken token = parser.nextToken();
+                if (field.equals("data") && token == JsonToken.START_OBJECT) {
+                    readFolder(parser, root, folders);
+                } else {
+                    parser.skipChildren();
+                }
+            }
+        }
+
+        // Folder names may come after their content
+        List<Route> routes = new ArrayList<>();
+        root.collect(routes);
+        return routes;
+    }
+
+    private void readFolder(JsonParser parser, Folder folder, Predicate<String> folders) throws IOException {
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String field = parser.getCurrentName();
+            JsonToken token = parser.nextToken();
+
+            if (field.equals("name") && token.isScalarValue()) {
+                folder.name = parser.getValueAsString();
+                // Only known once the names of the parents are
+                String path = folder.getPath();
+                if (folders != null && folder.parent != null && path != null && !folders.test(path)) {
+                    skipFields(parser);
+                    folder.pruned = true;
+                    return;
+                }
+            } else if (field.equals("childComponents") && token == JsonToken.START_ARRAY) {
+                while (parser.nextToken() == JsonToken.START_OBJECT) {
+                    Set<String> references = new LinkedHashSet<>();
+                    Node node = readNode(parser, references);
+                    if (ROUTE.equals(node.data.get("type"))) {
+                        folder.routes.add(node.toRoute(references));
+                    }
+                }
+            } else if (field.equals("childFolders") && token == JsonToken.START_ARRAY) {
+                while (parser.nextToken() == JsonToken.START_OBJECT) {
+                    Folder child = new Folder(folder);
+                    readFolder(parser, child, folders);
+                    if (!child.pruned) {
+                        folder.folders.add(child);
+                    }
+                }
+            } else {
+                parser.skipChildren();
+            }
+        }
+    }
+
+    private void skipFields(JsonParser parser) throws IOException {
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            parser.nextToken();
+            parser.skipChildren();
+        }
+    }
+
+    private Node readNode(JsonParser parser, Set<String> references) throws IOException {
+        Node node = new Node();
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String field = parser.getCurrentName();
+            JsonToken token = parser.nextToken();
+
+            if (token.isScalarValue() && token != JsonToken.VALUE_NULL) {
+                node.data.put(field, parser.getValueAsString());
+            } else if (field.equals("childComponents") && token == JsonToken.START_ARRAY) {
+                while (parser.nextToken() == JsonToken.START_OBJECT) {
+                    node.children.add(readNode(parser, references));
+                }
+            } else if (field.equals("definitions") && token == JsonToken.START_ARRAY) {
+                readNames(parser, Route.DEFINITION, references);
+            } else if (field.equals("communicationPoints") && token == JsonToken.START_ARRAY) {
+                readNames(parser, Route.COMMUNICATION_POINT, references);
+            } else {
+                parser.skipChildren();
+            }
+        }
+
+        if (COMMUNICATION_POINT.equals(node.data.get("type")) && node.data.get("name") != null) {
+            references.add(Route.COMMUNICATION_POINT + ":" + node.data.get("name"));
+        }
+        return node;
+    }
+
+    /**
+     * Names listed as strings or as objects with a name
+     */
+    private void readNames(JsonParser parser, String type, Set<String> references) throws IOException {
+        JsonToken token;
+        while ((token = parser.nextToken()) != JsonToken.END_ARRAY) {
+            String name = null;
+            if (token == JsonToken.START_OBJECT) {
+                while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                    String field = parser.getCurrentName();
+                    if (parser.nextToken().isScalarValue() && field.equals("name")) {
+                        name = parser.getValueAsString();
+                    } else {
+                        parser.skipChildren();
+                    }
+                }
+            } else if (token.isScalarValue()) {
+                name = parser.getValueAsString();
+            } else {
+                parser.skipChildren();
+            }
+
+            if (name != null) {
+                references.add(type + ":" + name);
+            }
+        }
+    }
+
+    private static class Node {
+
+        final Map<String, String> data = new HashMap<>();
+        final List<Node> children = new ArrayList<>();
+
+        Route toRoute(Set<String> references) {
+            // Folder is set once the whole folder is read
+            Route route = new Route(data, null);
+            for (Node child : children) {
+                route.filters.add(new Filter(route, child.data));
+            }
+            route.references = new ArrayList<>(references);
+            return route;
+        }
+    }
+
+    private static class Folder {
+
+        final Folder parent;
+        final List<Route> routes = new ArrayList<>();
+        final List<Folder> folders = new ArrayList<>();
+        String name;
+        boolean pruned;
+
+        Folder(Folder parent) {
+            this.parent = parent;
+        }
+
+        /**
+         * @return path below the root folder, null when a name is not read yet
+         */
+        String getPath() {
+            if (parent == null || name == null) {
+                return parent == null ? "" : null;
+            }
+
+            String parentPath = parent.getPath();
+            if (parentPath == null) {
+                return null;
+            }
+            return parentPath.isEmpty() ? name : parentPath + "/" + name;
+        }
+
+        void collect(List<Route> result) {
+            collect(result, "");
+        }
+
+        private void collect(List<Route> result, String path) {
+            for (Route route : routes) {
+                route.folder = path;
+                for (Filter filter : route.filters) {
+                    filter.folder = path;
+                }
+                result.add(route);
+            }
+
+            for (Folder child : folders) {
+                child.collect(result, path.isEmpty() ? String.valueOf(child.name) : path + "/" + child.name);
+            }
+        }
+    }
+}
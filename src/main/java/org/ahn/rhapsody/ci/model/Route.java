@@ -32,13 +32,19 @@ import java.util.Map;
  * @author me
  */
 public class Route extends Component {
-    
+
+    public static final String DEFINITION = "definition";
+    public static final String COMMUNICATION_POINT = "communication-point";
+
     List<Filter> filters;
+    // Definitions and communication points used, as type:name
+    List<String> references;
 
     public Route(Map data, String folder) {
         super(data, folder);
         
         this.filters = new ArrayList<>();
+        this.references = new ArrayList<>();
     }
 
     public List<Filter> getFilters() {
@@ -48,6 +54,14 @@ public class Route extends Component {
     public void setFilters(List<Filter> filters) {
         this.filters = filters;
     }
+
+    public List<String> getReferences() {
+        return references;
+    }
+
+    public void setReferences(List<String> references) {
+        this.references = references;
+    }
     
     @Override
     public String toString() {
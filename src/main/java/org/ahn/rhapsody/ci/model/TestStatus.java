@@ -0,0 +1,108 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2020 me.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.ahn.rhapsody.ci.model;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Status of a component test returned by the Rhapsody REST API
+ *
+ * @author me
+ */
+public class TestStatus {
+
+    public static final String RUNNING = "RUNNING";
+    public static final String COMPLETED = "COMPLETED";
+
+    String state;
+    List<Map> results;
+    // Recorded by the poller
+    int pollCount;
+    long durationMillis;
+
+    public TestStatus(Map data) {
+        if (data.containsKey("state") && data.get("state") != null) {
+            state = data.get("state").toString();
+        }
+
+        results = new ArrayList<>();
+        if (data.get("results") instanceof List) {
+            for (Object result : (List) data.get("results")) {
+                results.add((Map) result);
+            }
+        }
+    }
+
+    public String getState() {
+        return state;
+    }
+
+    public boolean isCompleted() {
+        return COMPLETED.equals(state);
+    }
+
+    /**
+     * @return true once the server is running the test, or done with it
+     */
+    public boolean isStarted() {
+        return RUNNING.equals(state) || isCompleted();
+    }
+
+    /**
+     * @return test results of the component, one per filter or connector
+     */
+    public List<Map> getResults() {
+        return results;
+    }
+
+    /**
+     * @return status requests sent until the test completed
+     */
+    public int getPollCount() {
+        return pollCount;
+    }
+
+    public void setPollCount(int pollCount) {
+        this.pollCount = pollCount;
+    }
+
+    /**
+     * @return milliseconds from the submission to the completion of the test
+     */
+    public long getDurationMillis() {
+        return durationMillis;
+    }
+
+    public void setDurationMillis(long durationMillis) {
+        this.durationMillis = durationMillis;
+    }
+
+    @Override
+    public String toString() {
+        return "TestStatus{" + "state=" + state + ", results=" + results.size() + ", pollCount=" + pollCount
+                + ", durationMillis=" + durationMillis + '}';
+    }
+}
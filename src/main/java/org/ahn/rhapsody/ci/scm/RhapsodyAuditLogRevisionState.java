@@ -24,21 +24,137 @@
 package org.ahn.rhapsody.ci.scm;
 
 import hudson.scm.SCMRevisionState;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+import org.ahn.rhapsody.RhapsodyLogEntry;
 
 /**
+ * Audit log position reached by a build.
+ * <p>
+ * The cursor is the server side timestamp of the last ingested audit entry,
+ * along with the hashes of the entries logged at that exact time. The next
+ * checkout exports from the cursor and drops the entries already seen.
  *
  * @author me
  */
 public class RhapsodyAuditLogRevisionState extends SCMRevisionState {
     
     private long timestamp;
+    // Server time of the last ingested entry, 0 when not known
+    private long cursor;
+    private Set<String> boundary;
 
     public RhapsodyAuditLogRevisionState() {
-        timestamp = System.currentTimeMillis();
+        this(0, Collections.emptySet());
+    }
+
+    public RhapsodyAuditLogRevisionState(long cursor, Set<String> boundary) {
+        this.timestamp = System.currentTimeMillis();
+        this.cursor = cursor;
+        this.boundary = new HashSet<>(boundary);
     }
 
     public long getTimestamp() {
         return timestamp;
     }
+
+    public long getCursor() {
+        return cursor;
+    }
+
+    public Set<String> getBoundary() {
+        // State saved before the cursor was introduced
+        return boundary == null ? Collections.emptySet() : Collections.unmodifiableSet(boundary);
+    }
+
+    public boolean hasCursor() {
+        return cursor > 0;
+    }
+
+    /**
+     * @return time to export the audit logs from
+     */
+    public long getStartTime() {
+        return hasCursor() ? cursor : timestamp;
+    }
+
+    /**
+     * Check if the entry was ingested by the build with this state
+     *
+     * @param entry
+     * @return
+     */
+    public boolean isIngested(RhapsodyLogEntry entry) {
+        long time = entry.getDate().getTime();
+        return time < cursor || (time == cursor && getBoundary().contains(hash(entry)));
+    }
+
+    /**
+     * Short hash to tell apart entries logged at the same millisecond
+     *
+     * @param entry
+     * @return
+     */
+    static String hash(RhapsodyLogEntry entry) {
+        int hash = 17;
+        hash = 31 * hash + String.valueOf(entry.getUsername()).hashCode();
+        hash = 31 * hash + String.valueOf(entry.getType()).hashCode();
+        hash = 31 * hash + String.valueOf(entry.getMessage()).hashCode();
+        return Integer.toHexString(hash);
+    }
+
+    /**
+     * Moves the cursor over the exported entries
+     */
+    public static class Cursor {
+
+        private long cursor;
+        private final Set<String> boundary;
+        private final RhapsodyAuditLogRevisionState baseline;
+
+        public Cursor(RhapsodyAuditLogRevisionState baseline) {
+            this(baseline, 0);
+        }
+
+        /**
+         * @param baseline
+         * @param startTime time the export starts from, kept as the cursor
+         * when the baseline has none and no entry is accepted
+         */
+        public Cursor(RhapsodyAuditLogRevisionState baseline, long startTime) {
+            this.baseline = baseline;
+            this.cursor = baseline != null && baseline.hasCursor() ? baseline.getCursor() : startTime;
+            this.boundary = baseline == null ? new HashSet<>() : new HashSet<>(baseline.getBoundary());
+        }
+
+        /**
+         * Record the entry
+         *
+         * @param entry
+         * @return false if the entry was already ingested
+         */
+        public boolean accept(RhapsodyLogEntry entry) {
+            if (baseline != null && baseline.isIngested(entry)) {
+                return false;
+            }
+
+            long time = entry.getDate().getTime();
+            if (time > cursor) {
+                cursor = time;
+                boundary.clear();
+            }
+
+            if (time == cursor) {
+                boundary.add(hash(entry));
+            }
+
+            return true;
+        }
+
+        public RhapsodyAuditLogRevisionState toRevisionState() {
+            return new RhapsodyAuditLogRevisionState(cursor, boundary);
+        }
+    }
     
 }
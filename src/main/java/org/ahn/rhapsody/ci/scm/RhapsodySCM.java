@@ -52,15 +52,16 @@ import java.io.IOException;
 import java.io.OutputStream;
 import java.io.PrintWriter;
 import java.time.Duration;
-import java.util.ArrayList;
 import java.util.Collections;
 import java.util.Date;
-import java.util.List;
-import java.util.stream.Collectors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Stream;
 import jenkins.model.Jenkins;
 import org.ahn.rhapsody.RhapsodyChangeEntry;
 import org.ahn.rhapsody.RhapsodyLog;
+import org.ahn.rhapsody.RhapsodyLogCache;
 import org.ahn.rhapsody.RhapsodyLogEntry;
+import org.ahn.rhapsody.ci.RhapsodyConnectionPolicy;
 import org.ahn.rhapsody.ci.RhapsodyRestHelper;
 import org.apache.commons.io.IOUtils;
 import org.apache.http.HttpResponse;
@@ -69,6 +70,7 @@ import org.apache.http.client.methods.HttpGet;
 import org.apache.http.util.EntityUtils;
 import org.kohsuke.stapler.AncestorInPath;
 import org.kohsuke.stapler.DataBoundConstructor;
+import org.kohsuke.stapler.DataBoundSetter;
 import org.kohsuke.stapler.QueryParameter;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -82,9 +84,18 @@ public class RhapsodySCM extends SCM {
     private static final Logger LOGGER = LoggerFactory.getLogger(RhapsodySCM.class);
 
     public static final String COMPONENTS_FILENAME = "rhapsody-components.json";
+    public static final int DEFAULT_EXPORT_PARALLELISM = 2;
+    public static final String LOG_CACHE_DIRNAME = "rhapsody-log-cache";
 
     private final String restUrl;
     private final String credentialsId;
+    // Hours per audit export request, 0 exports the whole range at once
+    private int exportShardHours = 0;
+    private int exportParallelism = DEFAULT_EXPORT_PARALLELISM;
+    // Share the exported audit logs with the other jobs through the cache
+    private boolean cacheAuditLogs = false;
+    // Defaults when not configured
+    private RhapsodyConnectionPolicy connectionPolicy;
 
     private transient HttpClient httpClient;
 
@@ -102,31 +113,86 @@ public class RhapsodySCM extends SCM {
         return credentialsId;
     }
 
+    public int getExportShardHours() {
+        return exportShardHours;
+    }
+
+    @DataBoundSetter
+    public void setExportShardHours(int exportShardHours) {
+        this.exportShardHours = Math.max(0, exportShardHours);
+    }
+
+    public int getExportParallelism() {
+        // Not set on configurations saved before the setting existed
+        return exportParallelism > 0 ? exportParallelism : DEFAULT_EXPORT_PARALLELISM;
+    }
+
+    @DataBoundSetter
+    public void setExportParallelism(int exportParallelism) {
+        this.exportParallelism = exportParallelism > 0 ? exportParallelism : DEFAULT_EXPORT_PARALLELISM;
+    }
+
+    public boolean isCacheAuditLogs() {
+        return cacheAuditLogs;
+    }
+
+    @DataBoundSetter
+    public void setCacheAuditLogs(boolean cacheAuditLogs) {
+        this.cacheAuditLogs = cacheAuditLogs;
+    }
+
+    public RhapsodyConnectionPolicy getConnectionPolicy() {
+        return connectionPolicy;
+    }
+
+    @DataBoundSetter
+    public void setConnectionPolicy(RhapsodyConnectionPolicy connectionPolicy) {
+        this.connectionPolicy = connectionPolicy;
+    }
+
+    protected RhapsodyConnectionPolicy getEffectiveConnectionPolicy() {
+        return connectionPolicy != null ? connectionPolicy : new RhapsodyConnectionPolicy();
+    }
+
     protected HttpClient getHttpClient(Run<?, ?> build) throws IOException {
-        if (httpClient == null) {
-            StandardUsernamePasswordCredentials credentials = CredentialsProvider.findCredentialById(credentialsId, StandardUsernamePasswordCredentials.class, build, Collections.EMPTY_LIST);
-            if (credentials == null) {
-                throw new AbortException("Rhapsody service credentials are not available");
-            }
+        if (httpClient != null) {
+            return httpClient;
+        }
 
-            CredentialsProvider.track(build, credentials);
+        StandardUsernamePasswordCredentials credentials = CredentialsProvider.findCredentialById(credentialsId, StandardUsernamePasswordCredentials.class, build, Collections.EMPTY_LIST);
+        if (credentials == null) {
+            throw new AbortException("Rhapsody service credentials are not available");
+        }
 
-            String pwd = credentials.getPassword().getPlainText();
-            if (pwd == null) {
-                throw new AbortException("Password is required");
-            }
+        CredentialsProvider.track(build, credentials);
 
-            httpClient = RhapsodyRestHelper.getHttpClient(credentials.getUsername(), pwd);
+        String pwd = credentials.getPassword().getPlainText();
+        if (pwd == null) {
+            throw new AbortException("Password is required");
         }
 
-        return httpClient;
+        // Shared with the other builds on the same server
+        return RhapsodyRestHelper.getHttpClient(restUrl, credentials.getUsername(), pwd, getEffectiveConnectionPolicy());
     }
 
     protected void setHttpClient(HttpClient httpClient) {
         this.httpClient = httpClient;
     }
 
-    protected void exportAuditLogs(File changelogFile, HttpClient client, SCMRevisionState baseline) throws JsonProcessingException, IOException, InterruptedException {
+    /**
+     * Export the audit log changes since the baseline into the change log
+     *
+     * @param changelogFile
+     * @param client
+     * @param baseline
+     * @return revision state with the cursor moved past the exported entries
+     * @throws JsonProcessingException
+     * @throws IOException
+     * @throws AbortException when the export fails, the baseline is kept for
+     * the next build
+     * @throws InterruptedException
+     */
+    protected RhapsodyAuditLogRevisionState exportAuditLogs(File changelogFile, HttpClient client, RhapsodyAuditLogRevisionState baseline) throws JsonProcessingException, IOException, InterruptedException {
         LOGGER.info("Exporting audit logs as change log for {}", restUrl);
 
         // Get the changes via Audit log export
@@ -139,52 +205,83 @@ public class RhapsodySCM extends SCM {
             // Pull for the last 7 days
             startTime = System.currentTimeMillis() - Duration.ofDays(7).toMillis();
         } else {
-            // Pull logs from last build
-            startTime = ((RhapsodyAuditLogRevisionState) baseline).getTimestamp();
+            // Pull logs from the last ingested entry
+            startTime = baseline.getStartTime();
         }
 
-        List<RhapsodyLogEntry> entries;
-        try {
-            entries = log.requestAuditEntries(startTime, endTime);
-        } catch (Exception ex) {
-            LOGGER.warn("Exception exporting audit logs", ex);
-            entries = new ArrayList<>();
-        }
-
-        LOGGER.info("Total audit logs: {}", entries.size());
-        // Filter to changes only
-        List<RhapsodyChangeEntry> changes = entries.stream()
-                .filter(e -> e instanceof RhapsodyChangeEntry)
-                .map(e -> (RhapsodyChangeEntry) e)
-                .filter(c -> !c.getVersion().isEmpty())
-                .collect(Collectors.toList());
-        LOGGER.info("Identified {} changes", changes.size());
-        // Write out the changes to the changelog file
+        RhapsodyAuditLogRevisionState.Cursor cursor = new RhapsodyAuditLogRevisionState.Cursor(baseline, startTime);
+        // Write out the changes to the changelog file while the entries are streamed
         try (PrintWriter writer = new PrintWriter(new FileWriter(changelogFile))) {
             writer.println("<?xml version=\"1.0\" encoding=\"UTF-8\"?>");
             writer.println("<changelog>");
-            for (RhapsodyChangeEntry change : changes) {
-                writer.println(String.format("\t<changeset version=\"%s\">", change.getVersion()));
-                writer.println(String.format("\t\t<date>%s</date>", Util.XS_DATETIME_FORMATTER.format(change.getDate())));
-                writer.println(String.format("\t\t<user>%s</user>", change.getUsername()));
-                writer.println(String.format("\t\t<comment>%s</comment>", change.getComment()));
-                writer.println("\t\t<items>");
-                change.getCommPoints().forEach((item) -> {
-                    writer.println(String.format("\t\t\t<item action=\"%s\" type=\"%s\">%s</item>", "edit", "communication-point", item));
-                });
-                change.getDefinitions().forEach((item) -> {
-                    writer.println(String.format("\t\t\t<item action=\"%s\" type=\"%s\">%s</item>", "edit", "definition", item));
-                });
-                change.getRoutes().forEach((item) -> {
-                    writer.println(String.format("\t\t\t<item action=\"%s\" type=\"%s\">%s</item>", "edit", "route", item));
-                });
-                writer.println("\t\t</items>");
-                writer.println("\t</changeset>");
+
+            AtomicInteger total = new AtomicInteger();
+            AtomicInteger changes = new AtomicInteger();
+            try (Stream<RhapsodyLogEntry> entries = streamAuditEntries(log, startTime, endTime)) {
+                // Drop the entries at the edge of the previous export, filter to changes only
+                entries.filter(cursor::accept)
+                        .peek(e -> total.incrementAndGet())
+                        .filter(e -> e instanceof RhapsodyChangeEntry)
+                        .map(e -> (RhapsodyChangeEntry) e)
+                        .filter(c -> !c.getVersion().isEmpty())
+                        .forEach(change -> {
+                            changes.incrementAndGet();
+                            writeChange(writer, change);
+                        });
+            } catch (Exception ex) {
+                LOGGER.warn("Exception exporting audit logs", ex);
+                // Moving the cursor would skip the changes not exported
+                AbortException abort = new AbortException("Unable to export the audit logs from " + restUrl + ": " + ex.getMessage());
+                abort.initCause(ex);
+                throw abort;
             }
+
+            LOGGER.info("Total audit logs: {}", total.get());
+            LOGGER.info("Identified {} changes", changes.get());
             writer.println("</changelog>");
         }
 
         LOGGER.info("Done exporting audit logs as change log for {}", restUrl);
+        return cursor.toRevisionState();
+    }
+
+    private Stream<RhapsodyLogEntry> streamAuditEntries(RhapsodyLog log, long startTime, long endTime) throws IOException {
+        if (cacheAuditLogs) {
+            // Export only what is not cached yet
+            File cacheRoot = new File(Jenkins.get().getRootDir(), LOG_CACHE_DIRNAME);
+            RhapsodyLogCache cache = RhapsodyLogCache.get(cacheRoot.toPath(), restUrl, credentialsId, RhapsodyLog.AUDIT);
+            return cache.stream(startTime, endTime, (start, end) -> exportAuditEntries(log, start, end));
+        }
+
+        return exportAuditEntries(log, startTime, endTime);
+    }
+
+    private Stream<RhapsodyLogEntry> exportAuditEntries(RhapsodyLog log, long startTime, long endTime) throws IOException {
+        if (exportShardHours > 0) {
+            // Export in shards, in parallel
+            return log.streamAuditEntries(startTime, endTime, Duration.ofHours(exportShardHours), getExportParallelism());
+        }
+
+        return log.streamAuditEntries(startTime, endTime);
+    }
+
+    private void writeChange(PrintWriter writer, RhapsodyChangeEntry change) {
+        writer.println(String.format("\t<changeset version=\"%s\">", change.getVersion()));
+        writer.println(String.format("\t\t<date>%s</date>", Util.XS_DATETIME_FORMATTER.format(change.getDate())));
+        writer.println(String.format("\t\t<user>%s</user>", change.getUsername()));
+        writer.println(String.format("\t\t<comment>%s</comment>", change.getComment()));
+        writer.println("\t\t<items>");
+        change.getCommPoints().forEach((item) -> {
+            writer.println(String.format("\t\t\t<item action=\"%s\" type=\"%s\">%s</item>", "edit", "communication-point", item));
+        });
+        change.getDefinitions().forEach((item) -> {
+            writer.println(String.format("\t\t\t<item action=\"%s\" type=\"%s\">%s</item>", "edit", "definition", item));
+        });
+        change.getRoutes().forEach((item) -> {
+            writer.println(String.format("\t\t\t<item action=\"%s\" type=\"%s\">%s</item>", "edit", "route", item));
+        });
+        writer.println("\t\t</items>");
+        writer.println("\t</changeset>");
     }
 
     @Override
@@ -192,6 +289,8 @@ public class RhapsodySCM extends SCM {
         LOGGER.info("Checking out Rhapsody components");
 
         HttpClient client = getHttpClient(build);
+        listener.getLogger().println(RhapsodyRestHelper.getCircuitBreaker(restUrl, getEffectiveConnectionPolicy()).describe());
+
         HttpGet componentsRequest = new HttpGet(restUrl + "/api/components");
         componentsRequest.addHeader("Accept", "application/json");
 
@@ -213,20 +312,44 @@ public class RhapsodySCM extends SCM {
         }
 
         // Add action for the build step
-        build.addAction(new RhapsodySCMAction(restUrl, credentialsId));
+        build.addAction(new RhapsodySCMAction(restUrl, credentialsId, connectionPolicy));
 
-        if (baseline != null) {
-            LOGGER.info("Baseline revision state datetime: {}", new Date(((RhapsodyAuditLogRevisionState) baseline).getTimestamp()));
+        RhapsodyAuditLogRevisionState auditBaseline = findBaseline(build, baseline);
+        if (auditBaseline != null) {
+            LOGGER.info("Baseline revision state datetime: {}", new Date(auditBaseline.getStartTime()));
         } else {
             LOGGER.info("Baseline revision state is null");
         }
 
-        // Use audit logs as the change log
-        exportAuditLogs(changelogFile, client, baseline);
+        // Use audit logs as the change log, keep the cursor as the build's revision state
+        build.addAction(exportAuditLogs(changelogFile, client, auditBaseline));
 
         LOGGER.info("Checkout complete for {}", restUrl);
     }
 
+    /**
+     * Find the audit log baseline, falling back to the most recent build
+     * with one when the previous build has none
+     *
+     * @param build
+     * @param baseline
+     * @return
+     */
+    protected RhapsodyAuditLogRevisionState findBaseline(Run<?, ?> build, SCMRevisionState baseline) {
+        if (baseline instanceof RhapsodyAuditLogRevisionState) {
+            return (RhapsodyAuditLogRevisionState) baseline;
+        }
+
+        for (Run<?, ?> previous = build.getPreviousBuild(); previous != null; previous = previous.getPreviousBuild()) {
+            RhapsodyAuditLogRevisionState state = previous.getAction(RhapsodyAuditLogRevisionState.class);
+            if (state != null) {
+                return state;
+            }
+        }
+
+        return null;
+    }
+
     @Override
     public PollingResult compareRemoteRevisionWith(Job<?, ?> project, Launcher launcher, FilePath workspace, TaskListener listener, SCMRevisionState baseline) throws IOException, InterruptedException {
         LOGGER.info("Comparing remote revision with ");
@@ -236,8 +359,9 @@ public class RhapsodySCM extends SCM {
 
     @Override
     public SCMRevisionState calcRevisionsFromBuild(Run<?, ?> build, FilePath workspace, Launcher launcher, TaskListener listener) throws IOException, InterruptedException {
-        // Just timestamp the current build
-        return new RhapsodyAuditLogRevisionState();
+        // Cursor is added during the checkout, otherwise just timestamp the current build
+        RhapsodyAuditLogRevisionState state = build.getAction(RhapsodyAuditLogRevisionState.class);
+        return state != null ? state : new RhapsodyAuditLogRevisionState();
     }
 
     @Override
@@ -24,6 +24,7 @@
 package org.ahn.rhapsody.ci.scm;
 
 import hudson.model.Action;
+import org.ahn.rhapsody.ci.RhapsodyConnectionPolicy;
 
 /**
  *
@@ -33,10 +34,16 @@ public class RhapsodySCMAction implements Action {
 
     private String restUrl;
     private String credentialsId;
+    private RhapsodyConnectionPolicy connectionPolicy;
 
     public RhapsodySCMAction(String restUrl, String credentialsId) {
+        this(restUrl, credentialsId, null);
+    }
+
+    public RhapsodySCMAction(String restUrl, String credentialsId, RhapsodyConnectionPolicy connectionPolicy) {
         this.restUrl = restUrl;
         this.credentialsId = credentialsId;
+        this.connectionPolicy = connectionPolicy;
     }
 
     public String getRestUrl() {
@@ -46,6 +53,13 @@ public class RhapsodySCMAction implements Action {
     public String getCredentialsId() {
         return credentialsId;
     }
+
+    /**
+     * @return connection policy of the SCM, null for the defaults
+     */
+    public RhapsodyConnectionPolicy getConnectionPolicy() {
+        return connectionPolicy;
+    }
     
     @Override
     public String getIconFileName() {
@@ -0,0 +1,119 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2020 me.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.ahn.rhapsody;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.text.ParseException;
+import java.util.Date;
+import java.util.List;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+import org.apache.http.HttpResponse;
+import org.apache.http.HttpVersion;
+import org.apache.http.entity.ByteArrayEntity;
+import org.apache.http.message.BasicHttpResponse;
+import org.apache.http.message.BasicStatusLine;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * Audit log parsing over a synthetic export
+ *
+ * @author me
+ */
+@State(Scope.Benchmark)
+public class RhapsodyLogBenchmark {
+
+    @Param({"10000", "100000"})
+    public int records;
+
+    private RhapsodyLog log;
+    private String[] lines;
+    private String changeMessage;
+    private byte[] export;
+    private int next = 0;
+
+    @Setup
+    public void setUp() throws IOException {
+        lines = new String[records];
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < records; i++) {
+            String line;
+            if (i % 10 == 0) {
+                line = String.format("2020-03-23 | %02d:%02d:%02d.%03d-04:00 | Info | %d | Audit | Administrator | Configuration committed"
+                        + "\n  Comment: change %d\n  Modified routes: Route A%d, Route B%d\n  Modified definitions: Def %d\n | Configuration Change",
+                        i / 3600000 % 24, i / 60000 % 60, i / 1000 % 60, i % 1000, i, i, i, i, i);
+            } else {
+                line = String.format("2020-03-23 | %02d:%02d:%02d.%03d-04:00 | Info | %d | Audit | User %d | Logged in from 10.0.0.%d | Login",
+                        i / 3600000 % 24, i / 60000 % 60, i / 1000 % 60, i % 1000, i, i % 50, i % 255);
+            }
+
+            sb.append(line).append('\n');
+            // Records as returned by the record reader
+            lines[i] = line.replace("\n", RhapsodyLog.MESSAGE_SEPARATOR);
+        }
+        changeMessage = lines[0].split("\\|")[6].trim();
+
+        ByteArrayOutputStream bos = new ByteArrayOutputStream();
+        try (ZipOutputStream zos = new ZipOutputStream(bos)) {
+            zos.putNextEntry(new ZipEntry("AUDIT.txt"));
+            zos.write(sb.toString().getBytes(StandardCharsets.UTF_8));
+            zos.closeEntry();
+        }
+        export = bos.toByteArray();
+
+        log = new RhapsodyLog("https://localhost:8444", null, new ObjectMapper()) {
+            @Override
+            protected HttpResponse requestExport(String type, long startTime, long endTime) {
+                BasicHttpResponse response = new BasicHttpResponse(new BasicStatusLine(HttpVersion.HTTP_1_1, 200, "OK"));
+                response.setEntity(new ByteArrayEntity(export));
+                return response;
+            }
+        };
+    }
+
+    @Benchmark
+    public RhapsodyLogEntry parseAuditLine() throws ParseException {
+        String line = lines[next];
+        next = (next + 1) % lines.length;
+
+        return log.parseAuditLine(line);
+    }
+
+    @Benchmark
+    public List<RhapsodyLogEntry> requestAuditEntries() throws IOException {
+        return log.requestAuditEntries(0, 0);
+    }
+
+    @Benchmark
+    public RhapsodyChangeEntry parseMessage() {
+        return new RhapsodyChangeEntry(new Date(0), "Administrator", changeMessage, "Configuration Change");
+    }
+}
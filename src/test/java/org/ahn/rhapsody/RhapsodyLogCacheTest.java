@@ -0,0 +1,195 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2020 me.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.ahn.rhapsody;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.LongStream;
+import java.util.stream.Stream;
+import org.apache.http.HttpResponse;
+import org.apache.http.HttpVersion;
+import org.apache.http.entity.ContentType;
+import org.apache.http.entity.StringEntity;
+import org.apache.http.message.BasicHttpResponse;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.fail;
+import org.junit.Test;
+
+/**
+ *
+ * @author me
+ */
+public class RhapsodyLogCacheTest {
+
+    private static final long INTERVAL = Duration.ofMinutes(1).toMillis();
+
+    @Test
+    public void testGapsOnly() throws IOException {
+        Path root = Files.createTempDirectory("rhapsody-log-cache");
+        RhapsodyLogCache cache = RhapsodyLogCache.get(root, "https://localhost:8444/", "rhapsody", RhapsodyLog.AUDIT);
+        assertEquals(cache, RhapsodyLogCache.get(root, "https://localhost:8444", "rhapsody", RhapsodyLog.AUDIT));
+
+        List<long[]> requests = new ArrayList<>();
+        RhapsodyLogCache.Source source = (startTime, endTime) -> {
+            requests.add(new long[]{startTime, endTime});
+            long first = (startTime + INTERVAL - 1) / INTERVAL * INTERVAL;
+            return LongStream.iterate(first, t -> t + INTERVAL)
+                    .limit(Math.max(0, (endTime - first) / INTERVAL + 1))
+                    .mapToObj(t -> RhapsodyLog.createEntry(new Date(t), "Administrator", "Entry " + t, t % 7 == 0 ? "Configuration Change" : "Audit"));
+        };
+
+        long hour = Duration.ofHours(1).toMillis();
+        long startTime = 1584979200000L + 30 * INTERVAL;
+        long endTime = startTime + 3 * hour;
+
+        List<RhapsodyLogEntry> expected = collect(source.stream(startTime, endTime));
+        requests.clear();
+
+        // Whole buckets are exported, to be cached
+        assertEquals(messages(expected), messages(collect(cache.stream(startTime, endTime, source))));
+        assertEquals(1, requests.size());
+        assertEquals(startTime - 30 * INTERVAL, requests.get(0)[0]);
+
+        // Served from the cache
+        requests.clear();
+        List<RhapsodyLogEntry> cached = collect(cache.stream(startTime, endTime, source));
+        assertEquals(messages(expected), messages(cached));
+        assertTrue(requests.isEmpty());
+        assertTrue(cached.stream().anyMatch(e -> e instanceof RhapsodyChangeEntry));
+
+        // Only the gap after the cached buckets is exported
+        expected = collect(source.stream(startTime, endTime + hour));
+        requests.clear();
+        assertEquals(messages(expected), messages(collect(cache.stream(startTime, endTime + hour, source))));
+        assertEquals(1, requests.size());
+        assertTrue(requests.get(0)[0] > endTime - hour);
+    }
+
+    @Test
+    public void testCredentials() throws IOException {
+        Path root = Files.createTempDirectory("rhapsody-log-cache");
+        RhapsodyLogCache cache = RhapsodyLogCache.get(root, "https://localhost:8447", "rhapsody", RhapsodyLog.AUDIT);
+
+        // Not served to the exports made with other credentials
+        assertEquals(cache, RhapsodyLogCache.get(root, "https://localhost:8447", "rhapsody", RhapsodyLog.AUDIT));
+        assertFalse(cache.getDirectory().equals(RhapsodyLogCache.get(root, "https://localhost:8447", "Rhapsody", RhapsodyLog.AUDIT).getDirectory()));
+        assertFalse(cache.getDirectory().equals(RhapsodyLogCache.get(root, "https://localhost:8447", null, RhapsodyLog.AUDIT).getDirectory()));
+    }
+
+    @Test
+    public void testLastSecond() throws IOException {
+        Path root = Files.createTempDirectory("rhapsody-log-cache");
+        RhapsodyLogCache cache = RhapsodyLogCache.get(root, "https://localhost:8448", "rhapsody", RhapsodyLog.AUDIT);
+
+        long hour = Duration.ofHours(1).toMillis();
+        long bucketStart = 1584979200000L;
+        List<RhapsodyLogEntry> logged = new ArrayList<>();
+        logged.add(RhapsodyLog.createEntry(new Date(bucketStart + 5000), "Administrator", "First", "Audit"));
+        // HH:59:59.5
+        logged.add(RhapsodyLog.createEntry(new Date(bucketStart + hour - 500), "Administrator", "Last", "Audit"));
+        logged.add(RhapsodyLog.createEntry(new Date(bucketStart + hour), "Administrator", "Next", "Audit"));
+
+        // Export precise to the second
+        RhapsodyLogCache.Source source = (startTime, endTime) -> logged.stream()
+                .filter(e -> e.getDate().getTime() >= startTime / 1000 * 1000 && e.getDate().getTime() <= endTime / 1000 * 1000);
+
+        List<RhapsodyLogEntry> exported = collect(cache.stream(bucketStart, bucketStart + hour - 1, source));
+        assertEquals(logged.subList(0, 2), exported);
+
+        // Committed with the last second
+        List<RhapsodyLogEntry> cached = collect(cache.stream(bucketStart, bucketStart + hour - 1, (startTime, endTime) -> {
+            throw new IOException("Cached");
+        }));
+        assertEquals(messages(exported), messages(cached));
+    }
+
+    @Test
+    public void testPrune() throws IOException {
+        Path root = Files.createTempDirectory("rhapsody-log-cache");
+        RhapsodyLogCache cache = RhapsodyLogCache.get(root, "https://localhost:8445", "rhapsody", RhapsodyLog.AUDIT);
+        cache.setRetention(Duration.ofDays(7));
+        Files.createDirectories(cache.getDirectory());
+
+        long now = System.currentTimeMillis();
+        Path recent = Files.createFile(cache.segment(1));
+        Path old = Files.createFile(cache.segment(2));
+        Path leftover = Files.createFile(cache.getDirectory().resolve("3-1.tmp"));
+        Files.setLastModifiedTime(old, FileTime.fromMillis(now - Duration.ofDays(8).toMillis()));
+        Files.setLastModifiedTime(leftover, FileTime.fromMillis(now - Duration.ofDays(2).toMillis()));
+
+        cache.prune(now);
+        assertTrue(Files.exists(recent));
+        assertFalse(Files.exists(old));
+        assertFalse(Files.exists(leftover));
+    }
+
+    @Test
+    public void testFailedExport() throws IOException {
+        Path root = Files.createTempDirectory("rhapsody-log-cache");
+        RhapsodyLogCache cache = RhapsodyLogCache.get(root, "https://localhost:8446", "rhapsody", RhapsodyLog.AUDIT);
+        RhapsodyLog log = new RhapsodyLog("https://localhost:8446", null, new ObjectMapper()) {
+            @Override
+            protected HttpResponse requestExport(String type, long startTime, long endTime) {
+                HttpResponse response = new BasicHttpResponse(HttpVersion.HTTP_1_1, 500, "Internal Server Error");
+                response.setEntity(new StringEntity("Export failed", ContentType.TEXT_PLAIN));
+                return response;
+            }
+        };
+
+        long startTime = 1584979200000L;
+        try {
+            collect(cache.stream(startTime, startTime + Duration.ofHours(2).toMillis(), log::streamAuditEntries));
+            fail("Error response is not a log export");
+        } catch (IOException | UncheckedIOException ex) {
+            // Expected
+        }
+
+        // Nothing cached for the buckets
+        try (Stream<Path> files = Files.list(cache.getDirectory())) {
+            assertEquals(0, files.count());
+        }
+    }
+
+    private List<RhapsodyLogEntry> collect(Stream<RhapsodyLogEntry> stream) {
+        try (Stream<RhapsodyLogEntry> entries = stream) {
+            return entries.collect(Collectors.toList());
+        }
+    }
+
+    private List<String> messages(List<RhapsodyLogEntry> entries) {
+        return entries.stream().map(e -> e.getDate().getTime() + " " + e.getMessage()).collect(Collectors.toList());
+    }
+
+}
@@ -0,0 +1,90 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2020 me.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.ahn.rhapsody;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.List;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import org.junit.Test;
+
+/**
+ *
+ * @author me
+ */
+public class RhapsodyLogChangeCombinerTest {
+
+    @Test
+    public void testCombineChanges() {
+        List<RhapsodyLogEntry> entries = combine(
+                entry("Engine started"),
+                entry("Configuration changes committed by 'Administrator' at version '42'\rUpdated ADT routing"),
+                entry("Configuration changed by user Administrator\rModified routes: ADT In, ADT Out"),
+                entry("Configuration changes committed by 'Jane' at version '43'"),
+                entry("Route started"),
+                entry("Configuration changes committed by 'Jane' at version '44'\rFix"),
+                entry("Configuration changed by user Jane\rModified definitions: Patient"));
+
+        assertEquals(5, entries.size());
+        assertEquals("Engine started", entries.get(0).getMessage());
+
+        assertTrue(entries.get(1) instanceof RhapsodyChangeEntry);
+        RhapsodyChangeEntry change = (RhapsodyChangeEntry) entries.get(1);
+        assertEquals("Administrator", change.getUsername());
+        assertEquals("42", change.getVersion());
+        assertEquals("Updated ADT routing", change.getComment());
+        assertEquals(Arrays.asList("ADT In", "ADT Out"), change.getRoutes());
+
+        // Commit without the change record is passed through
+        assertFalse(entries.get(2) instanceof RhapsodyChangeEntry);
+        assertEquals("Route started", entries.get(3).getMessage());
+
+        change = (RhapsodyChangeEntry) entries.get(4);
+        assertEquals("Jane", change.getUsername());
+        assertEquals("44", change.getVersion());
+        assertEquals(Arrays.asList("Patient"), change.getDefinitions());
+    }
+
+    @Test
+    public void testTrailingCommit() {
+        List<RhapsodyLogEntry> entries = combine(
+                entry("Configuration changes committed by 'Jane' at version '43'"));
+
+        assertEquals(1, entries.size());
+        assertFalse(entries.get(0) instanceof RhapsodyChangeEntry);
+    }
+
+    private List<RhapsodyLogEntry> combine(RhapsodyLogEntry... entries) {
+        List<RhapsodyLogEntry> combined = new ArrayList<>();
+        new RhapsodyLogChangeCombiner(Arrays.asList(entries).iterator()).forEachRemaining(combined::add);
+        return combined;
+    }
+
+    private RhapsodyLogEntry entry(String message) {
+        return new RhapsodyLogEntry(new Date(), "Engine", message, "");
+    }
+}
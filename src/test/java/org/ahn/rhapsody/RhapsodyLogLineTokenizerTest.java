@@ -0,0 +1,74 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2020 me.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.ahn.rhapsody;
+
+import java.text.ParseException;
+import java.text.SimpleDateFormat;
+import static org.junit.Assert.assertEquals;
+import org.junit.Test;
+
+/**
+ *
+ * @author me
+ */
+public class RhapsodyLogLineTokenizerTest {
+
+    @Test
+    public void testFields() {
+        String line = "2020-03-23 | 12:20:47.763-04:00 | Info | 1 | Audit |  Administrator | Logged in | Login ";
+        RhapsodyLogLineTokenizer parts = new RhapsodyLogLineTokenizer(line);
+
+        assertEquals(line.split("\\|").length, parts.size());
+        for (int i = 0; i < parts.size(); i++) {
+            assertEquals(line.split("\\|")[i].trim(), parts.get(i));
+        }
+    }
+
+    @Test
+    public void testSizeMatchesSplit() {
+        String[] lines = {"", "|", "a||", "a|| ", " | |", "a|b|c|d|e|f|g|", "a|b|c|d|e|f|g||h"};
+        for (String line : lines) {
+            assertEquals(line, line.split("\\|").length, new RhapsodyLogLineTokenizer(line).size());
+        }
+    }
+
+    @Test
+    public void testDate() throws ParseException {
+        SimpleDateFormat dateFormat = new SimpleDateFormat("yyyy-MM-dd HH:mm:ss.SSSXXX");
+        String[][] dates = {
+            {"2020-03-23", "12:20:47.763-04:00"},
+            {"2020-03-23", "12:20:47.763+05:30"},
+            {"2020-03-23", "12:20:47.763Z"},
+            // Lenient values are rolled over
+            {"2020-13-45", "25:61:61.999+14:00"},
+            {"2020-3-4", "12:20:47.7630-04:00"}
+        };
+
+        for (String[] date : dates) {
+            RhapsodyLogLineTokenizer parts = new RhapsodyLogLineTokenizer(date[0] + " | " + date[1] + " | Info");
+            assertEquals(dateFormat.parse(date[0] + " " + date[1]), parts.getDate(0, 1));
+        }
+    }
+
+}
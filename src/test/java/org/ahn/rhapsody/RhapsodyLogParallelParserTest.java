@@ -0,0 +1,158 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2020 me.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.ahn.rhapsody;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ *
+ * @author me
+ */
+public class RhapsodyLogParallelParserTest {
+
+    private Path archive;
+    private ForkJoinPool pool;
+
+    @Before
+    public void setUp() throws IOException {
+        archive = Files.createTempFile("rhapsody-audit-", ".zip");
+        pool = new ForkJoinPool(4);
+
+        // Two files with interleaved entries
+        try (ZipOutputStream zos = new ZipOutputStream(Files.newOutputStream(archive))) {
+            writeFile(zos, "AUDIT-1.txt", 0);
+            writeFile(zos, "AUDIT-2.txt", 1);
+        }
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        pool.shutdown();
+        Files.deleteIfExists(archive);
+    }
+
+    @Test
+    public void testParallelParse() throws IOException {
+        RhapsodyLog log = new RhapsodyLog("https://localhost:8444", null, new ObjectMapper());
+        RhapsodyLogParallelParser parser = new RhapsodyLogParallelParser(log::parseAuditLine, pool);
+        // Many chunks per file
+        parser.setChunkSize(500);
+
+        List<RhapsodyLogEntry> entries;
+        try (Stream<RhapsodyLogEntry> stream = parser.stream(archive)) {
+            entries = stream.collect(Collectors.toList());
+        }
+
+        assertEquals(2000, entries.size());
+        for (int i = 0; i < entries.size(); i++) {
+            assertEquals("Entry " + i, entries.get(i).getMessage().split(RhapsodyLog.MESSAGE_SEPARATOR)[0]);
+        }
+        assertTrue(entries.get(1) instanceof RhapsodyChangeEntry);
+    }
+
+    @Test
+    public void testCloseEarly() throws IOException {
+        RhapsodyLog log = new RhapsodyLog("https://localhost:8444", null, new ObjectMapper());
+        RhapsodyLogParallelParser parser = new RhapsodyLogParallelParser(log::parseAuditLine, pool);
+        parser.setChunkSize(500);
+
+        try (Stream<RhapsodyLogEntry> stream = parser.stream(archive)) {
+            assertEquals(10, stream.limit(10).count());
+        }
+    }
+
+    @Test
+    public void testOwnPool() throws IOException {
+        RhapsodyLog log = new RhapsodyLog("https://localhost:8444", null, new ObjectMapper());
+        Set<String> threads = ConcurrentHashMap.newKeySet();
+        RhapsodyLogParallelParser parser = new RhapsodyLogParallelParser(line -> {
+            threads.add(Thread.currentThread().getName());
+            return log.parseAuditLine(line);
+        }, 2);
+        parser.setChunkSize(500);
+
+        try (Stream<RhapsodyLogEntry> stream = parser.stream(archive)) {
+            assertEquals(2000, stream.count());
+        }
+
+        // Not parsed on the common pool
+        assertFalse(threads.isEmpty());
+        assertTrue(threads.toString(), threads.stream().allMatch(t -> t.startsWith("rhapsody-log-parser-")));
+    }
+
+    @Test
+    public void testParseOnce() throws IOException {
+        RhapsodyLog log = new RhapsodyLog("https://localhost:8444", null, new ObjectMapper());
+        AtomicInteger parsed = new AtomicInteger();
+        RhapsodyLogParallelParser parser = new RhapsodyLogParallelParser(line -> {
+            parsed.incrementAndGet();
+            return log.parseAuditLine(line);
+        }, pool);
+
+        // Files smaller than a chunk, and files ending in a partial chunk
+        for (int chunkSize : new int[]{RhapsodyLogParallelParser.DEFAULT_CHUNK_SIZE, 50_000}) {
+            parsed.set(0);
+            parser.setChunkSize(chunkSize);
+            try (Stream<RhapsodyLogEntry> stream = parser.stream(archive)) {
+                assertEquals(2000, stream.count());
+            }
+            assertEquals(2000, parsed.get());
+        }
+    }
+
+    private void writeFile(ZipOutputStream zos, String name, int offset) throws IOException {
+        zos.putNextEntry(new ZipEntry(name));
+        StringBuilder sb = new StringBuilder();
+        for (int i = offset; i < 2000; i += 2) {
+            sb.append(String.format("2020-03-23 | %02d:%02d:%02d.000-04:00 | Info | %d | Audit | Administrator | Entry %d",
+                    i / 3600, i / 60 % 60, i % 60, i, i));
+            if (i % 2 == 1) {
+                sb.append("\n  Modified routes: ADT In | Configuration Change\n");
+            } else {
+                sb.append(" | Login\n");
+            }
+        }
+        zos.write(sb.toString().getBytes(StandardCharsets.UTF_8));
+        zos.closeEntry();
+    }
+}
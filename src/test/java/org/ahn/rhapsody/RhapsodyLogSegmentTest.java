@@ -0,0 +1,93 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2020 me.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.ahn.rhapsody;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import org.junit.Test;
+
+/**
+ *
+ * @author me
+ */
+public class RhapsodyLogSegmentTest {
+
+    @Test
+    public void testRead() throws IOException {
+        Path dir = Files.createTempDirectory("rhapsody-log-segment");
+        Path target = dir.resolve("1.seg");
+
+        // Several blocks, with an entry larger than a block
+        List<String> expected = new ArrayList<>();
+        try (RhapsodyLogSegment.Writer writer = new RhapsodyLogSegment.Writer(dir.resolve("1.tmp"))) {
+            for (int i = 0; i < 2000; i++) {
+                String message = i == 1000 ? String.join("", Collections.nCopies(100 * 1024, "x")) : "Entry " + i;
+                writer.append(RhapsodyLog.createEntry(new Date(i * 1000L), "Administrator", message, "Audit"));
+                if (i >= 500 && i <= 1500) {
+                    expected.add(message);
+                }
+            }
+            writer.commit(target);
+        }
+
+        List<String> messages = new ArrayList<>();
+        try (RhapsodyLogSegment.Reader reader = RhapsodyLogSegment.read(target, 500 * 1000L, 1500 * 1000L)) {
+            reader.forEachRemaining(e -> messages.add(e.getMessage()));
+        }
+        assertEquals(expected, messages);
+    }
+
+    @Test
+    public void testCommitKeepsExisting() throws IOException {
+        Path dir = Files.createTempDirectory("rhapsody-log-segment");
+        Path target = dir.resolve("1.seg");
+        Path first = dir.resolve("1-1.tmp");
+        Path second = dir.resolve("1-2.tmp");
+
+        try (RhapsodyLogSegment.Writer writer = new RhapsodyLogSegment.Writer(first)) {
+            writer.append(RhapsodyLog.createEntry(new Date(1000), "Administrator", "First", "Audit"));
+            writer.commit(target);
+        }
+        try (RhapsodyLogSegment.Writer writer = new RhapsodyLogSegment.Writer(second)) {
+            writer.append(RhapsodyLog.createEntry(new Date(1000), "Administrator", "Second", "Audit"));
+            writer.commit(target);
+        }
+
+        List<String> messages = new ArrayList<>();
+        try (RhapsodyLogSegment.Reader reader = RhapsodyLogSegment.read(target, 0, Long.MAX_VALUE)) {
+            reader.forEachRemaining(e -> messages.add(e.getMessage()));
+        }
+        assertEquals(Arrays.asList("First"), messages);
+        assertFalse(Files.exists(second));
+    }
+
+}
@@ -0,0 +1,112 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2020 me.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.ahn.rhapsody;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.SocketTimeoutException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.text.SimpleDateFormat;
+import java.time.Duration;
+import java.util.Date;
+import java.util.List;
+import java.util.TimeZone;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import org.junit.Test;
+
+/**
+ *
+ * @author me
+ */
+public class RhapsodyLogShardedExportTest {
+
+    // An audit entry every 10 seconds
+    private static final long INTERVAL = 10_000;
+
+    @Test
+    public void testShardedExport() throws IOException {
+        AtomicInteger timeouts = new AtomicInteger();
+        RhapsodyLog log = new SyntheticLog(Duration.ofHours(1), timeouts);
+
+        long startTime = 1584979200000L;
+        long endTime = startTime + Duration.ofHours(8).toMillis();
+        List<RhapsodyLogEntry> entries;
+        try (Stream<RhapsodyLogEntry> stream = log.streamAuditEntries(startTime, endTime, Duration.ofHours(3), 4)) {
+            entries = stream.collect(Collectors.toList());
+        }
+
+        // Windows larger than an hour were split
+        assertTrue(timeouts.get() > 0);
+        // Edge entries exported by both neighbours appear once, in order
+        assertEquals((endTime - startTime) / INTERVAL + 1, entries.size());
+        for (int i = 0; i < entries.size(); i++) {
+            assertEquals(startTime + i * INTERVAL, entries.get(i).getDate().getTime());
+        }
+    }
+
+    /**
+     * Generates the export with both ends of the time range included
+     */
+    static class SyntheticLog extends RhapsodyLog {
+
+        private final Duration maxWindow;
+        private final AtomicInteger timeouts;
+
+        SyntheticLog(Duration maxWindow, AtomicInteger timeouts) {
+            super("https://localhost:8444", null, null);
+            this.maxWindow = maxWindow;
+            this.timeouts = timeouts;
+        }
+
+        @Override
+        protected void downloadExport(String type, Path path, long startTime, long endTime) throws IOException {
+            if (endTime - startTime > maxWindow.toMillis()) {
+                timeouts.incrementAndGet();
+                throw new SocketTimeoutException("Read timed out");
+            }
+
+            SimpleDateFormat dateFormat = new SimpleDateFormat("yyyy-MM-dd | HH:mm:ss.SSSXXX");
+            dateFormat.setTimeZone(TimeZone.getTimeZone("America/New_York"));
+            try (OutputStream os = Files.newOutputStream(path);
+                    ZipOutputStream zos = new ZipOutputStream(os)) {
+                zos.putNextEntry(new ZipEntry(type + ".txt"));
+                long first = (startTime + INTERVAL - 1) / INTERVAL * INTERVAL;
+                for (long time = first; time <= endTime; time += INTERVAL) {
+                    String line = dateFormat.format(new Date(time)) + " | Info | 1 | Audit | Administrator | Viewed " + time + " | Message View\n";
+                    zos.write(line.getBytes(StandardCharsets.UTF_8));
+                }
+                zos.closeEntry();
+            }
+        }
+    }
+
+}
@@ -0,0 +1,210 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2020 me.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.ahn.rhapsody;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.apache.http.client.HttpClient;
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.impl.client.HttpClients;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+import org.junit.Test;
+
+/**
+ *
+ * @author me
+ */
+public class RhapsodyLogSingleFlightTest {
+
+    @Test
+    public void testConcurrentCallsShareResult() throws Exception {
+        AtomicInteger calls = new AtomicInteger();
+        AtomicInteger released = new AtomicInteger();
+        RhapsodyLogSingleFlight<String, String> flights = new RhapsodyLogSingleFlight<>(v -> released.incrementAndGet());
+
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch finish = new CountDownLatch(1);
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            List<Future<String>> results = new ArrayList<>();
+            results.add(executor.submit(() -> {
+                try (RhapsodyLogSingleFlight.Lease<String> lease = flights.acquire("window", () -> {
+                    calls.incrementAndGet();
+                    started.countDown();
+                    finish.await();
+                    return "export";
+                })) {
+                    return lease.get();
+                }
+            }));
+            started.await();
+
+            for (int i = 0; i < 3; i++) {
+                results.add(executor.submit(() -> {
+                    try (RhapsodyLogSingleFlight.Lease<String> lease = flights.acquire("window", () -> {
+                        calls.incrementAndGet();
+                        return "other";
+                    })) {
+                        return lease.get();
+                    }
+                }));
+            }
+
+            // Let the followers join before completing
+            Thread.sleep(200);
+            finish.countDown();
+
+            for (Future<String> result : results) {
+                assertEquals("export", result.get(5, TimeUnit.SECONDS));
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+
+        assertEquals(1, calls.get());
+        assertEquals(1, released.get());
+        assertEquals(0, flights.size());
+    }
+
+    @Test
+    public void testFailureIsNotCached() throws IOException {
+        RhapsodyLogSingleFlight<String, String> flights = new RhapsodyLogSingleFlight<>(null);
+
+        try {
+            flights.acquire("window", () -> {
+                throw new IOException("timeout");
+            });
+            fail();
+        } catch (IOException ex) {
+            assertEquals("timeout", ex.getMessage());
+        }
+
+        try (RhapsodyLogSingleFlight.Lease<String> lease = flights.acquire("window", () -> "export")) {
+            assertEquals("export", lease.get());
+        }
+    }
+
+    @Test
+    public void testExportNotSharedAcrossClients() throws Exception {
+        AtomicInteger downloads = new AtomicInteger();
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch finish = new CountDownLatch(1);
+
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        try (CloseableHttpClient first = HttpClients.createMinimal();
+                CloseableHttpClient second = HttpClients.createMinimal()) {
+            RhapsodyLog firstLog = downloadingLog(first, downloads, started, finish);
+            RhapsodyLog secondLog = downloadingLog(second, downloads, new CountDownLatch(1), new CountDownLatch(0));
+
+            Future<?> firstExport = executor.submit(() -> {
+                firstLog.shareExport(RhapsodyLog.AUDIT, 1000, 2000).close();
+                return null;
+            });
+            started.await();
+
+            // Same window with other credentials, not joined to the export in flight
+            executor.submit(() -> {
+                secondLog.shareExport(RhapsodyLog.AUDIT, 1000, 2000).close();
+                return null;
+            }).get(5, TimeUnit.SECONDS);
+
+            finish.countDown();
+            firstExport.get(5, TimeUnit.SECONDS);
+        } finally {
+            finish.countDown();
+            executor.shutdownNow();
+        }
+
+        assertEquals(2, downloads.get());
+    }
+
+    @Test
+    public void testExportSharedWithinSecond() throws Exception {
+        AtomicInteger downloads = new AtomicInteger();
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch finish = new CountDownLatch(1);
+        List<long[]> requested = new ArrayList<>();
+
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        try (CloseableHttpClient client = HttpClients.createMinimal()) {
+            RhapsodyLog log = new RhapsodyLog("https://localhost:8444", client, new ObjectMapper()) {
+                @Override
+                protected void downloadExport(String type, Path path, long startTime, long endTime) throws IOException {
+                    requested.add(new long[]{startTime, endTime});
+                    downloadingLog(client, downloads, started, finish).downloadExport(type, path, startTime, endTime);
+                }
+            };
+
+            Future<?> firstExport = executor.submit(() -> {
+                log.shareExport(RhapsodyLog.AUDIT, 1584979200123L, 1584982800456L).close();
+                return null;
+            });
+            started.await();
+
+            // Current time of another build, in the same second
+            Future<?> secondExport = executor.submit(() -> {
+                log.shareExport(RhapsodyLog.AUDIT, 1584979200789L, 1584982800999L).close();
+                return null;
+            });
+
+            // Let the second export join before completing
+            Thread.sleep(200);
+            finish.countDown();
+            firstExport.get(5, TimeUnit.SECONDS);
+            secondExport.get(5, TimeUnit.SECONDS);
+        } finally {
+            finish.countDown();
+            executor.shutdownNow();
+        }
+
+        assertEquals(1, downloads.get());
+        assertEquals(1584979200000L, requested.get(0)[0]);
+        assertEquals(1584982800000L, requested.get(0)[1]);
+    }
+
+    private RhapsodyLog downloadingLog(HttpClient client, AtomicInteger downloads, CountDownLatch started, CountDownLatch finish) {
+        return new RhapsodyLog("https://localhost:8444", client, new ObjectMapper()) {
+            @Override
+            protected void downloadExport(String type, Path path, long startTime, long endTime) throws IOException {
+                downloads.incrementAndGet();
+                started.countDown();
+                try {
+                    finish.await();
+                } catch (InterruptedException ex) {
+                    throw new IOException(ex);
+                }
+            }
+        };
+    }
+}
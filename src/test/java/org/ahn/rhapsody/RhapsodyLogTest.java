@@ -25,19 +25,28 @@ package org.ahn.rhapsody;
 
 import com.fasterxml.jackson.databind.ObjectMapper;
 import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.net.URISyntaxException;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.util.Arrays;
 import java.util.List;
 import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
 import org.apache.http.HttpEntity;
 import org.apache.http.HttpResponse;
 import org.apache.http.StatusLine;
 import org.apache.http.client.HttpClient;
 import org.apache.http.client.methods.HttpUriRequest;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
 import org.junit.Ignore;
 import org.junit.Test;
 import static org.mockito.Matchers.isA;
@@ -67,6 +76,61 @@ public class RhapsodyLogTest {
         assertFalse(changes.isEmpty());
     }
 
+    @Test
+    public void testRequestAuditEntries() throws IOException {
+        String log = "2020-03-23 | 12:20:47.763-04:00 | Info | 1 | Audit | Administrator | Logged in | Login\n"
+                + "2020-03-23 | 12:21:02.100-04:00 | Info | 2 | Audit | Administrator | Configuration committed\n"
+                + "  Comment: Updated ADT routing\n"
+                + "  Modified routes: ADT In, ADT Out\n"
+                + " | Configuration Change\n"
+                + "2020-03-23 | 12:22:15.001-04:00 | Info | 3 | Audit | Administrator | Logged out | Logout";
+
+        HttpClient client = mockHttpClient(zip(log));
+        RhapsodyLog rhapsodyLog = new RhapsodyLog("https://localhost:8444", client, new ObjectMapper());
+        List<RhapsodyLogEntry> entries = rhapsodyLog.requestAuditEntries(0, 0);
+
+        assertEquals(3, entries.size());
+        assertEquals("Logged in", entries.get(0).getMessage());
+        assertEquals("Logged out", entries.get(2).getMessage());
+        assertTrue(entries.get(1) instanceof RhapsodyChangeEntry);
+
+        RhapsodyChangeEntry change = (RhapsodyChangeEntry) entries.get(1);
+        assertEquals("Updated ADT routing", change.getComment());
+        assertEquals(Arrays.asList("ADT In", "ADT Out"), change.getRoutes());
+    }
+
+    @Test
+    public void testTeeAuditEntries() throws IOException {
+        String log = "2020-03-23 | 12:20:47.763-04:00 | Info | 1 | Audit | Administrator | Logged in | Login\n"
+                + "2020-03-23 | 12:22:15.001-04:00 | Info | 3 | Audit | Administrator | Logged out | Logout";
+        byte[] export = zip(log);
+
+        HttpClient client = mockHttpClient(export);
+        RhapsodyLog rhapsodyLog = new RhapsodyLog("https://localhost:8444", client, new ObjectMapper());
+        Path archive = Files.createTempFile("rhapsody-audit-", ".zip");
+        try {
+            // Closed after the first entry, the archive is still complete
+            try (Stream<RhapsodyLogEntry> entries = rhapsodyLog.teeAuditEntries(archive, 0, 0)) {
+                assertEquals("Logged in", entries.findFirst().get().getMessage());
+            }
+
+            assertArrayEquals(export, Files.readAllBytes(archive));
+        } finally {
+            Files.deleteIfExists(archive);
+        }
+    }
+
+    protected byte[] zip(String content) throws IOException {
+        ByteArrayOutputStream bos = new ByteArrayOutputStream();
+        try (ZipOutputStream zos = new ZipOutputStream(bos)) {
+            zos.putNextEntry(new ZipEntry("AUDIT.txt"));
+            zos.write(content.getBytes(StandardCharsets.UTF_8));
+            zos.closeEntry();
+        }
+
+        return bos.toByteArray();
+    }
+
     protected HttpClient mockHttpClient(byte[] responseBytes) throws IOException {
         HttpClient client = Mockito.mock(HttpClient.class);
         HttpResponse response = Mockito.mock(HttpResponse.class);
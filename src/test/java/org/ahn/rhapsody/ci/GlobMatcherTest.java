@@ -0,0 +1,98 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2020 me.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.ahn.rhapsody.ci;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.regex.Pattern;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import org.junit.Test;
+
+/**
+ *
+ * @author me
+ */
+public class GlobMatcherTest {
+
+    private static final List<String> GLOBS = Arrays.asList(
+            "ADT In", "ADT*", "*Out", "*Epic*", "Lab ? Orders", "[A-C]* Route {1,2}*", "Route\\*", "**", "Integration/ADT/**");
+
+    @Test
+    public void testFirstPattern() {
+        GlobMatcher matcher = new GlobMatcher(GLOBS);
+
+        assertEquals("ADT In", matcher.match("adt in"));
+        assertEquals("ADT*", matcher.match("ADT Out"));
+        assertEquals("*Out", matcher.match("Epic Out"));
+        assertEquals("*Epic*", matcher.match("To EPIC Orders"));
+        assertEquals("Lab ? Orders", matcher.match("Lab 1 Orders"));
+        assertEquals("[A-C]* Route {1,2}*", matcher.match("Cerner Route 12"));
+        assertEquals("Route\\*", matcher.match("Route*"));
+        assertEquals("**", matcher.match("Anything"));
+
+        GlobMatcher paths = GlobMatcher.compile("Integration/ADT/**\n\n*/Labs/*");
+        assertEquals(2, paths.getPatterns().size());
+        assertEquals("Integration/ADT/**", paths.match("integration/adt/Inbound/ADT In"));
+        assertEquals("*/Labs/*", paths.match("Integration/Labs/Lab In"));
+        assertNull(paths.match("Billing/Invoices"));
+
+        GlobMatcher folders = GlobMatcher.compilePaths("Integration/ADT In\nIntegration/*\n**/Labs/**");
+        assertEquals("Integration/ADT In", folders.match("integration/ADT in"));
+        assertEquals("Integration/*", folders.match("Integration/Lab In"));
+        assertEquals("**/Labs/**", folders.match("Integration/Labs/Lab In"));
+        assertNull(folders.match("Integration/Old/Lab In"));
+
+        assertFalse(GlobMatcher.compile(null).matches("ADT In"));
+        assertTrue(GlobMatcher.compile(null).isEmpty());
+    }
+
+    @Test
+    public void testSameAsRegex() {
+        String[] names = {"ADT In", "adt", "Out", "xOUTx", "Lab 12 Orders", "Lab 1 Orders", "Bravo Route 2", "Dx Route 1",
+            "Route*", "Routes", "", "Integration/ADT/x", "Integration/ADT", "Ä Out", "ADT\nIn", "Epic\r", "x Out"};
+
+        for (int i = 0; i < GLOBS.size(); i++) {
+            // Each pattern on its own, the first matching one across all
+            GlobMatcher single = new GlobMatcher(GLOBS.subList(i, i + 1));
+            Pattern regex = Pattern.compile(GlobUtils.toRegex(GLOBS.get(i)), Pattern.CASE_INSENSITIVE);
+            for (String name : names) {
+                assertEquals(GLOBS.get(i) + " on " + name, regex.matcher(name).matches(), single.matches(name));
+            }
+        }
+
+        GlobMatcher matcher = new GlobMatcher(GLOBS.subList(0, 7));
+        for (String name : names) {
+            int expected = -1;
+            for (int i = 0; i < 7 && expected < 0; i++) {
+                if (Pattern.compile(GlobUtils.toRegex(GLOBS.get(i)), Pattern.CASE_INSENSITIVE).matcher(name).matches()) {
+                    expected = i;
+                }
+            }
+            assertEquals(name, expected, matcher.indexOf(name));
+        }
+    }
+}
@@ -0,0 +1,134 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2020 me.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.ahn.rhapsody.ci;
+
+import java.util.Random;
+import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import org.junit.Test;
+
+/**
+ *
+ * @author me
+ */
+public class GlobPatternTest {
+
+    // Pieces of the generated patterns and names
+    private static final String[] GLOB_PARTS = {"a", "b", "B", "x", "*", "**", "?", "[ab]", "[!a]", "[a-c]", "[^a]", "[*?]",
+        "[A-C]", "{a,b}", "{a,*b}", "{,x}", "{a,{b,c}}", "\\*", "\\?", "\\,", ".", "!", "^", "$", ",", "/", "-", "\\"};
+    private static final String[] NAME_PARTS = {"a", "b", "c", "A", "B", "C", "x", "X", "*", "?", ".", "/", "!", "^", "$",
+        ",", "-", "\\", "\n", "ä"};
+    private static final Pattern ESCAPED_LETTER = Pattern.compile("\\\\[A-Za-z0-9]");
+
+    @Test
+    public void testSameAsRegex() {
+        Random random = new Random(42);
+        int compared = 0;
+        for (int i = 0; i < 3000; i++) {
+            String glob = generate(random, GLOB_PARTS, 1 + random.nextInt(6));
+            if (ESCAPED_LETTER.matcher(glob).find()) {
+                // Regular expression escapes, as \d, are not globs
+                continue;
+            }
+
+            Pattern regex;
+            try {
+                regex = Pattern.compile(GlobUtils.toRegex(glob), Pattern.CASE_INSENSITIVE);
+            } catch (PatternSyntaxException ex) {
+                // Not a valid pattern before either
+                continue;
+            }
+
+            GlobPattern pattern = GlobPattern.compile(glob);
+            for (int j = 0; j < 30; j++) {
+                String name = generate(random, NAME_PARTS, random.nextInt(7));
+                assertEquals("'" + glob + "' on '" + name + "'", regex.matcher(name).matches(), pattern.matches(name));
+                compared++;
+            }
+        }
+        assertTrue(compared > 50000);
+    }
+
+    @Test
+    public void testLongPatterns() {
+        // More positions than fit in a long
+        StringBuilder glob = new StringBuilder();
+        StringBuilder name = new StringBuilder();
+        for (int i = 0; i < 40; i++) {
+            glob.append("a*");
+            name.append("ab");
+        }
+
+        GlobPattern pattern = GlobPattern.compile(glob.toString());
+        assertTrue(pattern.matches(name.toString()));
+        assertFalse(pattern.matches(name.substring(2)));
+        assertTrue(pattern.matchesPrefix(name.substring(2)));
+        // Backtracks for ever as a regular expression
+        assertFalse(GlobPattern.compile(glob + "c").matches(name + "x"));
+    }
+
+    @Test
+    public void testPaths() {
+        GlobPattern adt = GlobPattern.compilePath("Integration/ADT/**");
+        assertTrue(adt.matches("Integration/ADT/ADT In"));
+        assertTrue(adt.matches("integration/adt/Inbound/ADT In"));
+        assertFalse(adt.matches("Integration/ADT"));
+        assertFalse(adt.matches("Integration/Labs/ADT In"));
+
+        // One folder
+        GlobPattern folder = GlobPattern.compilePath("Integration/*/ADT*");
+        assertTrue(folder.matches("Integration/Inbound/ADT In"));
+        assertFalse(folder.matches("Integration/Inbound/Old/ADT In"));
+        assertFalse(GlobPattern.compilePath("Integration/?").matches("Integration//"));
+
+        // Any number of folders, none included
+        GlobPattern anywhere = GlobPattern.compilePath("**/{ADT,Lab} [!0-9]*");
+        assertTrue(anywhere.matches("ADT In"));
+        assertTrue(anywhere.matches("Integration/Inbound/Lab Orders"));
+        assertFalse(anywhere.matches("Integration/Lab 1"));
+        assertTrue(GlobPattern.compilePath("Integration/**/ADT In").matches("Integration/ADT In"));
+        assertTrue(GlobPattern.compilePath("Integration/**/ADT In").matches("Integration/A/B/ADT In"));
+        assertFalse(GlobPattern.compilePath("[!a]*").matches("/x"));
+
+        // Folders which may contain a match
+        assertTrue(adt.matchesPrefix("Integration/"));
+        assertTrue(adt.matchesPrefix("Integration/ADT/"));
+        assertTrue(adt.matchesPrefix("Integration/ADT/Inbound/"));
+        assertFalse(adt.matchesPrefix("Integration/Labs/"));
+        assertFalse(folder.matchesPrefix("Integration/Inbound/Old/"));
+        assertTrue(GlobPattern.compilePath("*/ADT/**").matchesPrefix("Labs/"));
+        assertFalse(GlobPattern.compilePath("*/ADT/**").matchesPrefix("Labs/Old/"));
+    }
+
+    private static String generate(Random random, String[] parts, int length) {
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < length; i++) {
+            sb.append(parts[random.nextInt(parts.length)]);
+        }
+        return sb.toString();
+    }
+}
@@ -0,0 +1,129 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2020 me.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.ahn.rhapsody.ci;
+
+import java.util.Arrays;
+import java.util.regex.Pattern;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * Glob conversion and matching of component names
+ *
+ * @author me
+ */
+@State(Scope.Benchmark)
+public class GlobUtilsBenchmark {
+
+    private static final String[] GLOBS = {"ADT*", "Lab ? Orders", "*Epic*Out", "[A-C]* Route {1,2}*", "Route\\*"};
+
+    private Pattern[] patterns;
+    private GlobMatcher matcher;
+    private GlobPattern[] globs;
+    private String[] names;
+    private int next = 0;
+
+    @Setup
+    public void setUp() {
+        patterns = new Pattern[GLOBS.length];
+        for (int i = 0; i < GLOBS.length; i++) {
+            patterns[i] = Pattern.compile(GlobUtils.toRegex(GLOBS[i]), Pattern.CASE_INSENSITIVE);
+        }
+        matcher = new GlobMatcher(Arrays.asList(GLOBS));
+        globs = new GlobPattern[GLOBS.length];
+        for (int i = 0; i < GLOBS.length; i++) {
+            globs[i] = GlobPattern.compile(GLOBS[i]);
+        }
+
+        names = new String[1000];
+        for (int i = 0; i < names.length; i++) {
+            switch (i % 4) {
+                case 0:
+                    names[i] = "ADT In " + i;
+                    break;
+                case 1:
+                    names[i] = "Out Epic Quest Lab Orders " + i;
+                    break;
+                case 2:
+                    names[i] = "Cerner Route " + i;
+                    break;
+                default:
+                    names[i] = "Lab " + (i % 10) + " Orders";
+            }
+        }
+    }
+
+    @Benchmark
+    public Pattern toRegex() {
+        String glob = GLOBS[next];
+        next = (next + 1) % GLOBS.length;
+
+        return Pattern.compile(GlobUtils.toRegex(glob), Pattern.CASE_INSENSITIVE);
+    }
+
+    @Benchmark
+    public int match() {
+        int matches = 0;
+        for (String name : names) {
+            for (Pattern pattern : patterns) {
+                if (pattern.matcher(name).matches()) {
+                    matches++;
+                    break;
+                }
+            }
+        }
+
+        return matches;
+    }
+
+    @Benchmark
+    public int matchNative() {
+        int matches = 0;
+        for (String name : names) {
+            char[] chars = name.toCharArray();
+            for (GlobPattern glob : globs) {
+                if (glob.matches(chars, 0, chars.length)) {
+                    matches++;
+                    break;
+                }
+            }
+        }
+
+        return matches;
+    }
+
+    @Benchmark
+    public int matchCompiled() {
+        int matches = 0;
+        for (String name : names) {
+            if (matcher.matches(name)) {
+                matches++;
+            }
+        }
+
+        return matches;
+    }
+}
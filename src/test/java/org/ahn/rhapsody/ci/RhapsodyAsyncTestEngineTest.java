@@ -0,0 +1,213 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2020 me.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.ahn.rhapsody.ci;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.ahn.rhapsody.ci.model.Component;
+import org.ahn.rhapsody.ci.model.TestStatus;
+import org.apache.http.HttpResponse;
+import org.apache.http.client.HttpClient;
+import org.apache.http.client.methods.HttpGet;
+import org.apache.http.util.EntityUtils;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ *
+ * @author me
+ */
+public class RhapsodyAsyncTestEngineTest {
+
+    // Polls answered RUNNING before a test completes, per component
+    private final Map<String, AtomicInteger> running = new ConcurrentHashMap<>();
+    private final AtomicInteger polls = new AtomicInteger();
+    // Polls answered 503 before the server recovers
+    private final AtomicInteger unavailable = new AtomicInteger();
+    private final Set<String> sessions = ConcurrentHashMap.newKeySet();
+
+    private HttpServer server;
+    private String url;
+    private RhapsodyConnectionPolicy policy;
+    private RhapsodyAsyncTestEngine engine;
+
+    @Before
+    public void setUp() throws IOException {
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.createContext("/api/test/", exchange -> {
+            sessions.add(String.valueOf(exchange.getRequestHeaders().getFirst("Cookie")));
+            String id = exchange.getRequestURI().getPath().substring("/api/test/".length());
+            exchange.getResponseHeaders().add("Location", url + "/api/status/" + id);
+            send(exchange, 202, "{}");
+        });
+        server.createContext("/api/status/", exchange -> {
+            polls.incrementAndGet();
+            if (unavailable.getAndDecrement() > 0) {
+                send(exchange, 503, "{}");
+                return;
+            }
+            String id = exchange.getRequestURI().getPath().substring("/api/status/".length());
+            AtomicInteger left = running.computeIfAbsent(id, k -> new AtomicInteger(3));
+            if (left.getAndDecrement() > 0) {
+                send(exchange, 200, "{\"state\":\"RUNNING\"}");
+            } else {
+                send(exchange, 200, "{\"state\":\"COMPLETED\",\"results\":[{\"path\":\"/" + id + "\",\"totalCount\":1}]}");
+            }
+        });
+        server.createContext("/api/components", exchange -> {
+            exchange.getResponseHeaders().add("Set-Cookie", "JSESSIONID=build; Path=/");
+            send(exchange, 200, "[]");
+        });
+        server.start();
+
+        url = "http://127.0.0.1:" + server.getAddress().getPort();
+        policy = new RhapsodyConnectionPolicy();
+        policy.setRetryBackoff(10);
+        engine = new RhapsodyAsyncTestEngine(url, "admin", "secret", policy, new ObjectMapper());
+        engine.setSchedule(new RhapsodyPollSchedule(Duration.ofMillis(10), Duration.ofMillis(10), 1, RhapsodyPollSchedule.DEFAULT_TIMEOUT));
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        engine.close();
+        server.stop(0);
+    }
+
+    @Test
+    public void testManyInFlight() throws Exception {
+        List<CompletableFuture<TestStatus>> futures = new ArrayList<>();
+        for (int i = 0; i < 50; i++) {
+            futures.add(engine.submit(component("c" + i)));
+        }
+
+        CompletableFuture.allOf(futures.toArray(new CompletableFuture[0])).get();
+        for (int i = 0; i < futures.size(); i++) {
+            TestStatus status = futures.get(i).get();
+            assertTrue(status.isCompleted());
+            assertEquals("/c" + i, status.getResults().get(0).get("path"));
+        }
+
+        assertEquals(0, engine.getInFlight());
+        assertEquals(50 * 4, polls.get());
+    }
+
+    @Test
+    public void testTimeout() throws Exception {
+        running.put("slow", new AtomicInteger(Integer.MAX_VALUE));
+        engine.setSchedule(new RhapsodyPollSchedule(Duration.ofMillis(10), Duration.ofMillis(10), 1, Duration.ofMillis(100)));
+
+        try {
+            engine.submit(component("slow")).get();
+            fail("Test should time out");
+        } catch (ExecutionException ex) {
+            assertTrue(ex.getCause() instanceof TimeoutException);
+        }
+
+        // No more polls once timed out
+        int count = polls.get();
+        Thread.sleep(100);
+        assertEquals(count, polls.get());
+        assertEquals(0, engine.getInFlight());
+    }
+
+    @Test
+    public void testBackoff() throws Exception {
+        RhapsodyPollSchedule schedule = new RhapsodyPollSchedule(Duration.ofMillis(10), Duration.ofMillis(40), 2, Duration.ofSeconds(5));
+
+        // Polls after 10, 10, 20 and 40 ms
+        TestStatus status = engine.submit(component("c1"), schedule).get();
+        assertEquals(4, status.getPollCount());
+        assertTrue(status.getDurationMillis() >= 80);
+        assertEquals(4, polls.get());
+    }
+
+    @Test
+    public void testRetryPolls() throws Exception {
+        RhapsodyCircuitBreaker breaker = RhapsodyCircuitBreaker.forServer(url, policy);
+
+        // Two failed polls, retried after a backoff
+        unavailable.set(2);
+        TestStatus status = engine.submit(component("c1")).get();
+        assertTrue(status.isCompleted());
+        assertEquals(6, polls.get());
+        assertEquals(RhapsodyCircuitBreaker.State.CLOSED, breaker.getState());
+
+        // Gives up after the retries of the policy
+        unavailable.set(100);
+        try {
+            engine.submit(component("c2")).get();
+            fail("Status should not be available");
+        } catch (ExecutionException ex) {
+            assertTrue(ex.getCause().getMessage().contains("503"));
+        }
+        assertEquals(6 + 1 + policy.getMaxRetries(), polls.get());
+        assertEquals(1, breaker.getFailures());
+        unavailable.set(0);
+    }
+
+    @Test
+    public void testSharedSession() throws Exception {
+        // Session of the build, started by the blocking client
+        HttpClient client = RhapsodyHttpClientRegistry.get().getClient(url, "admin", "secret", policy);
+        HttpResponse response = client.execute(new HttpGet(url + "/api/components"));
+        EntityUtils.consume(response.getEntity());
+
+        engine.submit(component("c1")).get();
+        assertEquals(Collections.singleton("JSESSIONID=build"), sessions);
+    }
+
+    private static Component component(String id) {
+        Map<String, String> data = new HashMap<>();
+        data.put("id", id);
+        data.put("name", "Route " + id);
+        return new Component(data, "/");
+    }
+
+    private static void send(HttpExchange exchange, int status, String body) throws IOException {
+        byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+        exchange.sendResponseHeaders(status, bytes.length);
+        exchange.getResponseBody().write(bytes);
+        exchange.close();
+    }
+}
@@ -0,0 +1,136 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2020 me.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.ahn.rhapsody.ci;
+
+import java.util.concurrent.atomic.AtomicLong;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import org.junit.Test;
+
+/**
+ *
+ * @author me
+ */
+public class RhapsodyCircuitBreakerTest {
+
+    @Test
+    public void testOpenAndClose() {
+        AtomicLong clock = new AtomicLong();
+        RhapsodyCircuitBreaker breaker = new RhapsodyCircuitBreaker("https://localhost:8444", 3, 1000, clock::get);
+
+        breaker.onFailure();
+        breaker.onFailure();
+        assertTrue(breaker.allowRequest());
+        assertEquals(RhapsodyCircuitBreaker.State.CLOSED, breaker.getState());
+
+        // A success resets the count
+        breaker.onSuccess();
+        breaker.onFailure();
+        breaker.onFailure();
+        assertEquals(RhapsodyCircuitBreaker.State.CLOSED, breaker.getState());
+
+        breaker.onFailure();
+        assertEquals(RhapsodyCircuitBreaker.State.OPEN, breaker.getState());
+        assertFalse(breaker.allowRequest());
+        assertTrue(breaker.describe().contains("OPEN"));
+
+        // A single trial once the open period is over
+        clock.set(1000);
+        assertEquals(RhapsodyCircuitBreaker.State.HALF_OPEN, breaker.getState());
+        assertTrue(breaker.allowRequest());
+        assertFalse(breaker.allowRequest());
+
+        // Failed trial opens the circuit again
+        breaker.onFailure();
+        assertEquals(RhapsodyCircuitBreaker.State.OPEN, breaker.getState());
+        assertFalse(breaker.allowRequest());
+
+        clock.set(2000);
+        assertTrue(breaker.allowRequest());
+        breaker.onSuccess();
+        assertEquals(RhapsodyCircuitBreaker.State.CLOSED, breaker.getState());
+        assertTrue(breaker.allowRequest());
+        assertTrue(breaker.allowRequest());
+    }
+
+    @Test
+    public void testDisabled() {
+        RhapsodyCircuitBreaker breaker = new RhapsodyCircuitBreaker("https://localhost:8444", 0, 1000, () -> 0);
+        for (int i = 0; i < 10; i++) {
+            breaker.onFailure();
+        }
+
+        assertTrue(breaker.allowRequest());
+        assertEquals(RhapsodyCircuitBreaker.State.CLOSED, breaker.getState());
+    }
+
+    @Test
+    public void testSharedPerServer() {
+        RhapsodyConnectionPolicy policy = new RhapsodyConnectionPolicy();
+        RhapsodyCircuitBreaker breaker = RhapsodyCircuitBreaker.forServer("https://localhost:8444", policy);
+        assertSame(breaker, RhapsodyCircuitBreaker.forServer("https://localhost:8444", new RhapsodyConnectionPolicy()));
+    }
+
+    @Test
+    public void testSharedAcrossPolicies() {
+        RhapsodyConnectionPolicy policy = new RhapsodyConnectionPolicy();
+        policy.setFailureThreshold(2);
+        RhapsodyCircuitBreaker breaker = RhapsodyCircuitBreaker.forServer("https://localhost:8447", policy);
+        RhapsodyCircuitBreaker other = RhapsodyCircuitBreaker.forServer("https://localhost:8447", new RhapsodyConnectionPolicy());
+
+        // Failures through either breaker count for the server
+        other.onFailure();
+        breaker.onFailure();
+        assertEquals(2, other.getFailures());
+        assertEquals(RhapsodyCircuitBreaker.State.OPEN, breaker.getState());
+        assertFalse(other.allowRequest());
+        other.onSuccess();
+        assertEquals(RhapsodyCircuitBreaker.State.CLOSED, breaker.getState());
+    }
+
+    @Test
+    public void testLostTrial() {
+        AtomicLong clock = new AtomicLong();
+        RhapsodyCircuitBreaker breaker = new RhapsodyCircuitBreaker("https://localhost:8444", 1, 1000, clock::get);
+        breaker.onFailure();
+
+        clock.set(1000);
+        assertTrue(breaker.allowRequest());
+        assertFalse(breaker.allowRequest());
+
+        // Cancelled trial
+        breaker.onCancel();
+        assertTrue(breaker.allowRequest());
+
+        // Trial never reporting back is replaced after the open period
+        clock.set(1500);
+        assertFalse(breaker.allowRequest());
+        clock.set(2000);
+        assertTrue(breaker.allowRequest());
+        breaker.onSuccess();
+        assertEquals(RhapsodyCircuitBreaker.State.CLOSED, breaker.getState());
+    }
+}
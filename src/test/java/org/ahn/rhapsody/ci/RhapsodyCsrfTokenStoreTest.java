@@ -0,0 +1,126 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2020 me.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.ahn.rhapsody.ci;
+
+import com.sun.net.httpserver.HttpServer;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.apache.http.HttpResponse;
+import org.apache.http.client.HttpClient;
+import org.apache.http.client.methods.HttpPost;
+import org.apache.http.util.EntityUtils;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import org.junit.Test;
+
+/**
+ *
+ * @author me
+ */
+public class RhapsodyCsrfTokenStoreTest {
+
+    @Test
+    public void testTokenPerServer() throws IOException {
+        CsrfServer first = new CsrfServer("first");
+        CsrfServer second = new CsrfServer("second");
+        RhapsodyHttpClientRegistry registry = new RhapsodyHttpClientRegistry();
+        try {
+            HttpClient firstClient = registry.getClient(first.url, "admin", "secret");
+            HttpClient secondClient = registry.getClient(second.url, "admin", "secret");
+
+            // First requests get the token, interleaved requests keep their own
+            for (int i = 0; i < 5; i++) {
+                assertEquals(202, post(firstClient, first.url));
+                assertEquals(202, post(secondClient, second.url));
+            }
+            // Token missing on the first request only
+            assertEquals(6, first.requests.get());
+            assertEquals(6, second.requests.get());
+
+            // Rotated token is retried once
+            first.token = "first-rotated";
+            assertEquals(202, post(firstClient, first.url));
+            assertEquals(8, first.requests.get());
+            assertEquals(202, post(firstClient, first.url));
+            assertEquals(9, first.requests.get());
+        } finally {
+            registry.shutdown();
+            first.server.stop(0);
+            second.server.stop(0);
+        }
+    }
+
+    @Test
+    public void testOldSessionsDropped() {
+        RhapsodyCsrfTokenStore store = new RhapsodyCsrfTokenStore(3);
+        for (int i = 0; i < 10; i++) {
+            store.putToken("https://localhost:8444|session-" + i, "token-" + i);
+            // In use all along
+            assertEquals("token-0", store.getToken("https://localhost:8444|session-0"));
+        }
+
+        assertEquals(3, store.size());
+        assertEquals("token-0", store.getToken("https://localhost:8444|session-0"));
+        assertEquals("token-9", store.getToken("https://localhost:8444|session-9"));
+        assertNull(store.getToken("https://localhost:8444|session-7"));
+
+        // Replaced token is kept
+        store.invalidate("https://localhost:8444|session-9", "token-8");
+        assertEquals("token-9", store.getToken("https://localhost:8444|session-9"));
+        store.invalidate("https://localhost:8444|session-9", "token-9");
+        assertNull(store.getToken("https://localhost:8444|session-9"));
+    }
+
+    private int post(HttpClient client, String url) throws IOException {
+        HttpResponse response = client.execute(new HttpPost(url + "/api/test/1"));
+        EntityUtils.consume(response.getEntity());
+        return response.getStatusLine().getStatusCode();
+    }
+
+    static class CsrfServer {
+
+        final HttpServer server;
+        final String url;
+        final AtomicInteger requests = new AtomicInteger();
+        volatile String token;
+
+        CsrfServer(String token) throws IOException {
+            this.token = token;
+            this.server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+            server.createContext("/", exchange -> {
+                requests.incrementAndGet();
+                String sent = exchange.getRequestHeaders().getFirst(RhapsodyCsrfTokenStore.HEADER);
+                exchange.getResponseHeaders().add(RhapsodyCsrfTokenStore.HEADER, this.token);
+                byte[] body = "{}".getBytes(StandardCharsets.UTF_8);
+                exchange.sendResponseHeaders(this.token.equals(sent) ? 202 : 403, body.length);
+                exchange.getResponseBody().write(body);
+                exchange.close();
+            });
+            server.start();
+            this.url = "http://127.0.0.1:" + server.getAddress().getPort();
+        }
+    }
+}
@@ -0,0 +1,110 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2020 me.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.ahn.rhapsody.ci;
+
+import com.sun.net.httpserver.HttpServer;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.apache.http.HttpResponse;
+import org.apache.http.client.HttpClient;
+import org.apache.http.client.methods.HttpGet;
+import org.apache.http.util.EntityUtils;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import org.junit.Test;
+
+/**
+ *
+ * @author me
+ */
+public class RhapsodyHttpClientRegistryTest {
+
+    @Test
+    public void testSharedClients() {
+        RhapsodyHttpClientRegistry registry = new RhapsodyHttpClientRegistry();
+        try {
+            HttpClient client = registry.getClient("https://localhost:8444", "admin", "secret");
+            assertSame(client, registry.getClient("https://localhost:8444", "admin", "secret"));
+
+            // Different server or credentials get their own client
+            assertNotSame(client, registry.getClient("https://remotehost:8444", "admin", "secret"));
+            assertNotSame(client, registry.getClient("https://localhost:8444", "admin", "changed"));
+            assertEquals(3, registry.size());
+        } finally {
+            registry.shutdown();
+        }
+
+        assertEquals(0, registry.size());
+    }
+
+    @Test
+    public void testPreemptiveAuthentication() throws IOException {
+        AtomicInteger challenges = new AtomicInteger();
+        AtomicInteger sessions = new AtomicInteger();
+        String authorization = "Basic " + Base64.getEncoder().encodeToString("admin:secret".getBytes(StandardCharsets.UTF_8));
+
+        HttpServer server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.createContext("/", exchange -> {
+            byte[] body = "{}".getBytes(StandardCharsets.UTF_8);
+            if (!authorization.equals(exchange.getRequestHeaders().getFirst("Authorization"))) {
+                challenges.incrementAndGet();
+                exchange.getResponseHeaders().add("WWW-Authenticate", "Basic realm=\"Rhapsody\"");
+                exchange.sendResponseHeaders(401, body.length);
+            } else {
+                String cookie = exchange.getRequestHeaders().getFirst("Cookie");
+                if (cookie == null || !cookie.contains("JSESSIONID=")) {
+                    exchange.getResponseHeaders().add("Set-Cookie", "JSESSIONID=" + sessions.incrementAndGet() + "; Path=/");
+                }
+                exchange.sendResponseHeaders(200, body.length);
+            }
+            exchange.getResponseBody().write(body);
+            exchange.close();
+        });
+        server.start();
+
+        String url = "http://127.0.0.1:" + server.getAddress().getPort();
+        RhapsodyHttpClientRegistry registry = new RhapsodyHttpClientRegistry();
+        try {
+            // Two builds in a row
+            for (int build = 0; build < 2; build++) {
+                HttpClient client = registry.getClient(url, "admin", "secret");
+                for (int i = 0; i < 5; i++) {
+                    HttpResponse response = client.execute(new HttpGet(url + "/api/components"));
+                    EntityUtils.consume(response.getEntity());
+                    assertEquals(200, response.getStatusLine().getStatusCode());
+                }
+            }
+
+            assertEquals(0, challenges.get());
+            assertEquals(1, sessions.get());
+        } finally {
+            registry.shutdown();
+            server.stop(0);
+        }
+    }
+}
@@ -0,0 +1,63 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2020 me.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.ahn.rhapsody.ci;
+
+import java.time.Duration;
+import static org.junit.Assert.assertEquals;
+import org.junit.Test;
+
+/**
+ *
+ * @author me
+ */
+public class RhapsodyPollScheduleTest {
+
+    @Test
+    public void testBackoff() {
+        RhapsodyPollSchedule schedule = new RhapsodyPollSchedule(Duration.ofMillis(200), Duration.ofSeconds(1), 2, Duration.ofSeconds(5));
+
+        assertEquals(200, schedule.delay(0));
+        assertEquals(200, schedule.delay(1));
+        assertEquals(400, schedule.delay(2));
+        assertEquals(800, schedule.delay(3));
+        assertEquals(1000, schedule.delay(4));
+        assertEquals(1000, schedule.delay(100));
+    }
+
+    @Test
+    public void testExpect() {
+        RhapsodyPollSchedule schedule = new RhapsodyPollSchedule(Duration.ofMillis(200), Duration.ofSeconds(1), 2, Duration.ofSeconds(5));
+
+        // Long test: first poll near its end, deadline extended
+        RhapsodyPollSchedule slow = schedule.expect(Duration.ofSeconds(10));
+        assertEquals(8000, slow.delay(0));
+        assertEquals(200, slow.delay(1));
+        assertEquals(Duration.ofSeconds(30), slow.getTimeout());
+
+        // Quick test: configured schedule
+        RhapsodyPollSchedule quick = schedule.expect(Duration.ofMillis(100));
+        assertEquals(200, quick.delay(0));
+        assertEquals(Duration.ofSeconds(5), quick.getTimeout());
+    }
+}
@@ -0,0 +1,135 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2020 me.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.ahn.rhapsody.ci;
+
+import com.sun.net.httpserver.HttpServer;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.apache.http.HttpResponse;
+import org.apache.http.client.HttpClient;
+import org.apache.http.client.methods.HttpGet;
+import org.apache.http.client.methods.HttpPost;
+import org.apache.http.client.methods.HttpUriRequest;
+import org.apache.http.util.EntityUtils;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ *
+ * @author me
+ */
+public class RhapsodyRetryHandlerTest {
+
+    private final AtomicInteger requests = new AtomicInteger();
+    // Requests answered with 503 before the server recovers
+    private final AtomicInteger unavailable = new AtomicInteger();
+
+    private HttpServer server;
+    private String url;
+    private RhapsodyHttpClientRegistry registry;
+    private RhapsodyConnectionPolicy policy;
+
+    @Before
+    public void setUp() throws IOException {
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.createContext("/", exchange -> {
+            requests.incrementAndGet();
+            byte[] body = "{}".getBytes(StandardCharsets.UTF_8);
+            exchange.sendResponseHeaders(unavailable.getAndDecrement() > 0 ? 503 : 200, body.length);
+            exchange.getResponseBody().write(body);
+            exchange.close();
+        });
+        server.start();
+
+        url = "http://127.0.0.1:" + server.getAddress().getPort();
+        registry = new RhapsodyHttpClientRegistry();
+
+        policy = new RhapsodyConnectionPolicy();
+        policy.setRetryBackoff(10);
+        policy.setMaxRetries(3);
+        policy.setFailureThreshold(5);
+    }
+
+    @After
+    public void tearDown() {
+        registry.shutdown();
+        server.stop(0);
+    }
+
+    @Test
+    public void testRetryIdempotentRequests() throws IOException {
+        HttpClient client = registry.getClient(url, "admin", "secret", policy);
+
+        unavailable.set(2);
+        assertEquals(200, execute(client, new HttpGet(url + "/api/test/1")));
+        assertEquals(3, requests.get());
+
+        // Not retried
+        unavailable.set(2);
+        requests.set(0);
+        assertEquals(503, execute(client, new HttpPost(url + "/api/test/1")));
+        assertEquals(1, requests.get());
+    }
+
+    @Test
+    public void testCircuitBreaker() throws IOException {
+        HttpClient client = registry.getClient(url, "admin", "secret", policy);
+        RhapsodyCircuitBreaker breaker = RhapsodyCircuitBreaker.forServer(url, policy);
+
+        // 4 attempts per request, counted as a single failure
+        unavailable.set(100);
+        for (int i = 1; i < 5; i++) {
+            assertEquals(503, execute(client, new HttpGet(url + "/api/components")));
+            assertEquals(4 * i, requests.get());
+            assertEquals(i, breaker.getFailures());
+            assertEquals(RhapsodyCircuitBreaker.State.CLOSED, breaker.getState());
+        }
+
+        // The circuit opens on the first attempt of the fifth, not retried
+        assertEquals(503, execute(client, new HttpGet(url + "/api/components")));
+        assertEquals(17, requests.get());
+        assertEquals(RhapsodyCircuitBreaker.State.OPEN, breaker.getState());
+
+        // Fails fast without reaching the server
+        try {
+            execute(client, new HttpGet(url + "/api/components"));
+            fail("Circuit should be open");
+        } catch (RhapsodyCircuitBreaker.CircuitOpenException ex) {
+            assertTrue(ex.getMessage().contains("OPEN"));
+        }
+        assertEquals(17, requests.get());
+    }
+
+    private int execute(HttpClient client, HttpUriRequest request) throws IOException {
+        HttpResponse response = client.execute(request);
+        EntityUtils.consume(response.getEntity());
+        return response.getStatusLine().getStatusCode();
+    }
+}
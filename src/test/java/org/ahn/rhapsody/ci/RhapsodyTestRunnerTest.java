@@ -0,0 +1,243 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2020 me.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.ahn.rhapsody.ci;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.ahn.rhapsody.ci.model.Component;
+import org.ahn.rhapsody.ci.model.TestStatus;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ *
+ * @author me
+ */
+public class RhapsodyTestRunnerTest {
+
+    // Tests started and not reported as completed yet
+    private final Set<String> running = ConcurrentHashMap.newKeySet();
+    private final Map<String, AtomicInteger> polls = new ConcurrentHashMap<>();
+    private final AtomicInteger maxRunning = new AtomicInteger();
+    private final AtomicInteger pushBacks = new AtomicInteger();
+    // Tests the server accepts at the same time
+    private volatile int serverLimit = Integer.MAX_VALUE;
+    private volatile int pushBackStatus = 429;
+    // Submission times of every test
+    private final Map<String, List<Long>> submissions = new ConcurrentHashMap<>();
+
+    private HttpServer server;
+    private String url;
+    private RhapsodyAsyncTestEngine engine;
+
+    @Before
+    public void setUp() throws IOException {
+        server = start(3);
+        url = url(server);
+        engine = engine(url);
+    }
+
+    private HttpServer start(int pollsToComplete) throws IOException {
+        HttpServer server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        String url = url(server);
+        server.createContext("/api/test/", exchange -> {
+            String id = exchange.getRequestURI().getPath().substring("/api/test/".length());
+            submissions.computeIfAbsent(id, k -> Collections.synchronizedList(new ArrayList<>())).add(System.nanoTime());
+            synchronized (running) {
+                if (running.size() >= serverLimit) {
+                    pushBacks.incrementAndGet();
+                    send(exchange, pushBackStatus, "{}");
+                    return;
+                }
+                running.add(id);
+                maxRunning.accumulateAndGet(running.size(), Math::max);
+            }
+            exchange.getResponseHeaders().add("Location", url + "/api/status/" + id);
+            send(exchange, 202, "{}");
+        });
+        server.createContext("/api/status/", exchange -> {
+            String id = exchange.getRequestURI().getPath().substring("/api/status/".length());
+            if (polls.computeIfAbsent(id, k -> new AtomicInteger()).incrementAndGet() < pollsToComplete) {
+                send(exchange, 200, "{\"state\":\"RUNNING\"}");
+            } else {
+                running.remove(id);
+                send(exchange, 200, "{\"state\":\"COMPLETED\",\"results\":[{\"path\":\"/" + id + "\"}]}");
+            }
+        });
+        server.start();
+        return server;
+    }
+
+    private static String url(HttpServer server) {
+        return "http://127.0.0.1:" + server.getAddress().getPort();
+    }
+
+    private static RhapsodyAsyncTestEngine engine(String url) {
+        RhapsodyAsyncTestEngine engine = new RhapsodyAsyncTestEngine(url, "admin", "secret", new RhapsodyConnectionPolicy(), new ObjectMapper());
+        engine.setSchedule(new RhapsodyPollSchedule(Duration.ofMillis(10), Duration.ofMillis(10), 1, RhapsodyPollSchedule.DEFAULT_TIMEOUT));
+        return engine;
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        engine.close();
+        server.stop(0);
+    }
+
+    @Test
+    public void testConcurrency() throws Exception {
+        RhapsodyTestRunner runner = new RhapsodyTestRunner(engine, 4, new PrintStream(new ByteArrayOutputStream()));
+        assertOrdered(runner.run(components(20)));
+
+        assertEquals(4, maxRunning.get());
+        assertEquals(4, runner.getConcurrency());
+    }
+
+    @Test
+    public void testPipelined() throws Exception {
+        RhapsodyTestRunner runner = new RhapsodyTestRunner(engine, 1, new PrintStream(new ByteArrayOutputStream()));
+        runner.setPipelined(true);
+        assertOrdered(runner.run(components(20)));
+
+        // Next test submitted while the previous one runs
+        assertEquals(2, maxRunning.get());
+        assertEquals(1, runner.getConcurrency());
+    }
+
+    @Test
+    public void testFallBackToSerial() throws Exception {
+        serverLimit = 1;
+        ByteArrayOutputStream log = new ByteArrayOutputStream();
+        RhapsodyTestRunner runner = new RhapsodyTestRunner(engine, 4, new PrintStream(log, true));
+        runner.setPushBackDelay(10);
+
+        assertOrdered(runner.run(components(20)));
+
+        assertEquals(1, runner.getConcurrency());
+        assertEquals(1, maxRunning.get());
+        assertTrue(pushBacks.get() > 0);
+        // Serial once fallen back: no push back beyond the first tests
+        assertTrue(pushBacks.get() <= 3);
+        assertTrue(log.toString().contains("one component at a time"));
+    }
+
+    @Test
+    public void testServiceUnavailable() throws Exception {
+        // Server busy with another job: every first submission is refused
+        serverLimit = 1;
+        pushBackStatus = 503;
+        running.add("other");
+        RhapsodyTestRunner runner = new RhapsodyTestRunner(engine, 5, new PrintStream(new ByteArrayOutputStream()));
+        runner.setPushBackDelay(100);
+        engine.schedule(() -> running.remove("other"), 50);
+
+        // Busy, not failing: the burst of 503 does not open the circuit
+        assertOrdered(runner.run(components(10)));
+        assertEquals(5, pushBacks.get());
+        RhapsodyCircuitBreaker breaker = RhapsodyCircuitBreaker.forServer(url, new RhapsodyConnectionPolicy());
+        assertEquals(RhapsodyCircuitBreaker.State.CLOSED, breaker.getState());
+    }
+
+    @Test
+    public void testPushBackDelay() throws Exception {
+        serverLimit = 1;
+        RhapsodyTestRunner runner = new RhapsodyTestRunner(engine, 5, new PrintStream(new ByteArrayOutputStream()));
+        runner.setPushBackDelay(500);
+
+        assertOrdered(runner.run(components(6)));
+
+        // Refused tests wait for the delay, even when the accepted one completes in between
+        assertEquals(4, pushBacks.get());
+        for (List<Long> times : submissions.values()) {
+            for (int i = 1; i < times.size(); i++) {
+                assertTrue(times.get(i) - times.get(i - 1) >= TimeUnit.MILLISECONDS.toNanos(500 * i));
+            }
+        }
+    }
+
+    @Test
+    public void testWorkStealing() throws Exception {
+        HttpServer slowServer = start(30);
+        RhapsodyAsyncTestEngine slowEngine = engine(url(slowServer));
+        try {
+            RhapsodyTestRunner runner = new RhapsodyTestRunner(Arrays.asList(engine, slowEngine), 2,
+                    new PrintStream(new ByteArrayOutputStream()));
+            assertOrdered(runner.run(components(40)));
+
+            // Dealt evenly, the fast instance takes over the queue of the slow one
+            Map<String, Integer> completed = runner.getCompleted();
+            assertEquals(40, completed.get(url) + completed.get(url(slowServer)));
+            assertTrue(completed.get(url) > 30);
+            assertEquals(4, maxRunning.get());
+        } finally {
+            slowEngine.close();
+            slowServer.stop(0);
+        }
+    }
+
+    private void assertOrdered(List<CompletableFuture<TestStatus>> tests) throws Exception {
+        CompletableFuture.allOf(tests.toArray(new CompletableFuture[0])).get();
+        for (int i = 0; i < tests.size(); i++) {
+            assertEquals("/c" + i, tests.get(i).get().getResults().get(0).get("path"));
+        }
+    }
+
+    private static List<Component> components(int count) {
+        List<Component> components = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            Map<String, String> data = new HashMap<>();
+            data.put("id", "c" + i);
+            components.add(new Component(data, "/"));
+        }
+        return components;
+    }
+
+    private static void send(HttpExchange exchange, int status, String body) throws IOException {
+        byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+        exchange.sendResponseHeaders(status, bytes.length);
+        exchange.getResponseBody().write(bytes);
+        exchange.close();
+    }
+}
@@ -0,0 +1,130 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2020 me.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.ahn.rhapsody.ci.build;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import org.ahn.rhapsody.ci.model.Component;
+import org.ahn.rhapsody.ci.model.ComponentReader;
+import org.ahn.rhapsody.ci.model.Route;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * Route discovery and filtering on a synthetic components export
+ *
+ * @author me
+ */
+@State(Scope.Benchmark)
+public class RhapsodyBuilderBenchmark {
+
+    private static final int ROUTES_PER_FOLDER = 50;
+    private static final int FOLDERS_PER_FOLDER = 10;
+    private static final int FILTERS_PER_ROUTE = 5;
+
+    @Param({"10000", "100000"})
+    public int routes;
+
+    private final ObjectMapper mapper = new ObjectMapper();
+    private final ComponentReader reader = new ComponentReader(mapper.getFactory());
+    private RhapsodyBuilder builder;
+    private byte[] export;
+    private List<Route> allRoutes;
+    private int created = 0;
+
+    @Setup
+    public void setUp() throws IOException {
+        builder = new RhapsodyBuilder("", "", true);
+        export = mapper.writeValueAsBytes(Collections.singletonMap("data", folder("root", 0)));
+        allRoutes = reader.read(new ByteArrayInputStream(export));
+    }
+
+    private Map folder(String name, int depth) {
+        Map<String, Object> folder = new HashMap<>();
+        folder.put("name", name);
+
+        List<Map> children = new ArrayList<>();
+        for (int i = 0; i < ROUTES_PER_FOLDER && created < routes; i++) {
+            children.add(route(created++));
+        }
+        folder.put("childComponents", children);
+
+        List<Map> folders = new ArrayList<>();
+        for (int i = 0; i < FOLDERS_PER_FOLDER && created < routes; i++) {
+            folders.add(folder(name + "-" + i, depth + 1));
+        }
+        folder.put("childFolders", folders);
+
+        return folder;
+    }
+
+    private Map route(int id) {
+        Map<String, Object> route = new HashMap<>();
+        route.put("id", Integer.toString(id));
+        route.put("name", (id % 3 == 0 ? "ADT Route " : "Lab Route ") + id);
+        route.put("type", "ROUTE");
+
+        List<Map> filters = new ArrayList<>();
+        for (int i = 0; i < FILTERS_PER_ROUTE; i++) {
+            Map<String, Object> filter = new HashMap<>();
+            filter.put("id", id + "-" + i);
+            filter.put("name", "Filter " + i);
+            filter.put("type", "FILTER");
+            filters.add(filter);
+        }
+        route.put("childComponents", filters);
+
+        return route;
+    }
+
+    @Benchmark
+    public Map readTree() throws IOException {
+        // Whole configuration tree, as read before the streaming reader
+        return mapper.readValue(new ByteArrayInputStream(export), Map.class);
+    }
+
+    @Benchmark
+    public List<Route> readRoutes() throws IOException {
+        return reader.read(new ByteArrayInputStream(export));
+    }
+
+    @Benchmark
+    public List<Component> filterRoutes() {
+        return builder.filterComponentsToTest(allRoutes, "ADT*\nLab Route 1*", "");
+    }
+
+    @Benchmark
+    public List<Component> filterFilters() {
+        return builder.filterComponentsToTest(allRoutes, "ADT*", "Filter 1\nFilter [34]");
+    }
+}
@@ -25,8 +25,11 @@ package org.ahn.rhapsody.ci.build;
 
 import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.function.Predicate;
+import org.ahn.rhapsody.ci.RhapsodyPollSchedule;
 import org.ahn.rhapsody.ci.model.Component;
 import org.ahn.rhapsody.ci.model.Filter;
 import org.ahn.rhapsody.ci.model.Route;
@@ -93,4 +96,61 @@ public class RhapsodyBuilderTest {
         }
     }
 
+    @Test
+    public void testReadResolve() {
+        // Loaded from a configuration saved before the poll settings existed
+        RhapsodyBuilder builder = new RhapsodyBuilder("*", "", true);
+        builder.setTestTimeout(0);
+        builder.setPollInterval(0);
+        builder.setMaxPollInterval(0);
+
+        assertSame(builder, builder.readResolve());
+        assertEquals(1, builder.getConcurrency());
+        assertEquals(RhapsodyPollSchedule.DEFAULT_TIMEOUT.getSeconds(), builder.getTestTimeout());
+        assertEquals(RhapsodyPollSchedule.DEFAULT_INITIAL_DELAY.toMillis(), builder.getPollInterval());
+        assertEquals(RhapsodyPollSchedule.DEFAULT_MAX_DELAY.toMillis(), builder.getMaxPollInterval());
+    }
+
+    @Test
+    public void testFolderPatterns() {
+        RhapsodyBuilder builder = new RhapsodyBuilder("", "", true);
+        List<Route> routes = new ArrayList<>();
+        for (String folder : new String[]{"", "Integration", "Integration/ADT", "Integration/ADT/Inbound", "Billing"}) {
+            Map<String, String> data = new HashMap<>();
+            data.put("name", "ADT Route");
+            routes.add(new Route(data, folder));
+        }
+
+        // Route names match in any folder
+        assertEquals(5, builder.filterComponentsToTest(routes, "ADT*", "").size());
+        assertNull(RhapsodyBuilder.getFolderFilter("ADT*\nIntegration/ADT/**"));
+
+        // Paths only below the folder
+        assertEquals(2, builder.filterComponentsToTest(routes, "Integration/ADT/**", "").size());
+        assertEquals(1, builder.filterComponentsToTest(routes, "billing/*", "").size());
+
+        Predicate<String> folders = RhapsodyBuilder.getFolderFilter("Integration/ADT/**\n\nBilling/ADT*");
+        assertTrue(folders.test("Integration"));
+        assertTrue(folders.test("integration/adt"));
+        assertTrue(folders.test("Integration/ADT/Inbound"));
+        assertTrue(folders.test("Billing"));
+        assertFalse(folders.test("Integration/ADTX"));
+        assertFalse(folders.test("Billing/Old"));
+        assertFalse(folders.test("Labs"));
+
+        // Components selected by each pattern
+        Map<String, Integer> matches = new LinkedHashMap<>();
+        builder.filterComponentsToTest(routes, "Integration/ADT/**\nBilling/*\nLabs/*", "", matches);
+        assertEquals("{Integration/ADT/**=2, Billing/*=1, Labs/*=0}", matches.toString());
+        assertSame(builder.getMatcher("ADT*"), builder.getMatcher("ADT*"));
+
+        // * stays in the folder
+        assertEquals(1, builder.filterComponentsToTest(routes, "Integration/*", "").size());
+        assertEquals(3, builder.filterComponentsToTest(routes, "Integration/**", "").size());
+
+        // Folders below any first folder
+        assertTrue(RhapsodyBuilder.getFolderFilter("*/ADT/**").test("Labs"));
+        assertFalse(RhapsodyBuilder.getFolderFilter("*/ADT/**").test("Labs/Old"));
+    }
+
 }
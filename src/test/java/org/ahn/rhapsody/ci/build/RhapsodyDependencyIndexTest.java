@@ -0,0 +1,136 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2020 me.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.ahn.rhapsody.ci.build;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import java.io.ByteArrayInputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import org.ahn.rhapsody.ci.model.ComponentReader;
+import org.ahn.rhapsody.ci.model.Route;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import org.junit.Test;
+
+/**
+ *
+ * @author me
+ */
+public class RhapsodyDependencyIndexTest {
+
+    @Test
+    public void testIndex() throws Exception {
+        RhapsodyDependencyIndex index = RhapsodyDependencyIndex.of(routes(tree()));
+        assertEquals(3, index.size());
+
+        assertEquals(new HashSet<>(Arrays.asList("1", "2")), index.getRoutes(RhapsodyDependencyIndex.DEFINITION, "Patient"));
+        assertEquals(Collections.singleton("2"), index.getRoutes(RhapsodyDependencyIndex.DEFINITION, "Order"));
+        assertEquals(Collections.singleton("1"), index.getRoutes(RhapsodyDependencyIndex.COMMUNICATION_POINT, "ADT In"));
+        assertEquals(Collections.singleton("3"), index.getRoutes(RhapsodyDependencyIndex.COMMUNICATION_POINT, "Lab Out"));
+        assertTrue(index.getRoutes(RhapsodyDependencyIndex.DEFINITION, "Unknown").isEmpty());
+    }
+
+    @Test
+    public void testSaveLoad() throws Exception {
+        Path file = Files.createTempFile("rh-dependencies-", ".idx");
+        RhapsodyDependencyIndex loaded;
+        try {
+            RhapsodyDependencyIndex.of(routes(tree())).save(file.toFile());
+            loaded = RhapsodyDependencyIndex.load(file.toFile());
+        } finally {
+            Files.deleteIfExists(file);
+        }
+
+        assertEquals(3, loaded.size());
+        assertEquals(Arrays.asList("definition:Patient", "communication-point:ADT In").toString(), loaded.getReferences("1").toString());
+        assertEquals(new HashSet<>(Arrays.asList("1", "2")), loaded.getRoutes(RhapsodyDependencyIndex.DEFINITION, "Patient"));
+    }
+
+    @Test
+    public void testModifiedFilter() throws Exception {
+        // Route 2 now uses Visit instead of Order, its name and path are the same
+        Map tree = tree();
+        Map route = (Map) ((List) ((Map) ((List) tree.get("childFolders")).get(0)).get("childComponents")).get(0);
+        ((Map) ((List) route.get("childComponents")).get(0)).put("definitions", Arrays.asList("Visit"));
+
+        RhapsodyDependencyIndex index = RhapsodyDependencyIndex.of(routes(tree));
+        assertEquals(3, index.size());
+        assertTrue(index.getRoutes(RhapsodyDependencyIndex.DEFINITION, "Order").isEmpty());
+        assertEquals(Collections.singleton("2"), index.getRoutes(RhapsodyDependencyIndex.DEFINITION, "Visit"));
+        assertEquals(Collections.singleton("1"), index.getRoutes(RhapsodyDependencyIndex.COMMUNICATION_POINT, "ADT In"));
+    }
+
+    private static List<Route> routes(Map tree) throws Exception {
+        ObjectMapper mapper = new ObjectMapper();
+        byte[] export = mapper.writeValueAsBytes(Collections.singletonMap("data", tree));
+        return new ComponentReader().read(new ByteArrayInputStream(export));
+    }
+
+    private static Map tree() {
+        Map<String, Object> orders = folder("Orders",
+                route("2", filter("Order", "Patient")));
+        Map<String, Object> root = folder("",
+                route("1", filter("Patient"), component("ADT In", "COMMUNICATION_POINT")),
+                route("3"));
+        // Listed on the route itself
+        ((Map) ((List) root.get("childComponents")).get(1)).put("communicationPoints",
+                Arrays.asList(Collections.singletonMap("name", "Lab Out")));
+        root.put("childFolders", new ArrayList<>(Arrays.asList(orders)));
+        return root;
+    }
+
+    private static Map<String, Object> folder(String name, Map... routes) {
+        Map<String, Object> folder = new HashMap<>();
+        folder.put("name", name);
+        folder.put("childComponents", new ArrayList<>(Arrays.asList(routes)));
+        return folder;
+    }
+
+    private static Map<String, Object> route(String id, Map... children) {
+        Map<String, Object> route = component("Route " + id, "ROUTE");
+        route.put("id", id);
+        route.put("childComponents", new ArrayList<>(Arrays.asList(children)));
+        return route;
+    }
+
+    private static Map<String, Object> filter(String... definitions) {
+        Map<String, Object> filter = component("Filter", "FILTER");
+        filter.put("definitions", new ArrayList<>(Arrays.asList(definitions)));
+        return filter;
+    }
+
+    private static Map<String, Object> component(String name, String type) {
+        Map<String, Object> component = new HashMap<>();
+        component.put("name", name);
+        component.put("type", type);
+        return component;
+    }
+}
@@ -0,0 +1,201 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2020 me.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.ahn.rhapsody.ci.build;
+
+import hudson.model.AbstractBuild;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import org.ahn.rhapsody.ci.json.TestCase;
+import org.ahn.rhapsody.ci.json.TestComponent;
+import org.ahn.rhapsody.ci.json.TestSuite;
+import org.ahn.rhapsody.ci.model.Filter;
+import org.ahn.rhapsody.ci.model.Route;
+import org.ahn.rhapsody.ci.scm.RhapsodyChangeLogSet;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertTrue;
+import org.junit.Test;
+import org.mockito.Mockito;
+
+/**
+ *
+ * @author me
+ */
+public class RhapsodyImpactAnalysisTest {
+
+    @Test
+    public void testImpacted() {
+        RhapsodyImpactAnalysis analysis = new RhapsodyImpactAnalysis();
+        assertFalse(analysis.hasPreviousResults());
+
+        TestComponent failed = result("3");
+        failed.setFailedCount(1);
+        analysis.setPreviousSuite(new TestSuite()
+                .addComponent(result("1"))
+                .addComponent(result("2"))
+                .addComponent(failed)
+                .addComponent(result("4"))
+                .addComponent(result("5")), 7);
+        assertTrue(analysis.hasPreviousResults());
+
+        analysis.addChangedRoute("Route 1");
+        analysis.addChangedRoute(" Orders/Route 2 ");
+
+        // Modified, by name and by path
+        assertTrue(analysis.isImpacted(route("1", "Orders")));
+        assertTrue(analysis.isImpacted(route("2", "Orders")));
+        assertFalse(analysis.isImpacted(route("2", "Billing")));
+        // Failed in the previous build
+        assertTrue(analysis.isImpacted(route("3", "Orders")));
+        // No previous result
+        assertTrue(analysis.isImpacted(route("6", "Orders")));
+        // Filters follow their route
+        assertTrue(analysis.isImpacted(new Filter(route("1", "Orders"), data("4"))));
+        assertFalse(analysis.isImpacted(new Filter(route("5", "Orders"), data("5"))));
+    }
+
+    @Test
+    public void testEmptyResults() {
+        RhapsodyImpactAnalysis analysis = new RhapsodyImpactAnalysis();
+        TestComponent empty = result("2");
+        empty.setError("Empty results are not allowed");
+        analysis.setPreviousSuite(new TestSuite()
+                .addComponent(result("1").addTest(new TestCase()))
+                .addComponent(empty)
+                .addComponent(result("3")), 7);
+
+        // Failed the build
+        assertTrue(analysis.isImpacted(route("2", "Orders")));
+        // Passed the build when empty results were allowed
+        assertFalse(analysis.isImpacted(route("3", "Orders")));
+
+        // Saved without an error by the previous versions
+        analysis.setAllowEmptyResults(false);
+        assertFalse(analysis.isImpacted(route("1", "Orders")));
+        assertTrue(analysis.isImpacted(route("3", "Orders")));
+    }
+
+    @Test
+    public void testDependentRoutes() {
+        RhapsodyImpactAnalysis analysis = new RhapsodyImpactAnalysis();
+        analysis.setPreviousSuite(new TestSuite()
+                .addComponent(result("1"))
+                .addComponent(result("2")), 7);
+        analysis.addOtherChange(RhapsodyDependencyIndex.DEFINITION, "Patient");
+        analysis.addOtherChange(RhapsodyDependencyIndex.COMMUNICATION_POINT, "Lab Out");
+
+        // Not mapped without an index
+        assertFalse(analysis.isImpacted(route("1", "Orders")));
+        assertEquals(2, analysis.getUnresolvedChanges().size());
+
+        RhapsodyDependencyIndex index = new RhapsodyDependencyIndex();
+        index.add("1", Collections.singleton("definition:Patient"));
+        index.add("2", Collections.singleton("definition:Order"));
+        analysis.setDependencyIndex(index);
+
+        assertTrue(analysis.isImpacted(route("1", "Orders")));
+        assertFalse(analysis.isImpacted(route("2", "Orders")));
+        assertFalse(analysis.isModified(route("1", "Orders")));
+        assertEquals(Collections.singleton("communication-point Lab Out"), analysis.getUnresolvedChanges());
+    }
+
+    @Test
+    public void testChangesSincePreviousSuite() {
+        RhapsodyBuildAction action = new RhapsodyBuildAction(2, 0, 0, 2);
+        action.setTestSuite(new TestSuite()
+                .addComponent(result("1"))
+                .addComponent(result("2"))
+                .addComponent(result("3")));
+        AbstractBuild tested = build(7, null, action);
+        // Failed before the tests
+        AbstractBuild failed = build(8, tested, null, "Route 1");
+        AbstractBuild build = build(9, failed, null, "Route 2");
+
+        RhapsodyImpactAnalysis analysis = RhapsodyImpactAnalysis.load(build);
+        assertEquals(new HashSet<>(Arrays.asList("Route 1", "Route 2")), analysis.getChangedRoutes());
+        assertTrue(analysis.isImpacted(route("1", "Orders")));
+        assertTrue(analysis.isImpacted(route("2", "Orders")));
+        assertFalse(analysis.isImpacted(route("3", "Orders")));
+        assertEquals(7, analysis.carryForward(route("3", "Orders")).getCarriedFrom());
+    }
+
+    @Test
+    public void testCarryForward() {
+        RhapsodyImpactAnalysis analysis = new RhapsodyImpactAnalysis();
+        TestComponent tested = result("1");
+        analysis.setPreviousSuite(new TestSuite().addComponent(tested), 7);
+
+        TestComponent carried = analysis.carryForward(route("1", "Orders"));
+        assertEquals(7, carried.getCarriedFrom());
+        assertEquals("1", carried.getTestedComponentId());
+        // The result of the previous build is left as it was
+        assertNotSame(tested, carried);
+        assertEquals(0, tested.getCarriedFrom());
+
+        // Keeps the build which actually ran the test
+        analysis.setPreviousSuite(new TestSuite().addComponent(carried), 8);
+        assertEquals(7, analysis.carryForward(route("1", "Orders")).getCarriedFrom());
+    }
+
+    private static TestComponent result(String id) {
+        TestComponent result = new TestComponent(id, "Route " + id, "/");
+        result.setTestedComponentId(id);
+        return result;
+    }
+
+    private static AbstractBuild build(int number, AbstractBuild previous, RhapsodyBuildAction action, String... routes) {
+        AbstractBuild build = Mockito.mock(AbstractBuild.class);
+        List<RhapsodyChangeLogSet.Entry> entries = new ArrayList<>();
+        for (String route : routes) {
+            RhapsodyChangeLogSet.Item item = new RhapsodyChangeLogSet.Item();
+            item.setType(RhapsodyImpactAnalysis.ROUTE);
+            item.setComponent(route);
+            RhapsodyChangeLogSet.Entry entry = new RhapsodyChangeLogSet.Entry();
+            entry.addItem(item);
+            entries.add(entry);
+        }
+        Mockito.when(build.getNumber()).thenReturn(number);
+        Mockito.when(build.getPreviousBuild()).thenReturn(previous);
+        Mockito.when(build.getAction(RhapsodyBuildAction.class)).thenReturn(action);
+        Mockito.when(build.getChangeSet()).thenReturn(new RhapsodyChangeLogSet(build, entries));
+        return build;
+    }
+
+    private static Route route(String id, String folder) {
+        return new Route(data(id), folder);
+    }
+
+    private static Map<String, String> data(String id) {
+        Map<String, String> data = new HashMap<>();
+        data.put("id", id);
+        data.put("name", "Route " + id);
+        return data;
+    }
+}
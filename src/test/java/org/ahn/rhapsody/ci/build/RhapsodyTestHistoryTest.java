@@ -0,0 +1,80 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2020 me.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.ahn.rhapsody.ci.build;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.Map;
+import org.ahn.rhapsody.ci.RhapsodyPollSchedule;
+import org.ahn.rhapsody.ci.json.TestComponent;
+import org.ahn.rhapsody.ci.json.TestSuite;
+import org.ahn.rhapsody.ci.model.Component;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import org.junit.Test;
+
+/**
+ *
+ * @author me
+ */
+public class RhapsodyTestHistoryTest {
+
+    @Test
+    public void testExpectedDurations() throws Exception {
+        ObjectMapper mapper = new ObjectMapper();
+        RhapsodyTestHistory history = new RhapsodyTestHistory();
+        // Through JSON, as saved with the builds
+        history.add(mapper.readValue(mapper.writeValueAsBytes(suite(10000)), TestSuite.class));
+        history.add(mapper.readValue(mapper.writeValueAsBytes(suite(20000)), TestSuite.class));
+        assertEquals(1, history.size());
+
+        assertEquals(Duration.ofSeconds(15), history.getExpectedDuration(component("1")));
+        assertNull(history.getExpectedDuration(component("2")));
+
+        RhapsodyPollSchedule schedule = new RhapsodyPollSchedule();
+        assertEquals(12000, history.getSchedule(component("1"), schedule).delay(0));
+        assertEquals(Duration.ofSeconds(45), history.getSchedule(component("1"), schedule).getTimeout());
+        assertSame(schedule, history.getSchedule(component("2"), schedule));
+    }
+
+    private static TestSuite suite(long durationMillis) {
+        TestComponent tested = new TestComponent("1", "Route 1", "/");
+        tested.setTestedComponentId("1");
+        tested.setPollCount(3);
+        tested.setDurationMillis(durationMillis);
+
+        // Recorded before the durations
+        TestComponent old = new TestComponent("2", "Route 2", "/");
+
+        return new TestSuite().addComponent(tested).addComponent(old);
+    }
+
+    private static Component component(String id) {
+        Map<String, String> data = new HashMap<>();
+        data.put("id", id);
+        return new Component(data, "/");
+    }
+}
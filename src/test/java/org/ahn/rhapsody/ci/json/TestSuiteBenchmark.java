@@ -0,0 +1,73 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2020 me.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.ahn.rhapsody.ci.json;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import java.io.IOException;
+import org.apache.commons.io.output.NullOutputStream;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * Serialization of the test suite report
+ *
+ * @author me
+ */
+@State(Scope.Benchmark)
+public class TestSuiteBenchmark {
+
+    @Param({"100", "1000"})
+    public int components;
+
+    private ObjectMapper mapper;
+    private TestSuite suite;
+
+    @Setup
+    public void setUp() {
+        mapper = new ObjectMapper();
+        suite = new TestSuite();
+        for (int i = 0; i < components; i++) {
+            TestComponent component = new TestComponent(Integer.toString(i), "Route " + i, "Folder/Sub Folder " + i % 10);
+            for (int y = 0; y < 10; y++) {
+                TestCase testCase = new TestCase("Test " + y, "Description of test " + y, y % 7 == 0 ? "FAILED" : "PASSED");
+                testCase.setFilterName("Filter " + y);
+                component.addTest(testCase);
+            }
+            component.setTotalCount(10);
+            component.setPassedCount(8);
+            component.setFailedCount(2);
+            component.setExecutedCount(10);
+            suite.addComponent(component);
+        }
+    }
+
+    @Benchmark
+    public void writeValue() throws IOException {
+        // Same as the build report, without the disk
+        mapper.writeValue(NullOutputStream.NULL_OUTPUT_STREAM, suite);
+    }
+}
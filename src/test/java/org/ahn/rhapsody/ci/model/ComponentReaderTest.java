@@ -0,0 +1,109 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2020 me.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.ahn.rhapsody.ci.model;
+
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.Collectors;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import org.junit.Test;
+
+/**
+ *
+ * @author me
+ */
+public class ComponentReaderTest {
+
+    @Test
+    public void testRead() throws Exception {
+        String export = "{\"error\": null, \"data\": {"
+                + "\"id\": 0, \"name\": \"Root\","
+                // Folders before components, name last
+                + "\"childFolders\": [{"
+                + "  \"childFolders\": [{\"name\": \"Labs\", \"childComponents\": [{\"id\": 3, \"name\": \"Lab Route\", \"type\": \"ROUTE\"}]}],"
+                + "  \"childComponents\": ["
+                + "    {\"id\": 2, \"name\": \"ADT Route\", \"type\": \"ROUTE\", \"childComponents\": ["
+                + "      {\"id\": 21, \"name\": \"Mapper\", \"type\": \"FILTER\", \"definitions\": [\"Patient\", {\"name\": \"Visit\", \"id\": 7}]},"
+                + "      {\"id\": 22, \"name\": \"Receive\", \"type\": \"COMMUNICATION_POINT\", \"properties\": {\"port\": 1}}"
+                + "    ]},"
+                + "    {\"id\": 4, \"name\": \"HTTP In\", \"type\": \"COMMUNICATION_POINT\"}"
+                + "  ],"
+                + "  \"name\": \"Orders\""
+                + "}],"
+                + "\"childComponents\": [{\"id\": 1, \"uuid\": null, \"name\": \"Root Route\", \"type\": \"ROUTE\","
+                + "  \"communicationPoints\": [{\"name\": \"HTTP In\"}], \"childComponents\": []}]"
+                + "}}";
+
+        List<Route> routes = new ComponentReader().read(new ByteArrayInputStream(export.getBytes(StandardCharsets.UTF_8)));
+
+        // Folder by folder, the components of a folder first
+        assertEquals(3, routes.size());
+        assertEquals("1", routes.get(0).getId());
+        assertEquals("", routes.get(0).getFolder());
+        assertNull(routes.get(0).getUuid());
+        assertEquals(Arrays.asList("communication-point:HTTP In"), routes.get(0).getReferences());
+
+        Route route = routes.get(1);
+        assertEquals("ADT Route", route.getName());
+        assertEquals("Orders", route.getFolder());
+        assertEquals(2, route.getFilters().size());
+        assertEquals("Mapper", route.getFilters().get(0).getName());
+        assertSame(route, route.getFilters().get(0).getRoute());
+        assertSame(route.getFolder(), route.getFilters().get(1).getFolder());
+        assertEquals(Arrays.asList("definition:Patient", "definition:Visit", "communication-point:Receive"), route.getReferences());
+
+        assertEquals("Lab Route", routes.get(2).getName());
+        assertEquals("Orders/Labs", routes.get(2).getFolder());
+    }
+
+    @Test
+    public void testPrunedFolders() throws Exception {
+        String export = "{\"data\": {\"name\": \"Root\", \"childFolders\": ["
+                + "  {\"name\": \"Billing\", \"childComponents\": [{\"id\": 1, \"name\": \"Invoices\", \"type\": \"ROUTE\"}],"
+                + "   \"childFolders\": [{\"name\": \"Old\", \"childComponents\": [{\"id\": 2, \"name\": \"Archive\", \"type\": \"ROUTE\"}]}]},"
+                + "  {\"name\": \"Integration\", \"childFolders\": ["
+                + "    {\"name\": \"ADT\", \"childComponents\": [{\"id\": 3, \"name\": \"ADT In\", \"type\": \"ROUTE\"}]},"
+                + "    {\"name\": \"Labs\", \"childComponents\": [{\"id\": 4, \"name\": \"Lab In\", \"type\": \"ROUTE\"}]}"
+                + "  ]},"
+                // Read before the name, dropped once it is known
+                + "  {\"childComponents\": [{\"id\": 5, \"name\": \"Late\", \"type\": \"ROUTE\"}], \"name\": \"Unknown\"}"
+                + "]}}";
+
+        List<String> visited = new ArrayList<>();
+        List<Route> routes = new ComponentReader().read(new ByteArrayInputStream(export.getBytes(StandardCharsets.UTF_8)), path -> {
+            visited.add(path);
+            return path.equals("Integration") || path.startsWith("Integration/ADT");
+        });
+
+        assertEquals(Arrays.asList("Integration/ADT/ADT In"),
+                routes.stream().map(Route::getPath).collect(Collectors.toList()));
+        // Subfolders of the pruned folders are not looked at
+        assertEquals(Arrays.asList("Billing", "Integration", "Integration/ADT", "Integration/Labs", "Unknown"), visited);
+    }
+}
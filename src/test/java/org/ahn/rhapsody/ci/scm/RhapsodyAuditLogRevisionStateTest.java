@@ -0,0 +1,85 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2020 me.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.ahn.rhapsody.ci.scm;
+
+import java.util.Date;
+import org.ahn.rhapsody.RhapsodyLogEntry;
+import static org.junit.Assert.*;
+import org.junit.Test;
+
+/**
+ *
+ * @author me
+ */
+public class RhapsodyAuditLogRevisionStateTest {
+
+    @Test
+    public void testCursor() {
+        RhapsodyAuditLogRevisionState.Cursor cursor = new RhapsodyAuditLogRevisionState.Cursor(null);
+        assertTrue(cursor.accept(entry(1000, "Logged in")));
+        assertTrue(cursor.accept(entry(2000, "Logged out")));
+        assertTrue(cursor.accept(entry(2000, "Logged in")));
+
+        RhapsodyAuditLogRevisionState state = cursor.toRevisionState();
+        assertTrue(state.hasCursor());
+        assertEquals(2000, state.getCursor());
+        assertEquals(2000, state.getStartTime());
+        assertEquals(2, state.getBoundary().size());
+
+        // Next export starts at the cursor and drops the entries at the edge
+        cursor = new RhapsodyAuditLogRevisionState.Cursor(state);
+        assertFalse(cursor.accept(entry(1000, "Logged in")));
+        assertFalse(cursor.accept(entry(2000, "Logged out")));
+        assertFalse(cursor.accept(entry(2000, "Logged in")));
+        assertTrue(cursor.accept(entry(2000, "Viewed message")));
+
+        state = cursor.toRevisionState();
+        assertEquals(2000, state.getCursor());
+        assertEquals(3, state.getBoundary().size());
+
+        assertTrue(cursor.accept(entry(3000, "Logged out")));
+        state = cursor.toRevisionState();
+        assertEquals(3000, state.getCursor());
+        assertEquals(1, state.getBoundary().size());
+    }
+
+    @Test
+    public void testNoEntries() {
+        RhapsodyAuditLogRevisionState state = new RhapsodyAuditLogRevisionState.Cursor(null).toRevisionState();
+        assertFalse(state.hasCursor());
+        assertEquals(state.getTimestamp(), state.getStartTime());
+
+        // Start time of the export is carried forward, not the Jenkins clock
+        state = new RhapsodyAuditLogRevisionState.Cursor(state, 5000).toRevisionState();
+        assertTrue(state.hasCursor());
+        assertEquals(5000, state.getStartTime());
+        state = new RhapsodyAuditLogRevisionState.Cursor(state, 5000).toRevisionState();
+        assertEquals(5000, state.getStartTime());
+    }
+
+    private RhapsodyLogEntry entry(long time, String message) {
+        return new RhapsodyLogEntry(new Date(time), "Administrator", message, "Audit");
+    }
+
+}